@@ -28,11 +28,18 @@ public class Main {
 
     /**
      * main --- where the program starts
-     * @param args      Command line arguments
+     * @param args      Command line arguments: optionally the steps and the
+     *                  frames per second, for example 240 60
      */
     public static void main (String[] args) {
+        int steps = Canvas.STEPS_PER_SECOND;
+        int frames = Canvas.FRAMES_PER_SECOND;
+        if (args.length >= 2) {
+            steps = Integer.parseInt(args[0]);
+            frames = Integer.parseInt(args[1]);
+        }
         // view of user's content
-        Canvas display = new Canvas(SIZE);
+        Canvas display = new Canvas(SIZE, steps, frames);
         // container that will work with user's OS
         JFrame frame = new JFrame(TITLE);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
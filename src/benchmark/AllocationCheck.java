@@ -0,0 +1,90 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import simulation.Assembly;
+import simulation.SimulationEngine;
+
+
+/**
+ * Checks that a warmed up simulation step allocates nothing, so big
+ * models do not stutter from garbage collection. A lattice is stepped
+ * under the default forces on this thread until the JIT has compiled the
+ * step, then stepped again while the bytes this thread allocates are
+ * counted. The JIT can still allocate once in a while as it recompiles,
+ * so the counting is done over several windows of steps, and the check
+ * passes once a window allocates nothing. A step that allocates does so
+ * in every window; then this exits with status 1, so a build can run it.
+ *
+ * Usage: java benchmark.AllocationCheck [masses] [steps]
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class AllocationCheck {
+    /**
+     * Masses in the lattice when not given
+     */
+    public static final int DEFAULT_MASSES = 10000;
+    /**
+     * Steps counted when not given
+     */
+    public static final int DEFAULT_STEPS = 1000;
+    /**
+     * Steps run first, so what is counted is the compiled step
+     */
+    public static final int WARM_UP_STEPS = 20000;
+    /**
+     * Most windows of steps counted before failing
+     */
+    public static final int WINDOWS = 5;
+
+    private AllocationCheck () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * main --- where the check starts
+     * @param args      number of masses, then number of steps
+     */
+    public static void main (String[] args) {
+        int masses = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_MASSES;
+        int steps = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_STEPS;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            System.err.println("allocation check: this JVM cannot count allocated bytes");
+            System.exit(1);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        SimulationEngine engine = new SimulationEngine(ModelGenerator.SIZE);
+        engine.addDefaultForces();
+        // every step on this thread, so all its allocations are counted here
+        engine.getParallelForces().setParallelism(1);
+        Assembly assembly = ModelGenerator.lattice(masses);
+        engine.add(assembly);
+        // fewer warm up steps for big lattices, whose steps are long enough to compile
+        int warmUp = Math.max(WARM_UP_STEPS / Math.max(1, masses / 1000), steps);
+        for (int i = 0; i < warmUp; i++) {
+            engine.step(SimulationEngine.DEFAULT_TIMESTEP);
+        }
+
+        long bytes = 0;
+        for (int window = 1; window <= WINDOWS; window++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < steps; i++) {
+                engine.step(SimulationEngine.DEFAULT_TIMESTEP);
+            }
+            bytes = threads.getThreadAllocatedBytes(thread) - before;
+            Benchmarks.requireFinite("allocation check", assembly);
+            System.out.printf("allocation check: %d masses, window %d, %d steps, " +
+                              "%d bytes (%.1f per step)%n", assembly.getMasses().size(),
+                              window, steps, bytes, (double) bytes / steps);
+            if (bytes == 0) {
+                return;
+            }
+        }
+        System.err.println("allocation check FAILED: every window of warmed up steps allocates");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,63 @@
+package benchmark;
+
+import java.io.IOException;
+
+
+/**
+ * One thing to time. The runner calls setUp once for each input size and
+ * thread count, then calls run over and over, counting each call as one
+ * operation.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public abstract class Benchmark {
+    private String myName;
+
+    /**
+     * Create a benchmark with the given name, used to pick it on the
+     * command line and to label its results.
+     * 
+     * @param name      the name
+     */
+    public Benchmark (String name) {
+        myName = name;
+    }
+
+    /**
+     * Returns the name of this benchmark
+     * 
+     * @return
+     */
+    public String getName () {
+        return myName;
+    }
+
+    /**
+     * Returns true if this benchmark uses more than one thread, so it is
+     * worth running for every thread count.
+     */
+    public boolean isParallel () {
+        return false;
+    }
+
+    /**
+     * Build the inputs for the following runs.
+     * 
+     * @param size      number of masses to generate
+     * @param threads   number of threads the simulation may use
+     * @throws IOException if the input cannot be written
+     */
+    public abstract void setUp (int size, int threads) throws IOException;
+
+    /**
+     * Do one operation.
+     */
+    public abstract void run ();
+
+    /**
+     * Release what setUp made.
+     */
+    public void tearDown () {
+        // nothing to release by default
+    }
+}
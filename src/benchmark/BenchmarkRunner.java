@@ -0,0 +1,165 @@
+package benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Runs the benchmarks for every input size and thread count and prints,
+ * for each, operations per second and bytes allocated per operation
+ * (by all threads, so work done on the pool counts too).
+ * 
+ * Each measurement first runs the operation for a while without timing
+ * it, so the JIT has compiled it, then times it for the same while.
+ * 
+ * Usage: java benchmark.BenchmarkRunner [-sizes 1000,1000000]
+ *            [-threads 1,2,4] [-seconds 2] [name ...]
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class BenchmarkRunner {
+    /**
+     * Input sizes used when none are given
+     */
+    public static final int[] DEFAULT_SIZES = { 1000, 10000, 100000, 1000000 };
+    /**
+     * Seconds spent warming up and then measuring, when not given
+     */
+    public static final double DEFAULT_SECONDS = 2;
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private BenchmarkRunner () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * main --- where the benchmarks start
+     * @param args      options followed by benchmark names (all if none)
+     */
+    public static void main (String[] args) throws IOException {
+        int[] sizes = DEFAULT_SIZES;
+        int[] threads = { 1, Runtime.getRuntime().availableProcessors() };
+        double seconds = DEFAULT_SECONDS;
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-sizes".equals(args[i])) {
+                sizes = parseList(args[++i]);
+            }
+            else if ("-threads".equals(args[i])) {
+                threads = parseList(args[++i]);
+            }
+            else if ("-seconds".equals(args[i])) {
+                seconds = Double.parseDouble(args[++i]);
+            }
+            else {
+                names.add(args[i]);
+            }
+        }
+        System.out.printf("%-16s %9s %7s %14s %14s%n",
+                          "benchmark", "size", "threads", "ops/s", "bytes/op");
+        for (Benchmark benchmark : Benchmarks.all()) {
+            if (!names.isEmpty() && !names.contains(benchmark.getName())) {
+                continue;
+            }
+            for (int size : sizes) {
+                int[] counts = benchmark.isParallel() ? threads : new int[] { 1 };
+                for (int i = 0; i < counts.length; i++) {
+                    if (i > 0 && counts[i] == counts[i - 1]) {
+                        continue;
+                    }
+                    measure(benchmark, size, counts[i], seconds);
+                }
+            }
+        }
+    }
+
+    /**
+     * Time one benchmark at one size and thread count, and print the result.
+     */
+    private static void measure (Benchmark benchmark, int size, int threads, double seconds)
+        throws IOException {
+        benchmark.setUp(size, threads);
+        long budget = (long) (seconds * NANOS_PER_SECOND);
+        repeat(benchmark, budget);
+        long[] threadIds = ManagementFactory.getThreadMXBean().getAllThreadIds();
+        long[] before = allocatedBytes(threadIds);
+        long start = System.nanoTime();
+        long ops = repeat(benchmark, budget);
+        double elapsed = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        long bytes = allocatedSince(threadIds, before);
+        benchmark.tearDown();
+        System.out.printf("%-16s %9d %7d %14.1f %14.1f%n", benchmark.getName(), size,
+                          threads, ops / elapsed, (double) bytes / ops);
+    }
+
+    /**
+     * Run the operation until the given time has passed, at least once.
+     * 
+     * @return number of operations run
+     */
+    private static long repeat (Benchmark benchmark, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long ops = 0;
+        do {
+            benchmark.run();
+            ops++;
+        }
+        while (System.nanoTime() < end);
+        return ops;
+    }
+
+    /**
+     * Returns the bytes allocated so far by each of the given threads, or
+     * -1 for threads that are gone or cannot be measured.
+     */
+    private static long[] allocatedBytes (long[] threadIds) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            long[] result = new long[threadIds.length];
+            Arrays.fill(result, -1);
+            return result;
+        }
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(threadIds);
+    }
+
+    /**
+     * Returns the bytes allocated since the given counts were taken, by the
+     * threads that are still alive plus every thread started since. Threads
+     * that ended in between are left out rather than counted negative.
+     */
+    private static long allocatedSince (long[] threadIds, long[] before) {
+        long[] after = allocatedBytes(threadIds);
+        long total = 0;
+        for (int i = 0; i < threadIds.length; i++) {
+            if (before[i] >= 0 && after[i] >= 0) {
+                total += after[i] - before[i];
+            }
+        }
+        long[] now = ManagementFactory.getThreadMXBean().getAllThreadIds();
+        long[] known = threadIds.clone();
+        Arrays.sort(known);
+        long[] current = allocatedBytes(now);
+        for (int i = 0; i < now.length; i++) {
+            if (Arrays.binarySearch(known, now[i]) < 0 && current[i] > 0) {
+                total += current[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the numbers in a comma separated list
+     */
+    private static int[] parseList (String list) {
+        String[] parts = list.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+}
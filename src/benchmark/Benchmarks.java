@@ -0,0 +1,327 @@
+package benchmark;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import simulation.Assembly;
+import simulation.CenterOfMass;
+import simulation.Factory;
+import simulation.MassStore;
+import simulation.ParallelForces;
+import simulation.SimulationEngine;
+import simulation.Spring;
+import simulation.SpringColoring;
+import simulation.SpringKernel;
+import simulation.WallRepulsion;
+import util.Vector;
+
+
+/**
+ * The benchmarks for the physics kernels, the loader, and painting. Each works on a
+ * generated lattice of the size it is given.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class Benchmarks {
+    /**
+     * Number of assemblies the masses are split over when timing the whole model
+     */
+    public static final int MODEL_ASSEMBLIES = 16;
+
+    private static final Dimension BOUNDS = ModelGenerator.SIZE;
+    private static final double TIMESTEP = SimulationEngine.DEFAULT_TIMESTEP;
+
+    private Benchmarks () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * Returns every benchmark.
+     */
+    public static List<Benchmark> all () {
+        List<Benchmark> result = new ArrayList<Benchmark>();
+        result.add(vectorSum());
+        result.add(springUpdate());
+        result.add(springKernel());
+        result.add(wallRepulsion());
+        result.add(centerOfMass());
+        result.add(assemblyUpdate());
+        result.add(modelUpdate());
+        result.add(factoryLoad());
+        result.add(assemblyPaint());
+        return result;
+    }
+
+    /**
+     * Vector.sum over one vector per mass.
+     */
+    public static Benchmark vectorSum () {
+        return new Benchmark("vector-sum") {
+            private Vector[] myVectors;
+            private Vector myTotal = new Vector();
+
+            @Override
+            public void setUp (int size, int threads) {
+                myVectors = new Vector[size];
+                for (int i = 0; i < size; i++) {
+                    myVectors[i] = new Vector(i % 360, 1 + i % 7);
+                }
+            }
+
+            @Override
+            public void run () {
+                myTotal.reset();
+                for (Vector v : myVectors) {
+                    myTotal.sum(v);
+                }
+            }
+        };
+    }
+
+    /**
+     * Spring.update on every spring of a lattice.
+     */
+    public static Benchmark springUpdate () {
+        return new Benchmark("spring-update") {
+            private Assembly myAssembly;
+
+            @Override
+            public void setUp (int size, int threads) {
+                myAssembly = ModelGenerator.lattice(size);
+            }
+
+            @Override
+            public void run () {
+                List<Spring> springs = myAssembly.getSprings();
+                for (int i = 0; i < springs.size(); i++) {
+                    springs.get(i).update(TIMESTEP, BOUNDS);
+                }
+                myAssembly.getMasses().clearForces();
+            }
+        };
+    }
+
+    /**
+     * SpringKernel.applyHookesLaw on every spring of a lattice, the packed
+     * version of spring-update.
+     */
+    public static Benchmark springKernel () {
+        return new Benchmark("spring-kernel") {
+            private MassStore myMasses;
+            private SpringKernel myKernel = new SpringKernel();
+
+            @Override
+            public void setUp (int size, int threads) {
+                Assembly assembly = ModelGenerator.lattice(size);
+                myMasses = assembly.getMasses();
+                SpringColoring coloring = new SpringColoring();
+                coloring.color(assembly.getSprings(), myMasses);
+                myKernel.pack(assembly.getSprings(), coloring, myMasses);
+            }
+
+            @Override
+            public void run () {
+                myKernel.applyHookesLaw();
+                myMasses.clearForces();
+            }
+        };
+    }
+
+    /**
+     * WallRepulsion.update on every mass of a lattice.
+     */
+    public static Benchmark wallRepulsion () {
+        return new Benchmark("wall-repulsion") {
+            private MassStore myMasses;
+            private WallRepulsion myRepulsion =
+                    new WallRepulsion(SimulationEngine.DEFAULT_WALL_REPULSION);
+
+            @Override
+            public void setUp (int size, int threads) {
+                myMasses = ModelGenerator.lattice(size).getMasses();
+            }
+
+            @Override
+            public void run () {
+                myRepulsion.update(BOUNDS, myMasses);
+                myMasses.clearForces();
+            }
+        };
+    }
+
+    /**
+     * CenterOfMass.applyCenterOfMass on every mass of a lattice.
+     */
+    public static Benchmark centerOfMass () {
+        return new Benchmark("center-of-mass") {
+            private MassStore myMasses;
+            private CenterOfMass myCenterOfMass = new CenterOfMass(2);
+
+            @Override
+            public void setUp (int size, int threads) {
+                myMasses = ModelGenerator.lattice(size).getMasses();
+            }
+
+            @Override
+            public void run () {
+                double cx = BOUNDS.width / 2;
+                double cy = BOUNDS.height / 2;
+                for (int i = 0; i < myMasses.size(); i++) {
+                    myCenterOfMass.applyCenterOfMass(myMasses, i, cx, cy);
+                }
+                myMasses.clearForces();
+            }
+        };
+    }
+
+    /**
+     * Assembly.update of one lattice under the default global forces.
+     */
+    public static Benchmark assemblyUpdate () {
+        return new Benchmark("assembly-update") {
+            private SimulationEngine myEngine;
+            private Assembly myAssembly;
+            private ParallelForces myParallelForces;
+
+            @Override
+            public boolean isParallel () {
+                return true;
+            }
+
+            @Override
+            public void setUp (int size, int threads) {
+                myEngine = new SimulationEngine(BOUNDS);
+                myEngine.addDefaultForces();
+                myAssembly = ModelGenerator.lattice(size);
+                myParallelForces = new ParallelForces(threads);
+                myAssembly.setParallelForces(myParallelForces);
+            }
+
+            @Override
+            public void run () {
+                myAssembly.update(TIMESTEP, BOUNDS, myEngine.getForces());
+            }
+
+            @Override
+            public void tearDown () {
+                myParallelForces.setParallelism(1);
+                requireFinite(getName(), myAssembly);
+            }
+        };
+    }
+
+    /**
+     * A whole step of a model with the masses split over several assemblies.
+     * This is the physics part of Model.update, which also needs a Canvas.
+     */
+    public static Benchmark modelUpdate () {
+        return new Benchmark("model-update") {
+            private SimulationEngine myEngine;
+
+            @Override
+            public boolean isParallel () {
+                return true;
+            }
+
+            @Override
+            public void setUp (int size, int threads) {
+                myEngine = new SimulationEngine(BOUNDS);
+                myEngine.addDefaultForces();
+                myEngine.getParallelForces().setParallelism(threads);
+                for (int a = 0; a < MODEL_ASSEMBLIES; a++) {
+                    myEngine.add(ModelGenerator.lattice(Math.max(1, size / MODEL_ASSEMBLIES)));
+                }
+            }
+
+            @Override
+            public void run () {
+                myEngine.step(TIMESTEP);
+            }
+
+            @Override
+            public void tearDown () {
+                myEngine.getParallelForces().setParallelism(1);
+                for (Assembly assembly : myEngine.getAssemblies()) {
+                    requireFinite(getName(), assembly);
+                }
+            }
+        };
+    }
+
+    /**
+     * Stop the benchmark if the simulation blew up while it was timed, since
+     * it would then have timed arithmetic on NaN rather than physics.
+     * 
+     * @param name      benchmark name, for the message
+     * @param assembly  the assembly that was stepped
+     */
+    static void requireFinite (String name, Assembly assembly) {
+        MassStore masses = assembly.getMasses();
+        for (int i = 0; i < masses.size(); i++) {
+            if (!Double.isFinite(masses.getX(i)) || !Double.isFinite(masses.getY(i))) {
+                throw new IllegalStateException(name + ": mass " + i +
+                                                " is no longer at a finite position");
+            }
+        }
+    }
+
+    /**
+     * Factory.loadModel of a lattice data file.
+     */
+    public static Benchmark factoryLoad () {
+        return new Benchmark("factory-load") {
+            private File myFile;
+
+            @Override
+            public void setUp (int size, int threads) throws IOException {
+                myFile = ModelGenerator.writeLattice(size);
+            }
+
+            @Override
+            public void run () {
+                new Factory().loadModel(new Assembly(), myFile);
+            }
+
+            @Override
+            public void tearDown () {
+                myFile.delete();
+            }
+        };
+    }
+
+    /**
+     * Assembly.paint of a lattice onto an image the size of the world.
+     */
+    public static Benchmark assemblyPaint () {
+        return new Benchmark("assembly-paint") {
+            private Assembly myAssembly;
+            private BufferedImage myImage;
+            private Graphics2D myPen;
+
+            @Override
+            public void setUp (int size, int threads) {
+                myAssembly = ModelGenerator.lattice(size);
+                myImage = new BufferedImage(BOUNDS.width, BOUNDS.height,
+                                            BufferedImage.TYPE_INT_RGB);
+                myPen = myImage.createGraphics();
+            }
+
+            @Override
+            public void run () {
+                myPen.setColor(Color.WHITE);
+                myPen.fillRect(0, 0, BOUNDS.width, BOUNDS.height);
+                myAssembly.paint(myPen);
+            }
+
+            @Override
+            public void tearDown () {
+                myPen.dispose();
+            }
+        };
+    }
+}
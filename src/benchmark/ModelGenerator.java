@@ -0,0 +1,179 @@
+package benchmark;
+
+import java.awt.Dimension;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import simulation.Assembly;
+import simulation.FixedMass;
+import simulation.FrameUnits;
+import simulation.Mass;
+import simulation.Rod;
+import simulation.Spring;
+
+
+/**
+ * Makes models of any size to run benchmarks on: a square lattice of
+ * masses joined by springs to their right and lower neighbours, spread
+ * over the world so the walls push on the outside masses.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class ModelGenerator {
+    /**
+     * Size of the world the lattice is spread over
+     */
+    public static final Dimension SIZE = new Dimension(800, 600);
+    /**
+     * Value of each mass
+     */
+    public static final double MASS = 1;
+    /**
+     * Spring constant of each spring
+     */
+    public static final double SPRING_CONSTANT = 50;
+
+    /**
+     * Distance between the masses of a ladder
+     */
+    public static final double RUNG_LENGTH = 10;
+
+    private static final double MARGIN = 50;
+
+    private ModelGenerator () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * Returns the number of masses on a side of a lattice of about the given
+     * size. The side is always even, so no mass sits on the center of mass,
+     * where the pull to it is infinite.
+     */
+    public static int side (int masses) {
+        int side = Math.max(2, (int) Math.ceil(Math.sqrt(masses)));
+        return side + side % 2;
+    }
+
+    /**
+     * Returns the distance between neighbours in a lattice with the given side
+     */
+    public static double spacing (int side) {
+        return (SIZE.height - 2 * MARGIN) / (side - 1);
+    }
+
+    /**
+     * Create an assembly holding a lattice of about the given number of masses.
+     * 
+     * @param masses    number of masses wanted
+     * @return the assembly
+     */
+    public static Assembly lattice (int masses) {
+        int side = side(masses);
+        double spacing = spacing(side);
+        Assembly assembly = new Assembly();
+        Mass[] grid = new Mass[side * side];
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                grid[row * side + col] = new Mass(MARGIN + col * spacing,
+                                                  MARGIN + row * spacing, MASS);
+                assembly.add(grid[row * side + col]);
+            }
+        }
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                Mass m = grid[row * side + col];
+                if (col + 1 < side) {
+                    assembly.add(new Spring(m, grid[row * side + col + 1], spacing,
+                                            SPRING_CONSTANT));
+                }
+                if (row + 1 < side) {
+                    assembly.add(new Spring(m, grid[(row + 1) * side + col], spacing,
+                                            SPRING_CONSTANT));
+                }
+            }
+        }
+        // keep the mouse far away so it never grabs a mass
+        assembly.setMouse(-SIZE.width, -SIZE.height, false);
+        return assembly;
+    }
+
+    /**
+     * Create an assembly holding a ladder hanging from its top rung: two
+     * rails of masses, with rods for rungs and springs of the given
+     * constant along the rails and across each rung. Long ladders have
+     * their rungs closer together so they fit in the world. The masses
+     * start a little to one side, so the ladder swings.
+     *
+     * @param rungs     number of rungs, the top one fixed
+     * @param k         spring constant of the rails and braces
+     * @return the assembly
+     */
+    public static Assembly ladder (int rungs, double k) {
+        double spacing = Math.min(RUNG_LENGTH, spacing(rungs));
+        double brace = Math.sqrt(spacing * spacing + RUNG_LENGTH * RUNG_LENGTH);
+        Assembly assembly = new Assembly();
+        Mass[] left = new Mass[rungs];
+        Mass[] right = new Mass[rungs];
+        for (int row = 0; row < rungs; row++) {
+            double x = SIZE.width / 2 + row * spacing / 3;
+            double y = MARGIN + row * spacing;
+            if (row == 0) {
+                left[row] = new FixedMass(x, y, MASS);
+                right[row] = new FixedMass(x + RUNG_LENGTH, y, MASS);
+            }
+            else {
+                left[row] = new Mass(x, y, MASS);
+                right[row] = new Mass(x + RUNG_LENGTH, y, MASS);
+            }
+            assembly.add(left[row]);
+            assembly.add(right[row]);
+            assembly.add(new Rod(left[row], right[row], RUNG_LENGTH));
+        }
+        for (int row = 0; row + 1 < rungs; row++) {
+            assembly.add(new Spring(left[row], left[row + 1], spacing, k));
+            assembly.add(new Spring(right[row], right[row + 1], spacing, k));
+            assembly.add(new Spring(left[row], right[row + 1], brace, k));
+        }
+        assembly.setMouse(-SIZE.width, -SIZE.height, false);
+        return assembly;
+    }
+
+    /**
+     * Write the same lattice as a data file that Factory can read. Data
+     * files give spring constants in the original per-frame units, so the
+     * constant written is the one Factory turns back into SPRING_CONSTANT.
+     * 
+     * @param masses    number of masses wanted
+     * @return a temporary file, deleted when the program exits
+     * @throws IOException if the file cannot be written
+     */
+    public static File writeLattice (int masses) throws IOException {
+        int side = side(masses);
+        double spacing = spacing(side);
+        double k = SPRING_CONSTANT / FrameUnits.ACCELERATION / MASS;
+        File file = File.createTempFile("lattice", ".xsp");
+        file.deleteOnExit();
+        PrintWriter output = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                output.printf("mass %d %f %f %f%n", row * side + col,
+                              MARGIN + col * spacing, MARGIN + row * spacing, MASS);
+            }
+        }
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                int id = row * side + col;
+                if (col + 1 < side) {
+                    output.printf("spring %d %d %f %f%n", id, id + 1, spacing, k);
+                }
+                if (row + 1 < side) {
+                    output.printf("spring %d %d %f %f%n", id, id + side, spacing, k);
+                }
+            }
+        }
+        output.close();
+        return file;
+    }
+}
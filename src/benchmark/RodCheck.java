@@ -0,0 +1,122 @@
+package benchmark;
+
+import java.util.List;
+import simulation.AdaptiveTimestep;
+import simulation.Assembly;
+import simulation.BackwardEuler;
+import simulation.Rod;
+import simulation.SimulationEngine;
+import simulation.Spring;
+
+
+/**
+ * Checks that rods mixed with stiff springs stay together. A ladder with
+ * rods for rungs and very stiff springs along its rails is run at the
+ * default step twice: with the default integrator under AdaptiveTimestep,
+ * which shortens the steps as the springs need, and with BackwardEuler,
+ * which needs no short steps. Exits with status 1 if either run blows up,
+ * lets a rod change length, or pulls a spring far from its length.
+ *
+ * Rods do not limit the length of a step (see AdaptiveTimestep), so this
+ * is what shows they are safe next to springs that do.
+ *
+ * Usage: java benchmark.RodCheck [rungs] [seconds]
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class RodCheck {
+    /**
+     * Rungs in the ladder when not given
+     */
+    public static final int DEFAULT_RUNGS = 20;
+    /**
+     * Simulated seconds when not given
+     */
+    public static final double DEFAULT_SECONDS = 5;
+    /**
+     * Spring constant of the rails, far too stiff for the default step
+     */
+    public static final double STIFF_SPRING = 100000;
+    /**
+     * Most a rod may be off its length, in pixels
+     */
+    public static final double ROD_TOLERANCE = 1e-6;
+    /**
+     * Most a spring may be off its length, in pixels
+     */
+    public static final double SPRING_TOLERANCE = ModelGenerator.RUNG_LENGTH / 2;
+
+    private RodCheck () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * main --- where the check starts
+     * @param args      number of rungs, then simulated seconds
+     */
+    public static void main (String[] args) {
+        int rungs = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_RUNGS;
+        double seconds = (args.length > 1) ? Double.parseDouble(args[1]) : DEFAULT_SECONDS;
+        long steps = Math.round(seconds / SimulationEngine.DEFAULT_TIMESTEP);
+
+        SimulationEngine adaptive = new SimulationEngine(ModelGenerator.SIZE);
+        adaptive.addDefaultForces();
+        adaptive.setAdaptiveTimestep(new AdaptiveTimestep());
+        adaptive.add(ModelGenerator.ladder(rungs, STIFF_SPRING));
+
+        SimulationEngine implicit = new SimulationEngine(ModelGenerator.SIZE);
+        implicit.addDefaultForces();
+        Assembly ladder = ModelGenerator.ladder(rungs, STIFF_SPRING);
+        ladder.setIntegrator(new BackwardEuler());
+        implicit.add(ladder);
+
+        System.out.printf("rod check: %d rungs, k = %.0f, stable step %.3g s, step %.3g s%n",
+                          rungs, STIFF_SPRING,
+                          AdaptiveTimestep.stabilityLimit(adaptive.getAssemblies()),
+                          SimulationEngine.DEFAULT_TIMESTEP);
+        boolean passed = check("adaptive timestep", adaptive, steps);
+        passed &= check("backward euler", implicit, steps);
+        if (!passed) {
+            System.err.println("rod check FAILED: a ladder of rods and stiff springs came apart");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run the given engine and return true if its ladder held together.
+     */
+    private static boolean check (String name, SimulationEngine engine, long steps) {
+        try {
+            engine.run(steps, SimulationEngine.DEFAULT_TIMESTEP);
+        }
+        catch (IllegalStateException e) {
+            System.out.printf("  %s: %s%n", name, e.getMessage());
+            return false;
+        }
+        Assembly ladder = engine.getAssemblies().get(0);
+        try {
+            Benchmarks.requireFinite(name, ladder);
+        }
+        catch (IllegalStateException e) {
+            System.out.printf("  %s%n", e.getMessage());
+            return false;
+        }
+        double rodError = 0;
+        double springError = 0;
+        List<Spring> springs = ladder.getSprings();
+        for (int i = 0; i < springs.size(); i++) {
+            Spring spring = springs.get(i);
+            double error = Math.abs(spring.getStart().distance(spring.getEnd()) -
+                                    spring.getLength());
+            if (spring instanceof Rod) {
+                rodError = Math.max(rodError, error);
+            }
+            else {
+                springError = Math.max(springError, error);
+            }
+        }
+        System.out.printf("  %s: rods off by %.3g px, springs by %.3g px%n",
+                          name, rodError, springError);
+        return rodError <= ROD_TOLERANCE && springError <= SPRING_TOLERANCE;
+    }
+}
@@ -0,0 +1,261 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Takes each step of an engine as a number of shorter steps, as short as
+ * the springs need and no shorter, so a model can run with a long step
+ * without stiff springs exploding.
+ *
+ * Before each short step the length is limited by the fastest spring:
+ * a spring of constant k between masses m1 and m2 swings at
+ * w = sqrt(k (1 / m1 + 1 / m2)), and explicit integrators go unstable
+ * once a step is much over 1 / w. After each short step the masses are
+ * checked: if any has gone to NaN or infinity, or the kinetic energy
+ * jumped far more than forces like these can account for, the masses
+ * and springs are put back, in place, as they were at the start of the
+ * whole step, and the step is taken again with short steps half as long.
+ * While steps go well the length grows back a little at a time.
+ *
+ * Rods do not limit the step. They have no hooke's constant, and
+ * RodProjection puts their masses back at length after each step however
+ * long it was. Joining masses with a rod only makes them swing on their
+ * springs more slowly, as if they were heavier, so the limit worked out
+ * from the springs alone is still safe; benchmark.RodCheck runs rods next
+ * to springs far too stiff for the default step.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class AdaptiveTimestep {
+    /**
+     * Default shortest step tried before giving up, in seconds
+     */
+    public static final double DEFAULT_MIN_TIMESTEP = 1e-6;
+    /**
+     * Fraction of 1 / w a step may be
+     */
+    public static final double COURANT = 0.5;
+    /**
+     * Factor the step length grows by after each step that went well
+     */
+    public static final double GROWTH = 1.25;
+    /**
+     * Factor the kinetic energy may grow by in one step
+     */
+    public static final double ENERGY_GROWTH = 4;
+    /**
+     * Speed, in pixels per second, that any mass may reach in one step
+     * however still it was, so a model at rest can start moving
+     */
+    public static final double CALM_SPEED = 200;
+
+    private double myMinTimestep;
+    // length of the next short step
+    private double myStepSize = Double.POSITIVE_INFINITY;
+    // each assembly as it was at the start of the step
+    private List<AssemblyMotion> myLastGoodState = new ArrayList<AssemblyMotion>();
+    private long myAcceptedCount;
+    private long myRejectedCount;
+
+    /**
+     * Create one that gives up below the default shortest step.
+     */
+    public AdaptiveTimestep () {
+        this(DEFAULT_MIN_TIMESTEP);
+    }
+
+    /**
+     * Create one that gives up below the given shortest step.
+     *
+     * @param minTimestep   shortest step tried, in seconds
+     */
+    public AdaptiveTimestep (double minTimestep) {
+        myMinTimestep = minTimestep;
+    }
+
+    /**
+     * Returns the shortest step tried before giving up
+     *
+     * @return
+     */
+    public double getMinTimestep () {
+        return myMinTimestep;
+    }
+
+    /**
+     * Returns the length the next short step will be at most
+     *
+     * @return
+     */
+    public double getStepSize () {
+        return myStepSize;
+    }
+
+    /**
+     * Returns the number of short steps kept
+     *
+     * @return
+     */
+    public long getAcceptedCount () {
+        return myAcceptedCount;
+    }
+
+    /**
+     * Returns the number of short steps rolled back
+     *
+     * @return
+     */
+    public long getRejectedCount () {
+        return myRejectedCount;
+    }
+
+    /**
+     * Move the given engine's world on by the given time, in as many short
+     * steps as it takes.
+     *
+     * @param engine        the engine
+     * @param elapsedTime   time for the whole step
+     * @throws IllegalStateException if the world blows up even at the
+     *         shortest step; it is left as it was before that step
+     */
+    void step (SimulationEngine engine, double elapsedTime) {
+        // saved once per step: blowing up is rare, and copying the whole
+        // world before every short step would cost more than the steps
+        capture(engine.getAssemblies());
+        // springs only change between steps
+        double stable = stabilityLimit(engine.getAssemblies());
+        double done = 0;
+        double energy = kineticEnergy(engine.getAssemblies());
+        while (done < elapsedTime) {
+            double remaining = elapsedTime - done;
+            double limit = Math.min(myStepSize, stable);
+            // equal short steps rather than a sliver at the end
+            double h = remaining / Math.ceil(remaining / Math.max(limit, myMinTimestep));
+            engine.integrate(h);
+            double energyAfter = kineticEnergy(engine.getAssemblies());
+            if (isHealthy(engine.getAssemblies(), energy, energyAfter)) {
+                done += h;
+                energy = energyAfter;
+                myAcceptedCount++;
+                myStepSize = Math.min(h * GROWTH, elapsedTime);
+            }
+            else {
+                // the whole step is taken again, more carefully
+                restore(engine.getAssemblies());
+                myRejectedCount++;
+                if (h <= myMinTimestep) {
+                    throw new IllegalStateException("simulation blows up even with steps of " +
+                                                    h + " s");
+                }
+                myStepSize = Math.max(h / 2, myMinTimestep);
+                done = 0;
+                energy = kineticEnergy(engine.getAssemblies());
+            }
+        }
+    }
+
+    /**
+     * Save the masses and springs of the given assemblies.
+     */
+    private void capture (List<Assembly> assemblies) {
+        while (myLastGoodState.size() < assemblies.size()) {
+            myLastGoodState.add(new AssemblyMotion());
+        }
+        for (int a = 0; a < assemblies.size(); a++) {
+            myLastGoodState.get(a).capture(assemblies.get(a));
+        }
+    }
+
+    /**
+     * Put the masses and springs of the given assemblies back as they
+     * were at the last capture.
+     */
+    private void restore (List<Assembly> assemblies) {
+        for (int a = 0; a < assemblies.size(); a++) {
+            myLastGoodState.get(a).restore(assemblies.get(a));
+        }
+    }
+
+    /**
+     * Returns the longest step the springs of the given assemblies can take.
+     * Rods, whose constant is 0, add nothing to it.
+     *
+     * @param assemblies    the assemblies
+     * @return
+     */
+    public static double stabilityLimit (List<Assembly> assemblies) {
+        double fastest = 0;
+        for (int a = 0; a < assemblies.size(); a++) {
+            List<Spring> springs = assemblies.get(a).getSprings();
+            for (int i = 0; i < springs.size(); i++) {
+                fastest = Math.max(fastest, frequency(springs.get(i)));
+            }
+        }
+        return (fastest > 0) ? COURANT / fastest : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns how fast the given spring swings its masses, in radians per
+     * second; a step should be no longer than COURANT over this.
+     *
+     * @param spring    the spring
+     * @return
+     */
+    public static double frequency (Spring spring) {
+        double inverseMass = inverseMass(spring.getStart()) + inverseMass(spring.getEnd());
+        return Math.sqrt(Math.abs(spring.getK()) * inverseMass);
+    }
+
+    /**
+     * Returns the kinetic energy of all the masses of the given assemblies.
+     *
+     * @param assemblies    the assemblies
+     * @return
+     */
+    public static double kineticEnergy (List<Assembly> assemblies) {
+        double energy = 0;
+        for (int a = 0; a < assemblies.size(); a++) {
+            MassStore masses = assemblies.get(a).getMasses();
+            double[] vx = masses.getVelocityX();
+            double[] vy = masses.getVelocityY();
+            double[] m = masses.getMassValues();
+            double[] inverse = masses.getInverseMass();
+            for (int i = 0; i < masses.size(); i++) {
+                if (inverse[i] > 0) {
+                    energy += m[i] * (vx[i] * vx[i] + vy[i] * vy[i]) / 2;
+                }
+            }
+        }
+        return energy;
+    }
+
+    /**
+     * Returns true if every mass is somewhere and the kinetic energy did
+     * not jump during the short step.
+     */
+    private static boolean isHealthy (List<Assembly> assemblies, double energyBefore,
+                                      double energyAfter) {
+        double totalMass = 0;
+        for (int a = 0; a < assemblies.size(); a++) {
+            MassStore masses = assemblies.get(a).getMasses();
+            double[] x = masses.getPositionX();
+            double[] y = masses.getPositionY();
+            for (int i = 0; i < masses.size(); i++) {
+                // also false for NaN
+                if (!(Math.abs(x[i]) <= Double.MAX_VALUE && Math.abs(y[i]) <= Double.MAX_VALUE)) {
+                    return false;
+                }
+            }
+            totalMass += masses.getTotalMass();
+        }
+        double allowed = ENERGY_GROWTH * energyBefore + totalMass * CALM_SPEED * CALM_SPEED / 2;
+        // NaN velocities fail here
+        return energyAfter <= allowed;
+    }
+
+    private static double inverseMass (Mass mass) {
+        return mass.getStore().getInverseMass()[mass.getIndex()];
+    }
+}
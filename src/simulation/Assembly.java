@@ -2,12 +2,12 @@ package simulation;
 
 import java.awt.Dimension;
 import java.awt.Graphics2D;
-import java.awt.MouseInfo;
-import java.awt.Point;
-import java.awt.PointerInfo;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import view.Canvas;
+import util.Force;
 
 
 /**
@@ -21,51 +21,128 @@ public class Assembly {
 
     private double myCenterExponentValue = 2;
 
-    private Canvas myView;
-
     // simulation state
-    private List<Mass> myMasses;
+    private MassStore myMasses;
     private List<Spring> mySprings;
+    private List<Spring> mySpringView;
+    // springs in batches that can run in parallel, redone when springs change
+    private SpringColoring mySpringColoring;
+    // the evaluated springs packed into arrays, in batch order
+    private SpringKernel mySpringKernel;
+    // springs the force evaluator applies: all but any the integrator does itself
+    private List<Spring> myEvaluatedSprings;
+    private boolean mySpringsChanged;
+    // rods, kept at length after each step rather than pushed by forces
+    private List<Spring> myRods;
+    private RodProjection myRodProjection;
+
+    // finds masses near a point, such as the one closest to the mouse
+    private SpatialGrid mySpatialGrid;
+    private AssemblyRenderer myRenderer;
+    private AssemblySnapshot mySnapshot;
 
     private CenterOfMass myCenterOfMass;
+    private Integrator myIntegrator;
+    private AssemblyForces myForces;
+    private ParallelForces myParallelForces;
 
-    private double myTotalMass;
-    private double myTotalXMass;
-    private double myTotalYMass;
-
-    private double myCenterXMass;
-    private double myCenterYMass;
-
-    // private PointerInfo myPointer = MouseInfo.getPointerInfo();
-    // private Point myPoint = myPointer.getLocation();
+    // mouse state, pushed in by whoever handles input
     private double myMouseX;
     private double myMouseY;
+    private boolean myMousePressed;
 
     private Mass myMouseMass = new FixedMass(myMouseX, myMouseY, -1);
-    private Mass myClosestMassToMouse = new Mass(0, 0, 0);
+    // stands in for the closest mass when there are no masses
+    private Mass myNoMass = new Mass(0, 0, 0);
+    private Mass myClosestMassToMouse = myNoMass;
     private Spring myMouseSpring = new Spring(myMouseMass, myMouseMass, 0, 0);
 
     /**
-     * Constructs Assembly that is displayed on canvas
-     * 
-     * @param canvas The view
+     * Constructs an empty Assembly
      */
-    public Assembly (Canvas canvas) {
-        myView = canvas;
-        myMasses = new ArrayList<Mass>();
+    public Assembly () {
+        myMasses = new MassStore();
         mySprings = new ArrayList<Spring>();
+        mySpringView = Collections.unmodifiableList(mySprings);
+        mySpringColoring = new SpringColoring();
+        mySpringKernel = new SpringKernel();
+        myEvaluatedSprings = mySprings;
+        myRods = new ArrayList<Spring>();
+        myRodProjection = new RodProjection();
+        mySpatialGrid = new SpatialGrid(myMasses);
+        myRenderer = new AssemblyRenderer();
+        mySnapshot = new AssemblySnapshot();
         myCenterOfMass = new CenterOfMass(myCenterExponentValue);
+        myIntegrator = new SemiImplicitEuler();
+        myForces = new AssemblyForces();
+    }
+
+    /**
+     * Returns the method used to move the masses
+     * 
+     * @return
+     */
+    public Integrator getIntegrator () {
+        return myIntegrator;
+    }
+
+    /**
+     * Change the method used to move the masses
+     * 
+     * @param integrator    the new method, used only by this assembly
+     */
+    public void setIntegrator (Integrator integrator) {
+        myIntegrator = integrator;
+        // the springs it leaves to the evaluator need working out again
+        mySpringsChanged = true;
+    }
+
+    /**
+     * Returns what keeps the rods at their lengths
+     * 
+     * @return
+     */
+    public RodProjection getRodProjection () {
+        return myRodProjection;
+    }
+
+    /**
+     * Apply global forces with the given (possibly parallel) scheduler
+     * 
+     * @param parallelForces    the scheduler, or null to stay on this thread
+     */
+    public void setParallelForces (ParallelForces parallelForces) {
+        myParallelForces = parallelForces;
+    }
+
+    /**
+     * Returns the springs in this assembly, which cannot be changed through
+     * the list; use add and clear instead
+     * 
+     * @return
+     */
+    public List<Spring> getSprings () {
+        return mySpringView;
     }
 
     /**
-     * Return the list of masses instantiated
+     * Return the store of masses instantiated
      * 
      * @return
      */
-    public List<Mass> getMasses () {
+    public MassStore getMasses () {
         return myMasses;
     }
 
+    /**
+     * Returns the grid that finds masses near a point
+     * 
+     * @return
+     */
+    public SpatialGrid getSpatialGrid () {
+        return mySpatialGrid;
+    }
+
     /**
      * Returns the center of mass
      * 
@@ -77,70 +154,100 @@ public class Assembly {
     }
 
     /**
-     * Draw all elements of the simulation.
+     * Draw all elements of the simulation that are in the pen's clip. Only
+     * safe while nothing is moving the masses; a display running beside
+     * the simulation draws snapshots instead.
      * 
      * @param pen Graphics2D pen
      */
     public void paint (Graphics2D pen) {
-        for (Spring s : mySprings) {
-            s.paint(pen);
-        }
-        for (Mass m : myMasses) {
-            if (m != myMouseMass) {
-                m.paint(pen);
-            }
-        }
+        mySnapshot.capture(this);
+        myRenderer.paint(pen, mySnapshot);
     }
 
     /**
-     * Calculate total mass in model
+     * Update simulation for this moment with no global forces.
+     * 
+     * @param elapsedTime Framerate
+     * @param bounds size of simulation
      */
-    public void calcTotalMass () {
-        for (Mass m : myMasses) {
-            double mass = m.getMyMass();
-            myTotalMass += mass;
-        }
+    public void update (double elapsedTime, Dimension bounds) {
+        update(elapsedTime, bounds, Collections.<Force> emptyList());
     }
 
     /**
      * Update simulation for this moment, given the time since the last moment.
-     * Updating consists of recalculating center of mass, checking mouse input,
-     * and updating springs and masses
+     * Updating consists of checking mouse input,
+     * changing muscle lengths, bouncing masses off the walls, letting the
+     * integrator move the masses under the springs, center of mass, and the
+     * given global forces, and then putting the rods back to length.
      * 
      * @param elapsedTime Framerate
+     * @param bounds size of simulation
+     * @param forces global forces acting on every mass
      */
-    public void update (double elapsedTime) {
-        calculateCenterXMass();
-        calculateCenterYMass();
+    public void update (double elapsedTime, Dimension bounds, List<Force> forces) {
         createSpring();
-        
-        Dimension bounds = myView.getSize();
 
-        for (Spring s : mySprings) {
-            s.update(elapsedTime, bounds);
+        for (int i = 0; i < mySprings.size(); i++) {
+            mySprings.get(i).updateLength(elapsedTime);
+        }
+        List<Spring> evaluated = mySprings;
+        if (myIntegrator instanceof SpringIntegrator) {
+            evaluated = ((SpringIntegrator) myIntegrator).prepare(this, mySpringsChanged,
+                                                                  elapsedTime);
+        }
+        boolean changed = mySpringsChanged;
+        if (changed) {
+            myRods.clear();
+            for (int i = 0; i < mySprings.size(); i++) {
+                if (mySprings.get(i) instanceof Rod) {
+                    myRods.add(mySprings.get(i));
+                }
+            }
+        }
+        if (changed || evaluated != myEvaluatedSprings) {
+            myEvaluatedSprings = evaluated;
+            mySpringColoring.color(myEvaluatedSprings, myMasses);
+            mySpringKernel.pack(myEvaluatedSprings, mySpringColoring, myMasses);
+            mySpringsChanged = false;
         }
-        for (Mass m : myMasses) {
-            myCenterOfMass.update(m, myCenterXMass, myCenterYMass);
-            m.update(elapsedTime, bounds);
+        myMasses.bounce(bounds);
+        myForces.set(bounds, forces);
+        myIntegrator.step(myMasses, myForces, elapsedTime);
+        if (changed || !myRods.isEmpty()) {
+            myRodProjection.project(myRods, changed, myMasses, elapsedTime, myParallelForces);
         }
     }
     
+    /**
+     * Tell the assembly where the mouse is and whether it is pressed
+     * 
+     * @param x         mouse x coordinate
+     * @param y         mouse y coordinate
+     * @param pressed   true while the mouse is held down
+     */
+    public void setMouse (double x, double y, boolean pressed) {
+        myMouseX = x;
+        myMouseY = y;
+        myMousePressed = pressed;
+    }
+
     /**
      * Creates a pseudo mass and generates a spring to the closest
      * simulation mass. 
      */
     public void createSpring () {
-        PointerInfo a = MouseInfo.getPointerInfo();
-        Point b = a.getLocation();
-        myMouseX = b.getX();
-        myMouseY = b.getY();
         myMouseMass.setCenter(myMouseX, myMouseY);
         
-        if (!myView.getMouseClick()) {
+        if (!myMousePressed) {
             findClosestMassToMouse();
         }
+        // the original pull of 1 a frame, however heavy the mass
         myMouseSpring.setParameters(myMouseMass, myClosestMassToMouse,
-                                    myMouseMass.distance(myClosestMassToMouse) / 2, 1);
+                                    myMouseMass.distance(myClosestMassToMouse) / 2,
+                                    FrameUnits.springConstant(1, myMouseMass,
+                                                              myClosestMassToMouse));
 
         drag();
     }
@@ -150,21 +257,20 @@ public class Assembly {
      * that is shown when mouse is clicked
      */
     public void drag () {
-        if (myView.getMouseClick()) {
+        // the mouse spring is in the list exactly when the mouse mass is here,
+        // which is cheap to check, unlike searching the spring list
+        if (myMousePressed) {
             if (!myMasses.contains(myMouseMass)) {
                 myMasses.add(myMouseMass);
-            }
-            if (!mySprings.contains(myMouseSpring)) {
                 mySprings.add(myMouseSpring);
-
+                mySpringsChanged = true;
             }
         }
-        if (!myView.getMouseClick()) {
+        if (!myMousePressed) {
             if (myMasses.contains(myMouseMass)) {
                 myMasses.remove(myMouseMass);
-            }
-            if (mySprings.contains(myMouseSpring)) {
                 mySprings.remove(myMouseSpring);
+                mySpringsChanged = true;
             }
         }
     }
@@ -174,15 +280,8 @@ public class Assembly {
      * @return
      */
     public void findClosestMassToMouse () {
-        double shortestDistance = -1;
-        Mass closestMass = new Mass(0, 0, 0);
-        for (Mass m : myMasses) {
-            if (m.distance(myMouseMass) < shortestDistance || shortestDistance < 0) {
-                shortestDistance = m.distance(myMouseMass);
-                closestMass = m;
-            }
-        }
-        myClosestMassToMouse = closestMass;
+        int closest = mySpatialGrid.nearest(myMouseX, myMouseY);
+        myClosestMassToMouse = (closest < 0) ? myNoMass : myMasses.getMass(closest);
     }
 
     /**
@@ -195,44 +294,170 @@ public class Assembly {
     }
 
     /**
-     * Applies a center of mass force that attracts all masses to the calculated
-     * center of mass
-     * 
-     * @param m
+     * Returns true if the given mass is only here while the mouse is
+     * pressed, and so is not part of the model.
      */
+    boolean isTransient (Mass mass) {
+        return mass == myMouseMass;
+    }
 
     /**
-     * Calculate the center of mass, the y coordinate
+     * Returns true if the given spring is only here while the mouse is
+     * pressed, and so is not part of the model.
      */
-    public void calculateCenterYMass () {
-        calcTotalMass();
+    boolean isTransient (Spring spring) {
+        return spring == myMouseSpring;
+    }
 
-        for (Mass m : myMasses) {
-            double y = m.getY();
-            double mass = m.getMyMass();
-            myTotalYMass += y * mass;
-        }
+    /**
+     * Returns the most bytes writeState can take for this assembly now.
+     */
+    int stateSize () {
+        return Short.BYTES + Checkpoint.MAX_NAME_BYTES + Checkpoint.ASSEMBLY_SIZE +
+               Checkpoint.storeSize(myMasses.size()) + mySprings.size() * Checkpoint.MUSCLE_SIZE;
+    }
 
-        myCenterYMass = myTotalYMass / myTotalMass;
-        myTotalYMass = 0;
-        myTotalMass = 0;
+    /**
+     * Write everything needed to carry on exactly where this assembly is
+     * now: the integrator used, the center of mass toggle, the mouse, every
+     * mass, and every spring with its current rest length (see Checkpoint).
+     *
+     * @param out       buffer with room for stateSize bytes
+     */
+    void writeState (ByteBuffer out) {
+        byte[] name = myIntegrator.getClass().getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > Checkpoint.MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("integrator name is too long");
+        }
+        out.putShort((short) name.length);
+        out.put(name);
+        out.put((byte) (myCenterOfMass.isCenterOfMassOn() ? 1 : 0));
+        out.putDouble(myMouseX);
+        out.putDouble(myMouseY);
+        out.put((byte) (myMousePressed ? 1 : 0));
+        out.putInt(indexOf(myClosestMassToMouse));
+        out.putInt(indexOf(myMouseMass));
+        myMasses.writeState(out);
+        out.putInt(mySprings.size());
+        out.putInt(mySprings.indexOf(myMouseSpring));
+        for (int i = 0; i < mySprings.size(); i++) {
+            Spring s = mySprings.get(i);
+            if (s.getStart().getStore() != myMasses ||
+                (s.getEnd().getStore() != myMasses && s.getEnd() != myNoMass)) {
+                throw new IllegalArgumentException("spring " + i + " joins a mass from elsewhere");
+            }
+            boolean muscle = s instanceof Muscle;
+            out.put(muscle ? Checkpoint.MUSCLE : (s instanceof Rod) ? Checkpoint.ROD
+                                                                    : Checkpoint.SPRING);
+            out.putInt(s.getStart().getIndex());
+            out.putInt(indexOf(s.getEnd()));
+            out.putDouble(s.getLength());
+            out.putDouble(s.getK());
+            if (muscle) {
+                Muscle m = (Muscle) s;
+                out.putDouble(m.getAmplitude());
+                out.putDouble(m.getDelay());
+                out.putDouble(m.getFrequency());
+            }
+        }
     }
 
     /**
-     * Calculate the center of mass, the x coordinate
+     * Replace everything in this assembly with a state written by
+     * writeState.
+     *
+     * @param in        buffer positioned at the state
      */
-    public void calculateCenterXMass () {
-        calcTotalMass();
+    void readState (ByteBuffer in) {
+        byte[] name = new byte[in.getShort()];
+        in.get(name);
+        readIntegrator(new String(name, StandardCharsets.UTF_8));
+        if (myCenterOfMass.isCenterOfMassOn() != (in.get() != 0)) {
+            myCenterOfMass.toggleCenterOfMass();
+        }
+        myMouseX = in.getDouble();
+        myMouseY = in.getDouble();
+        myMousePressed = in.get() != 0;
+        int closest = in.getInt();
+        int mouse = in.getInt();
 
-        for (Mass m : myMasses) {
-            double x = m.getX();
-            double mass = m.getMyMass();
-            myTotalXMass += x * mass;
+        mySprings.clear();
+        myMasses.readState(in);
+        if (mouse >= 0) {
+            myMasses.replaceHandle(checkIndex(mouse), myMouseMass);
+        }
+        myClosestMassToMouse = massAt(closest);
+        int springCount = in.getInt();
+        int mouseSpring = in.getInt();
+        for (int i = 0; i < springCount; i++) {
+            byte kind = in.get();
+            if (kind != Checkpoint.SPRING && kind != Checkpoint.MUSCLE &&
+                kind != Checkpoint.ROD) {
+                throw new IllegalArgumentException("spring " + i + " is of unknown kind " + kind);
+            }
+            Mass start = myMasses.getMass(checkIndex(in.getInt()));
+            Mass end = massAt(in.getInt());
+            double length = in.getDouble();
+            double k = in.getDouble();
+            if (i == mouseSpring) {
+                myMouseSpring.setParameters(start, end, length, k);
+                mySprings.add(myMouseSpring);
+            }
+            else if (kind == Checkpoint.MUSCLE) {
+                mySprings.add(new Muscle(start, end, length, k,
+                                         in.getDouble(), in.getDouble(), in.getDouble()));
+            }
+            else if (kind == Checkpoint.ROD) {
+                mySprings.add(new Rod(start, end, length));
+            }
+            else {
+                mySprings.add(new Spring(start, end, length, k));
+            }
         }
+        mySpringsChanged = true;
+    }
 
-        myCenterXMass = myTotalXMass / myTotalMass;
-        myTotalXMass = 0;
-        myTotalMass = 0;
+    /**
+     * Use the integrator with the given class name, keeping the current
+     * one if it is already of that class.
+     */
+    private void readIntegrator (String name) {
+        if (myIntegrator.getClass().getName().equals(name)) {
+            return;
+        }
+        try {
+            myIntegrator = Class.forName(name).asSubclass(Integrator.class)
+                                .getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("cannot use integrator " + name);
+        }
+    }
+
+    /**
+     * Returns the index of the given mass in this assembly's store, or -1
+     * if it is not there.
+     */
+    private int indexOf (Mass mass) {
+        return myMasses.contains(mass) ? mass.getIndex() : -1;
+    }
+
+    /**
+     * Returns the mass at the given index of the store, or the stand-in
+     * for no mass if the index is -1.
+     */
+    private Mass massAt (int index) {
+        return (index == -1) ? myNoMass : myMasses.getMass(checkIndex(index));
+    }
+
+    /**
+     * Returns the given index if it is one of the store's.
+     */
+    private int checkIndex (int index) {
+        if (index < 0 || index >= myMasses.size()) {
+            throw new IllegalArgumentException("no mass at index " + index);
+        }
+        return index;
     }
 
     /**
@@ -251,6 +476,7 @@ public class Assembly {
      */
     public void add (Spring spring) {
         mySprings.add(spring);
+        mySpringsChanged = true;
     }
 
     /**
@@ -259,6 +485,46 @@ public class Assembly {
     public void clear () {
         myMasses.clear();
         mySprings.clear();
+        mySpringsChanged = true;
     }
 
+    /**
+     * Works out the forces on this assembly's masses for the integrator:
+     * global forces first, then springs and the pull to the center of mass.
+     */
+    private class AssemblyForces implements ForceEvaluator {
+        private Dimension myBounds;
+        private List<Force> myGlobalForces;
+
+        /**
+         * Set what the next evaluations use
+         */
+        public void set (Dimension bounds, List<Force> forces) {
+            myBounds = bounds;
+            myGlobalForces = forces;
+        }
+
+        @Override
+        public void evaluate (MassStore masses) {
+            masses.clearForces();
+            if (myParallelForces != null) {
+                myParallelForces.apply(myGlobalForces, myBounds, masses);
+            }
+            else {
+                for (int f = 0; f < myGlobalForces.size(); f++) {
+                    myGlobalForces.get(f).update(myBounds, masses);
+                }
+            }
+            if (mySpringKernel.isStale()) {
+                mySpringKernel.pack(myEvaluatedSprings, mySpringColoring, masses);
+            }
+            if (myParallelForces != null) {
+                myParallelForces.apply(mySpringKernel, mySpringColoring);
+            }
+            else {
+                mySpringKernel.applyHookesLaw();
+            }
+            myCenterOfMass.update(masses);
+        }
+    }
 }
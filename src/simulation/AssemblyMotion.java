@@ -0,0 +1,125 @@
+package simulation;
+
+import java.util.List;
+
+
+/**
+ * A copy of what stepping an assembly changes: where its masses are, how
+ * fast they move, the forces last put on them, its center of mass and
+ * the lengths of its springs. Putting a copy back writes these into the
+ * masses and springs the assembly already has, so anything holding on to
+ * a Mass or Spring still sees the assembly after a rolled back step. The
+ * arrays are kept and refilled by each capture, so capturing the same
+ * model again and again allocates nothing.
+ *
+ * Masses and springs added since the capture, like the mouse's, are left
+ * as they are; ones removed since are not brought back.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+class AssemblyMotion {
+    private Mass[] myMasses = new Mass[0];
+    // x, y, vx, vy, fx, fy of each mass
+    private double[] myValues = new double[0];
+    private int myMassCount;
+    private int myStructureCount;
+    private boolean myHasCenter;
+    private double myCenterX;
+    private double myCenterY;
+    private Spring[] mySprings = new Spring[0];
+    private double[] myLengths = new double[0];
+    private int mySpringCount;
+
+    /**
+     * Copy the given assembly as it is now.
+     *
+     * @param assembly  the assembly
+     */
+    public void capture (Assembly assembly) {
+        MassStore masses = assembly.getMasses();
+        int n = masses.size();
+        if (myMasses.length < n) {
+            myMasses = new Mass[n];
+            myValues = new double[6 * n];
+        }
+        double[] x = masses.getPositionX();
+        double[] y = masses.getPositionY();
+        double[] vx = masses.getVelocityX();
+        double[] vy = masses.getVelocityY();
+        double[] fx = masses.getForceX();
+        double[] fy = masses.getForceY();
+        for (int i = 0; i < n; i++) {
+            myMasses[i] = masses.getMass(i);
+            int at = 6 * i;
+            myValues[at] = x[i];
+            myValues[at + 1] = y[i];
+            myValues[at + 2] = vx[i];
+            myValues[at + 3] = vy[i];
+            myValues[at + 4] = fx[i];
+            myValues[at + 5] = fy[i];
+        }
+        for (int i = n; i < myMassCount; i++) {
+            myMasses[i] = null;
+        }
+        myMassCount = n;
+        myStructureCount = masses.getStructureCount();
+        myHasCenter = masses.hasCenter();
+        if (myHasCenter) {
+            myCenterX = masses.getCenterX();
+            myCenterY = masses.getCenterY();
+        }
+
+        List<Spring> springs = assembly.getSprings();
+        int s = springs.size();
+        if (mySprings.length < s) {
+            mySprings = new Spring[s];
+            myLengths = new double[s];
+        }
+        for (int i = 0; i < s; i++) {
+            mySprings[i] = springs.get(i);
+            myLengths[i] = mySprings[i].getLength();
+        }
+        for (int i = s; i < mySpringCount; i++) {
+            mySprings[i] = null;
+        }
+        mySpringCount = s;
+    }
+
+    /**
+     * Put the given assembly back as it was at the last capture of it.
+     *
+     * @param assembly  the assembly captured
+     */
+    public void restore (Assembly assembly) {
+        MassStore masses = assembly.getMasses();
+        double[] x = masses.getPositionX();
+        double[] y = masses.getPositionY();
+        double[] vx = masses.getVelocityX();
+        double[] vy = masses.getVelocityY();
+        double[] fx = masses.getForceX();
+        double[] fy = masses.getForceY();
+        for (int i = 0; i < myMassCount; i++) {
+            Mass mass = myMasses[i];
+            if (mass.getStore() != masses) {
+                continue;
+            }
+            int index = mass.getIndex();
+            int at = 6 * i;
+            x[index] = myValues[at];
+            y[index] = myValues[at + 1];
+            vx[index] = myValues[at + 2];
+            vy[index] = myValues[at + 3];
+            fx[index] = myValues[at + 4];
+            fy[index] = myValues[at + 5];
+        }
+        masses.positionsChanged();
+        // the saved center only holds if the same masses are there
+        if (myHasCenter && masses.getStructureCount() == myStructureCount) {
+            masses.restoreCenter(myCenterX, myCenterY);
+        }
+
+        for (int i = 0; i < mySpringCount; i++) {
+            mySprings[i].setLength(myLengths[i]);
+        }
+    }
+}
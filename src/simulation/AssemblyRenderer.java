@@ -0,0 +1,152 @@
+package simulation;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Draws an assembly quickly enough for very big models. Springs are
+ * gathered into one path per color, so the pen changes color a few times
+ * rather than once per spring, and each mass is a copy of one picture
+ * drawn ahead of time. Anything outside the part of the screen being
+ * painted is skipped. Spring colors come from the strain the springs kept
+ * during the last step, so nothing is measured while painting.
+ *
+ * It draws from a snapshot of the assembly, so it can paint on one thread
+ * while the simulation goes on on another.
+ *
+ * The paths and picture are kept between paints, so painting the same
+ * model again allocates next to nothing.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class AssemblyRenderer {
+    private List<Color> myColors = new ArrayList<Color>();
+    private List<Path2D.Float> myPaths = new ArrayList<Path2D.Float>();
+    private BufferedImage myMassImage;
+    private GraphicsConfiguration myMassImageConfiguration;
+    private boolean myMassImageSmooth;
+
+    /**
+     * Draw the springs and then the masses of the given snapshot, leaving
+     * out the mouse's mass.
+     *
+     * @param pen       Graphics2D pen
+     * @param assembly  snapshot of the assembly
+     */
+    public void paint (Graphics2D pen, AssemblySnapshot assembly) {
+        Rectangle clip = pen.getClipBounds();
+        paintSprings(pen, assembly, clip);
+        paintMasses(pen, assembly, clip);
+    }
+
+    private void paintSprings (Graphics2D pen, AssemblySnapshot assembly, Rectangle clip) {
+        for (int p = 0; p < myPaths.size(); p++) {
+            myPaths.get(p).reset();
+        }
+        double[] x = assembly.getX();
+        double[] y = assembly.getY();
+        int[] starts = assembly.getSpringStarts();
+        int[] ends = assembly.getSpringEnds();
+        Color[] colors = assembly.getSpringColors();
+        for (int i = 0; i < assembly.getSpringCount(); i++) {
+            int start = starts[i];
+            int end = ends[i];
+            if (start < 0 || end < 0) {
+                continue;
+            }
+            // whole pixels, as drawLine would use
+            int x1 = (int) x[start];
+            int y1 = (int) y[start];
+            int x2 = (int) x[end];
+            int y2 = (int) y[end];
+            if (clip != null &&
+                (Math.max(x1, x2) < clip.x || Math.min(x1, x2) > clip.x + clip.width ||
+                 Math.max(y1, y2) < clip.y || Math.min(y1, y2) > clip.y + clip.height)) {
+                continue;
+            }
+            Path2D.Float path = pathFor(colors[i]);
+            path.moveTo(x1, y1);
+            path.lineTo(x2, y2);
+        }
+        for (int p = 0; p < myPaths.size(); p++) {
+            Path2D.Float path = myPaths.get(p);
+            if (path.getCurrentPoint() != null) {
+                pen.setColor(myColors.get(p));
+                pen.draw(path);
+            }
+        }
+    }
+
+    private void paintMasses (Graphics2D pen, AssemblySnapshot assembly, Rectangle clip) {
+        BufferedImage image = massImage(pen);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[] x = assembly.getX();
+        double[] y = assembly.getY();
+        int hidden = assembly.getHiddenMass();
+        for (int i = 0; i < assembly.getMassCount(); i++) {
+            // same corner as Mass.paint
+            int left = (int) (x[i] - Mass.DEFAULT_SIZE.width / 2);
+            int top = (int) (y[i] - Mass.DEFAULT_SIZE.height / 2);
+            if (i == hidden || clip != null &&
+                (left + width < clip.x || left > clip.x + clip.width ||
+                 top + height < clip.y || top > clip.y + clip.height)) {
+                continue;
+            }
+            pen.drawImage(image, left, top, null);
+        }
+    }
+
+    /**
+     * Returns the path for springs of the given color, making one the
+     * first time the color is seen.
+     */
+    private Path2D.Float pathFor (Color color) {
+        for (int p = 0; p < myColors.size(); p++) {
+            if (myColors.get(p).equals(color)) {
+                return myPaths.get(p);
+            }
+        }
+        Path2D.Float path = new Path2D.Float();
+        myColors.add(color);
+        myPaths.add(path);
+        return path;
+    }
+
+    /**
+     * Returns a picture of a mass suited to the given pen's screen, drawn
+     * the way Mass.paint draws one.
+     */
+    private BufferedImage massImage (Graphics2D pen) {
+        GraphicsConfiguration configuration = pen.getDeviceConfiguration();
+        // without antialiasing every pixel is either drawn or not, which is
+        // much quicker to copy than pixels that have to be blended
+        boolean smooth = RenderingHints.VALUE_ANTIALIAS_ON.equals(
+                pen.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+        if (myMassImage == null || configuration != myMassImageConfiguration ||
+            smooth != myMassImageSmooth) {
+            int width = (int) Mass.DEFAULT_SIZE.getWidth();
+            int height = (int) Mass.DEFAULT_SIZE.getHeight();
+            myMassImage = configuration.createCompatibleImage(width, height, smooth ?
+                                                              Transparency.TRANSLUCENT :
+                                                              Transparency.BITMASK);
+            Graphics2D stamp = myMassImage.createGraphics();
+            stamp.setRenderingHints(pen.getRenderingHints());
+            stamp.setColor(Color.BLACK);
+            stamp.fillOval(0, 0, width, height);
+            stamp.dispose();
+            myMassImageConfiguration = configuration;
+            myMassImageSmooth = smooth;
+        }
+        return myMassImage;
+    }
+}
@@ -0,0 +1,166 @@
+package simulation;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import util.Force;
+
+
+/**
+ * Steps independent assemblies at the same time on the fork/join pool
+ * of a ParallelForces. Assemblies only share the global forces, which
+ * they read but never change during a step.
+ * 
+ * Rather than one task per assembly, assemblies are packed into a few
+ * bins of about equal work (masses plus springs), largest first into
+ * the lightest bin, so many small models and a few big ones still keep
+ * every thread busy. The pool's work stealing evens out what is left.
+ * All bins finish before the step returns, so nothing is drawn half way.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class AssemblyScheduler {
+    /**
+     * Bins made per thread, so stealing has something to balance
+     */
+    public static final int BINS_PER_THREAD = 2;
+
+    private ParallelForces myParallelForces;
+    // plan: bins of assembly indices, redone when the work changes
+    private List<int[]> myBins = new ArrayList<int[]>();
+    private long[] myPlannedCosts = new long[0];
+    private int myPlannedParallelism;
+
+    /**
+     * Create a scheduler that runs on the given forces' pool.
+     * 
+     * @param parallelForces    source of the pool and its size
+     */
+    public AssemblyScheduler (ParallelForces parallelForces) {
+        myParallelForces = parallelForces;
+    }
+
+    /**
+     * Update every assembly for this step and wait for all of them.
+     * 
+     * @param assemblies    the assemblies
+     * @param elapsedTime   length of the step
+     * @param bounds        size of simulation
+     * @param forces        global forces
+     */
+    public void update (List<Assembly> assemblies, double elapsedTime, Dimension bounds,
+                        List<Force> forces) {
+        if (myParallelForces.getPool() == null || assemblies.size() < 2) {
+            for (int a = 0; a < assemblies.size(); a++) {
+                assemblies.get(a).update(elapsedTime, bounds, forces);
+            }
+            return;
+        }
+        plan(assemblies);
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(myBins.size());
+        for (int[] bin : myBins) {
+            tasks.add(new BinTask(assemblies, bin, elapsedTime, bounds, forces));
+        }
+        myParallelForces.getPool().invoke(new RecursiveAction() {
+            // default serialization ID
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute () {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Returns the work of stepping an assembly.
+     */
+    private static long cost (Assembly assembly) {
+        return assembly.getMasses().size() + assembly.getSprings().size() + 1;
+    }
+
+    /**
+     * Pack the assemblies into bins, unless the plan from last step still fits.
+     */
+    private void plan (List<Assembly> assemblies) {
+        int n = assemblies.size();
+        int parallelism = myParallelForces.getParallelism();
+        boolean changed = myPlannedCosts.length != n || myPlannedParallelism != parallelism;
+        for (int a = 0; a < n && !changed; a++) {
+            changed = myPlannedCosts[a] != cost(assemblies.get(a));
+        }
+        if (!changed) {
+            return;
+        }
+        myPlannedParallelism = parallelism;
+        myPlannedCosts = new long[n];
+        // sort by cost, largest first, keeping the index in the low bits
+        long[] order = new long[n];
+        for (int a = 0; a < n; a++) {
+            myPlannedCosts[a] = cost(assemblies.get(a));
+            order[a] = (myPlannedCosts[a] << Integer.SIZE) | a;
+        }
+        Arrays.sort(order);
+        int binCount = Math.min(n, parallelism * BINS_PER_THREAD);
+        long[] load = new long[binCount];
+        int[] sizes = new int[binCount];
+        int[] binOf = new int[n];
+        for (int k = n - 1; k >= 0; k--) {
+            int a = (int) order[k];
+            int lightest = 0;
+            for (int b = 1; b < binCount; b++) {
+                if (load[b] < load[lightest]) {
+                    lightest = b;
+                }
+            }
+            load[lightest] += myPlannedCosts[a];
+            binOf[a] = lightest;
+            sizes[lightest]++;
+        }
+        myBins.clear();
+        int[][] bins = new int[binCount][];
+        for (int b = 0; b < binCount; b++) {
+            bins[b] = new int[sizes[b]];
+            sizes[b] = 0;
+            myBins.add(bins[b]);
+        }
+        // keep list order inside each bin
+        for (int a = 0; a < n; a++) {
+            int b = binOf[a];
+            bins[b][sizes[b]++] = a;
+        }
+    }
+
+    /**
+     * Steps the assemblies of one bin, one after another.
+     */
+    private static class BinTask extends RecursiveAction {
+        // default serialization ID
+        private static final long serialVersionUID = 1L;
+
+        private final List<Assembly> myAssemblies;
+        private final int[] myBin;
+        private final double myElapsedTime;
+        private final Dimension myBounds;
+        private final List<Force> myForces;
+
+        public BinTask (List<Assembly> assemblies, int[] bin, double elapsedTime,
+                        Dimension bounds, List<Force> forces) {
+            myAssemblies = assemblies;
+            myBin = bin;
+            myElapsedTime = elapsedTime;
+            myBounds = bounds;
+            myForces = forces;
+        }
+
+        @Override
+        protected void compute () {
+            for (int a : myBin) {
+                myAssemblies.get(a).update(myElapsedTime, myBounds, myForces);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package simulation;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A copy of what is needed to draw an assembly at one moment: where its
+ * masses are, which masses its springs join, and the color of each
+ * spring. Drawing from a copy lets the simulation go on changing the
+ * assembly meanwhile. The arrays are kept and refilled by each capture,
+ * so capturing the same model again and again allocates nothing.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class AssemblySnapshot {
+    private double[] myX = new double[0];
+    private double[] myY = new double[0];
+    private int myMassCount;
+    // mass that is not drawn (the mouse's), or -1
+    private int myHidden = -1;
+    private int[] mySpringStart = new int[0];
+    private int[] mySpringEnd = new int[0];
+    private Color[] mySpringColor = new Color[0];
+    private int mySpringCount;
+
+    /**
+     * Copy the given assembly as it is now.
+     *
+     * @param assembly  the assembly
+     */
+    public void capture (Assembly assembly) {
+        capture(assembly, 1);
+    }
+
+    /**
+     * Copy the given assembly with its masses the given fraction of the
+     * way through its last step, between where they were at its start and
+     * where they are now.
+     *
+     * @param assembly  the assembly
+     * @param fraction  0 for the start of the step, 1 for now
+     */
+    public void capture (Assembly assembly, double fraction) {
+        MassStore masses = assembly.getMasses();
+        List<Spring> springs = assembly.getSprings();
+        int n = masses.size();
+        if (myX.length < n) {
+            myX = new double[n];
+            myY = new double[n];
+        }
+        if (fraction >= 1) {
+            System.arraycopy(masses.getPositionX(), 0, myX, 0, n);
+            System.arraycopy(masses.getPositionY(), 0, myY, 0, n);
+        }
+        else {
+            interpolate(masses.getPreviousX(), masses.getPositionX(), fraction, myX, n);
+            interpolate(masses.getPreviousY(), masses.getPositionY(), fraction, myY, n);
+        }
+        myMassCount = n;
+        myHidden = -1;
+        for (int i = n - 1; i >= 0; i--) {
+            // the mouse's mass is almost always the last one added
+            if (assembly.isTransient(masses.getMass(i))) {
+                myHidden = i;
+                break;
+            }
+        }
+
+        int s = springs.size();
+        if (mySpringStart.length < s) {
+            mySpringStart = new int[s];
+            mySpringEnd = new int[s];
+            mySpringColor = new Color[s];
+        }
+        for (int i = 0; i < s; i++) {
+            Spring spring = springs.get(i);
+            mySpringStart[i] = indexIn(spring.getStart(), masses);
+            mySpringEnd[i] = indexIn(spring.getEnd(), masses);
+            mySpringColor[i] = spring.getColor(spring.getStrain());
+        }
+        if (mySpringCount > s) {
+            // let go of colors beyond the end
+            Arrays.fill(mySpringColor, s, mySpringCount, null);
+        }
+        mySpringCount = s;
+    }
+
+    /**
+     * Returns the number of masses
+     *
+     * @return
+     */
+    public int getMassCount () {
+        return myMassCount;
+    }
+
+    /**
+     * Returns the x coordinates of the masses; only the first getMassCount
+     * are in use
+     *
+     * @return
+     */
+    public double[] getX () {
+        return myX;
+    }
+
+    /**
+     * Returns the y coordinates of the masses; only the first getMassCount
+     * are in use
+     *
+     * @return
+     */
+    public double[] getY () {
+        return myY;
+    }
+
+    /**
+     * Returns the index of the mass that is not drawn, or -1
+     *
+     * @return
+     */
+    public int getHiddenMass () {
+        return myHidden;
+    }
+
+    /**
+     * Returns the number of springs
+     *
+     * @return
+     */
+    public int getSpringCount () {
+        return mySpringCount;
+    }
+
+    /**
+     * Returns the index of the mass at the start of each spring, -1 if it
+     * is not in the assembly
+     *
+     * @return
+     */
+    public int[] getSpringStarts () {
+        return mySpringStart;
+    }
+
+    /**
+     * Returns the index of the mass at the end of each spring, -1 if it
+     * is not in the assembly
+     *
+     * @return
+     */
+    public int[] getSpringEnds () {
+        return mySpringEnd;
+    }
+
+    /**
+     * Returns the color of each spring
+     *
+     * @return
+     */
+    public Color[] getSpringColors () {
+        return mySpringColor;
+    }
+
+    private static void interpolate (double[] from, double[] to, double fraction,
+                                     double[] result, int n) {
+        for (int i = 0; i < n; i++) {
+            result[i] = from[i] + fraction * (to[i] - from[i]);
+        }
+    }
+
+    private static int indexIn (Mass mass, MassStore masses) {
+        return masses.contains(mass) ? mass.getIndex() : -1;
+    }
+}
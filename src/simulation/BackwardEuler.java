@@ -0,0 +1,424 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import util.SparseMatrix;
+
+
+/**
+ * Backward (implicit) Euler for the springs: the velocities at the end of
+ * the step are found from the spring forces at the end of the step, not
+ * the start, so stiff springs cannot throw the masses further each step
+ * the way they do explicitly. Steps many times longer than an explicit
+ * integrator could take stay stable; the price is that fast swinging is
+ * damped out rather than followed.
+ *
+ * Each step linearizes the springs about where the masses are, which
+ * gives one linear system for the change in every velocity,
+ * (M - h^2 K) dv = h (f + h K v), where M holds the masses, K is how the
+ * spring forces change as the masses move, f the forces now and v the
+ * velocities now. The matrix is kept in CSR form, its layout worked out
+ * only when the springs change, and the system is solved by conjugate
+ * gradients with the diagonal as preconditioner, starting from the last
+ * step's answer, which is usually close.
+ *
+ * The global forces, the pull to the center of mass and the mouse's
+ * spring are still applied explicitly, by the force evaluator.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class BackwardEuler implements SpringIntegrator {
+    /**
+     * Default size of the residual, compared to the right hand side,
+     * that counts as solved
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-6;
+    /**
+     * Default most conjugate gradient iterations per step
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 200;
+
+    // each spring fills four 2 by 2 blocks, each found at two places
+    private static final int SPRING_ENTRIES = 8;
+
+    private double myTolerance = DEFAULT_TOLERANCE;
+    private int myMaxIterations = DEFAULT_MAX_ITERATIONS;
+    private int myIterations;
+
+    // what the layout below was worked out for
+    private Assembly myAssembly;
+    private int myStructureCount = -1;
+    private List<Spring> myExplicitSprings;
+    private List<Spring> myImplicitSprings;
+    // unknown of each mass, -1 for masses that do not move
+    private int[] myUnknown = new int[0];
+    // for each spring, where its blocks are in the matrix, -1 if not there
+    private int[] mySpringEntries = new int[0];
+    // where the diagonal of each row is in the matrix
+    private int[] myDiagonalEntries = new int[0];
+    private SparseMatrix myMatrix;
+    // vectors for the solve, two entries per unknown
+    private double[] myRightSide = new double[0];
+    private double[] myChange = new double[0];
+    private double[] myResidual = new double[0];
+    private double[] myDirection = new double[0];
+    private double[] myProduct = new double[0];
+    private double[] myPreconditioned = new double[0];
+    private double[] myDiagonal = new double[0];
+
+    /**
+     * Returns the size of the residual, compared to the right hand side,
+     * that counts as solved
+     *
+     * @return
+     */
+    public double getTolerance () {
+        return myTolerance;
+    }
+
+    /**
+     * Change how closely each step's system is solved.
+     *
+     * @param tolerance     size of the residual compared to the right hand side
+     */
+    public void setTolerance (double tolerance) {
+        myTolerance = tolerance;
+    }
+
+    /**
+     * Returns the most iterations per step
+     *
+     * @return
+     */
+    public int getMaxIterations () {
+        return myMaxIterations;
+    }
+
+    /**
+     * Change the most iterations per step; a step that runs out uses the
+     * closest answer found.
+     *
+     * @param iterations    most iterations
+     */
+    public void setMaxIterations (int iterations) {
+        myMaxIterations = iterations;
+    }
+
+    /**
+     * Returns the number of iterations the last step took
+     *
+     * @return
+     */
+    public int getIterations () {
+        return myIterations;
+    }
+
+    @Override
+    public List<Spring> prepare (Assembly assembly, boolean changed, double elapsedTime) {
+        MassStore masses = assembly.getMasses();
+        if (changed || assembly != myAssembly ||
+            masses.getStructureCount() != myStructureCount) {
+            layOut(assembly);
+        }
+        return myExplicitSprings;
+    }
+
+    @Override
+    public void step (MassStore masses, ForceEvaluator forces, double elapsedTime) {
+        double h = elapsedTime;
+        forces.evaluate(masses);
+        for (int s = 0; s < myImplicitSprings.size(); s++) {
+            myImplicitSprings.get(s).applyHookesLaw();
+        }
+        double[] x = masses.getPositionX();
+        double[] y = masses.getPositionY();
+        double[] vx = masses.getVelocityX();
+        double[] vy = masses.getVelocityY();
+        double[] fx = masses.getForceX();
+        double[] fy = masses.getForceY();
+        double[] m = masses.getMassValues();
+        int[] flags = masses.getFlags();
+
+        myMatrix.clear();
+        for (int i = 0; i < masses.size(); i++) {
+            int u = myUnknown[i];
+            if (u >= 0) {
+                myMatrix.add(myDiagonalEntries[2 * u], m[i]);
+                myMatrix.add(myDiagonalEntries[2 * u + 1], m[i]);
+                myRightSide[2 * u] = h * fx[i];
+                myRightSide[2 * u + 1] = h * fy[i];
+            }
+        }
+        for (int s = 0; s < myImplicitSprings.size(); s++) {
+            addSpring(masses, s, h);
+        }
+
+        solve(myMatrix.size());
+
+        masses.beginMoments();
+        for (int i = 0; i < masses.size(); i++) {
+            if ((flags[i] & MassStore.FIXED) == 0) {
+                int u = myUnknown[i];
+                if (u >= 0) {
+                    vx[i] += myChange[2 * u];
+                    vy[i] += myChange[2 * u + 1];
+                }
+                x[i] += vx[i] * h;
+                y[i] += vy[i] * h;
+            }
+            masses.addMoment(i);
+        }
+        masses.endMoments();
+    }
+
+    /**
+     * Add the given spring's part to the matrix and the right hand side.
+     */
+    private void addSpring (MassStore masses, int s, double h) {
+        Spring spring = myImplicitSprings.get(s);
+        Mass start = spring.getStart();
+        Mass end = spring.getEnd();
+        double dx = start.getX() - end.getX();
+        double dy = start.getY() - end.getY();
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance == 0) {
+            return;
+        }
+        double ux = dx / distance;
+        double uy = dy / distance;
+        // stiffness across the spring; left out when squashed, where it
+        // would stop the matrix being positive definite
+        double across = Math.max(0, 1 - spring.getLength() / distance);
+        double k = spring.getK();
+        double jxx = k * (across + (1 - across) * ux * ux);
+        double jxy = k * (1 - across) * ux * uy;
+        double jyy = k * (across + (1 - across) * uy * uy);
+        double h2 = h * h;
+
+        // how much more the spring will pull by the end of the step, given
+        // how fast its ends are moving apart now
+        double dvx = velocityX(start) - velocityX(end);
+        double dvy = velocityY(start) - velocityY(end);
+        double pullX = h2 * (jxx * dvx + jxy * dvy);
+        double pullY = h2 * (jxy * dvx + jyy * dvy);
+        int a = unknownOf(masses, start);
+        int b = unknownOf(masses, end);
+        if (a >= 0) {
+            myRightSide[2 * a] -= pullX;
+            myRightSide[2 * a + 1] -= pullY;
+        }
+        if (b >= 0) {
+            myRightSide[2 * b] += pullX;
+            myRightSide[2 * b + 1] += pullY;
+        }
+
+        int e = s * SPRING_ENTRIES;
+        addBlock(mySpringEntries[e], mySpringEntries[e + 1], h2, jxx, jxy, jyy);
+        addBlock(mySpringEntries[e + 2], mySpringEntries[e + 3], -h2, jxx, jxy, jyy);
+        addBlock(mySpringEntries[e + 4], mySpringEntries[e + 5], -h2, jxx, jxy, jyy);
+        addBlock(mySpringEntries[e + 6], mySpringEntries[e + 7], h2, jxx, jxy, jyy);
+    }
+
+    /**
+     * Add the given multiple of a symmetric 2 by 2 block whose rows start
+     * at the given places in the matrix.
+     */
+    private void addBlock (int top, int bottom, double scale,
+                           double xx, double xy, double yy) {
+        if (top >= 0) {
+            myMatrix.add(top, scale * xx);
+            myMatrix.add(top + 1, scale * xy);
+            myMatrix.add(bottom, scale * xy);
+            myMatrix.add(bottom + 1, scale * yy);
+        }
+    }
+
+    /**
+     * Solve the matrix times myChange = myRightSide by conjugate gradients,
+     * preconditioned by the diagonal, starting from what is in myChange.
+     */
+    private void solve (int n) {
+        myMatrix.getDiagonal(myDiagonal);
+        myMatrix.multiply(myChange, myProduct);
+        double target = 0;
+        for (int i = 0; i < n; i++) {
+            myResidual[i] = myRightSide[i] - myProduct[i];
+            myPreconditioned[i] = myResidual[i] / myDiagonal[i];
+            myDirection[i] = myPreconditioned[i];
+            target += myRightSide[i] * myRightSide[i];
+        }
+        target *= myTolerance * myTolerance;
+        double rz = dot(myResidual, myPreconditioned, n);
+        myIterations = 0;
+        while (myIterations < myMaxIterations && dot(myResidual, myResidual, n) > target) {
+            myMatrix.multiply(myDirection, myProduct);
+            double curvature = dot(myDirection, myProduct, n);
+            if (curvature <= 0) {
+                break;
+            }
+            double alpha = rz / curvature;
+            for (int i = 0; i < n; i++) {
+                myChange[i] += alpha * myDirection[i];
+                myResidual[i] -= alpha * myProduct[i];
+                myPreconditioned[i] = myResidual[i] / myDiagonal[i];
+            }
+            double next = dot(myResidual, myPreconditioned, n);
+            double beta = next / rz;
+            rz = next;
+            for (int i = 0; i < n; i++) {
+                myDirection[i] = myPreconditioned[i] + beta * myDirection[i];
+            }
+            myIterations++;
+        }
+    }
+
+    /**
+     * Number the masses that move, pick out the springs done implicitly,
+     * and work out where everything goes in the matrix.
+     */
+    private void layOut (Assembly assembly) {
+        MassStore masses = assembly.getMasses();
+        List<Spring> springs = assembly.getSprings();
+        double[] inverseMass = masses.getInverseMass();
+        myUnknown = new int[masses.size()];
+        int unknowns = 0;
+        for (int i = 0; i < masses.size(); i++) {
+            myUnknown[i] = (inverseMass[i] > 0) ? unknowns++ : -1;
+        }
+        myExplicitSprings = new ArrayList<Spring>();
+        myImplicitSprings = new ArrayList<Spring>();
+        for (int s = 0; s < springs.size(); s++) {
+            Spring spring = springs.get(s);
+            // the mouse's spring changes ends every step
+            if (assembly.isTransient(spring)) {
+                myExplicitSprings.add(spring);
+            }
+            else {
+                myImplicitSprings.add(spring);
+            }
+        }
+
+        // which unknowns each unknown is joined to, itself included
+        int[] degree = new int[unknowns];
+        Arrays.fill(degree, 1);
+        for (int s = 0; s < myImplicitSprings.size(); s++) {
+            Spring spring = myImplicitSprings.get(s);
+            int a = unknownOf(masses, spring.getStart());
+            int b = unknownOf(masses, spring.getEnd());
+            if (a >= 0 && b >= 0 && a != b) {
+                degree[a]++;
+                degree[b]++;
+            }
+        }
+        int[][] joined = new int[unknowns][];
+        for (int u = 0; u < unknowns; u++) {
+            joined[u] = new int[degree[u]];
+            joined[u][0] = u;
+            degree[u] = 1;
+        }
+        for (int s = 0; s < myImplicitSprings.size(); s++) {
+            Spring spring = myImplicitSprings.get(s);
+            int a = unknownOf(masses, spring.getStart());
+            int b = unknownOf(masses, spring.getEnd());
+            if (a >= 0 && b >= 0 && a != b) {
+                joined[a][degree[a]++] = b;
+                joined[b][degree[b]++] = a;
+            }
+        }
+
+        // two rows per unknown, each with two columns per unknown joined to it
+        int[] rowStart = new int[2 * unknowns + 1];
+        int entries = 0;
+        for (int u = 0; u < unknowns; u++) {
+            Arrays.sort(joined[u]);
+            int distinct = 0;
+            for (int j = 0; j < joined[u].length; j++) {
+                if (j == 0 || joined[u][j] != joined[u][j - 1]) {
+                    joined[u][distinct++] = joined[u][j];
+                }
+            }
+            joined[u] = Arrays.copyOf(joined[u], distinct);
+            rowStart[2 * u] = entries;
+            entries += 2 * distinct;
+            rowStart[2 * u + 1] = entries;
+            entries += 2 * distinct;
+        }
+        rowStart[2 * unknowns] = entries;
+        int[] columns = new int[entries];
+        for (int u = 0; u < unknowns; u++) {
+            for (int row = 2 * u; row <= 2 * u + 1; row++) {
+                int e = rowStart[row];
+                for (int j = 0; j < joined[u].length; j++) {
+                    columns[e++] = 2 * joined[u][j];
+                    columns[e++] = 2 * joined[u][j] + 1;
+                }
+            }
+        }
+        myMatrix = new SparseMatrix(rowStart, columns);
+
+        myDiagonalEntries = new int[2 * unknowns];
+        for (int row = 0; row < 2 * unknowns; row++) {
+            myDiagonalEntries[row] = myMatrix.indexOf(row, row);
+        }
+        mySpringEntries = new int[myImplicitSprings.size() * SPRING_ENTRIES];
+        for (int s = 0; s < myImplicitSprings.size(); s++) {
+            Spring spring = myImplicitSprings.get(s);
+            int a = unknownOf(masses, spring.getStart());
+            int b = unknownOf(masses, spring.getEnd());
+            int e = s * SPRING_ENTRIES;
+            setBlock(e, a, a);
+            setBlock(e + 2, a, b);
+            setBlock(e + 4, b, a);
+            setBlock(e + 6, b, b);
+        }
+
+        int n = 2 * unknowns;
+        if (myChange.length != n) {
+            // nothing to start from
+            myChange = new double[n];
+        }
+        myRightSide = new double[n];
+        myResidual = new double[n];
+        myDirection = new double[n];
+        myProduct = new double[n];
+        myPreconditioned = new double[n];
+        myDiagonal = new double[n];
+        myAssembly = assembly;
+        myStructureCount = masses.getStructureCount();
+    }
+
+    /**
+     * Note where the block for the given row and column unknowns is, or -1
+     * if either does not move.
+     */
+    private void setBlock (int e, int row, int column) {
+        if (row < 0 || column < 0) {
+            mySpringEntries[e] = -1;
+            mySpringEntries[e + 1] = -1;
+            return;
+        }
+        mySpringEntries[e] = myMatrix.indexOf(2 * row, 2 * column);
+        mySpringEntries[e + 1] = myMatrix.indexOf(2 * row + 1, 2 * column);
+    }
+
+    private int unknownOf (MassStore masses, Mass mass) {
+        return masses.contains(mass) ? myUnknown[mass.getIndex()] : -1;
+    }
+
+    private static double velocityX (Mass mass) {
+        return mass.getStore().getVelocityX()[mass.getIndex()];
+    }
+
+    private static double velocityY (Mass mass) {
+        return mass.getStore().getVelocityY()[mass.getIndex()];
+    }
+
+    private static double dot (double[] a, double[] b, int n) {
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
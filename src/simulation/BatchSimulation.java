@@ -0,0 +1,149 @@
+package simulation;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * Runs a model without any display, for batch jobs on machines that
+ * have no screen. Loads each given data file as its own assembly, steps
+ * the engine as fast as possible, and reports how long it took.
+ * 
+ * Usage: java simulation.BatchSimulation [-checkpoint file.spc every]
+ *            [-record file.spt every] [-adaptive timestep shortest]
+ *            steps file.xsp [file.xsp ...]
+ * 
+ * With -checkpoint, the state is saved to the given file every so many
+ * steps, and a run started while that file exists carries on from it
+ * instead of from step 0, so rerunning the same command resumes a run
+ * that died. With -record, where every mass is gets recorded to the
+ * given trajectory file every so many steps. With -adaptive, steps are
+ * the given length but taken as shorter ones when the springs need it,
+ * down to the given shortest (see AdaptiveTimestep).
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class BatchSimulation {
+    /**
+     * Size of the world
+     */
+    public static final Dimension SIZE = new Dimension(800, 600);
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private BatchSimulation () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * main --- where the batch run starts
+     * @param args      number of steps followed by data files
+     */
+    public static void main (String[] args) {
+        int next = 0;
+        File checkpoint = null;
+        long interval = 0;
+        File trajectory = null;
+        long recordInterval = 0;
+        AdaptiveTimestep adaptive = null;
+        double timestep = SimulationEngine.DEFAULT_TIMESTEP;
+        while (next < args.length && args[next].startsWith("-")) {
+            if (next + 2 >= args.length) {
+                usage();
+            }
+            if (args[next].equals("-checkpoint")) {
+                checkpoint = new File(args[next + 1]);
+                interval = Long.parseLong(args[next + 2]);
+            }
+            else if (args[next].equals("-record")) {
+                trajectory = new File(args[next + 1]);
+                recordInterval = Long.parseLong(args[next + 2]);
+            }
+            else if (args[next].equals("-adaptive")) {
+                timestep = Double.parseDouble(args[next + 1]);
+                adaptive = new AdaptiveTimestep(Double.parseDouble(args[next + 2]));
+            }
+            else {
+                usage();
+            }
+            next += 3;
+        }
+        if (args.length - next < 2) {
+            usage();
+        }
+        long steps = Long.parseLong(args[next]);
+        SimulationEngine engine = new SimulationEngine(SIZE);
+        engine.addDefaultForces();
+        engine.setTimestep(timestep);
+        engine.setAdaptiveTimestep(adaptive);
+        for (int i = next + 1; i < args.length; i++) {
+            Assembly assembly = new Assembly();
+            try {
+                new Factory().loadModel(assembly, new File(args[i]));
+            }
+            catch (ModelFormatException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            engine.add(assembly);
+        }
+        Checkpointer checkpointer = null;
+        if (checkpoint != null) {
+            if (checkpoint.exists()) {
+                try {
+                    Checkpoint.restore(engine, checkpoint);
+                }
+                catch (IOException | ModelFormatException e) {
+                    System.err.println(e.getMessage());
+                    System.exit(1);
+                }
+                System.out.printf("resuming from step %d%n", engine.getStepCount());
+            }
+            checkpointer = new Checkpointer(checkpoint, interval);
+            engine.addObserver(checkpointer);
+        }
+        TrajectoryRecorder recorder = null;
+        if (trajectory != null) {
+            try {
+                recorder = new TrajectoryRecorder(trajectory, recordInterval);
+            }
+            catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            engine.addObserver(recorder);
+        }
+        long remaining = Math.max(0, steps - engine.getStepCount());
+        long start = System.nanoTime();
+        engine.run(remaining, engine.getTimestep());
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        if (checkpointer != null) {
+            checkpointer.close();
+        }
+        if (adaptive != null) {
+            System.out.printf("%d short steps, %d rolled back%n", adaptive.getAcceptedCount(),
+                              adaptive.getRejectedCount());
+        }
+        if (recorder != null) {
+            try {
+                recorder.close();
+            }
+            catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            System.out.printf("recorded %d frames, dropped %d%n", recorder.getRecordedCount(),
+                              recorder.getDroppedCount());
+        }
+        System.out.printf("%d steps in %.3f s (%.0f steps/s)%n", remaining, seconds,
+                          remaining / seconds);
+    }
+
+    private static void usage () {
+        System.err.println("usage: BatchSimulation [-checkpoint file.spc every] " +
+                           "[-record file.spt every] [-adaptive timestep shortest] " +
+                           "steps file.xsp [file.xsp ...]");
+        System.exit(1);
+    }
+}
@@ -1,7 +1,6 @@
 package simulation;
 
-import java.awt.geom.Point2D;
-import util.Vector;
+import util.CartesianVector;
 
 /**
  * Details a force that attracts masses
@@ -11,6 +10,12 @@ import util.Vector;
  *
  */
 public class CenterOfMass {
+    /**
+     * Distance, in pixels, inside which a mass is pulled as if it were
+     * this far from the center, so a mass passing right by the center is
+     * not flung away
+     */
+    public static final double NEAREST_DISTANCE = 1;
 
     private double myCenterOfMassForce;
     private double myTempForce;
@@ -32,7 +37,28 @@ public class CenterOfMass {
      * @param myCenterYMass     Center of mass y coordinate
      */
     public void update (Mass m, double myCenterXMass, double myCenterYMass) {
-        applyCenterOfMass(m, myCenterXMass, myCenterYMass);
+        applyCenterOfMass(m.getStore(), m.getIndex(), myCenterXMass, myCenterYMass);
+    }
+
+    /**
+     * Applies the force to every mass of a store, toward the center of
+     * mass the store keeps
+     * @param masses            the mass store
+     */
+    public void update (MassStore masses) {
+        update(masses, masses.getCenterX(), masses.getCenterY());
+    }
+
+    /**
+     * Applies the force to every mass of a store
+     * @param masses            the mass store
+     * @param myCenterXMass     Center of mass x coordinate
+     * @param myCenterYMass     Center of mass y coordinate
+     */
+    public void update (MassStore masses, double myCenterXMass, double myCenterYMass) {
+        for (int i = 0; i < masses.size(); i++) {
+            applyCenterOfMass(masses, i, myCenterXMass, myCenterYMass);
+        }
     }
 
     /**
@@ -44,24 +70,42 @@ public class CenterOfMass {
      * @param myCenterYMass Center mass y coordinate
      */
     public void applyCenterOfMass (Mass m, double myCenterXMass, double myCenterYMass) {
-        double xMass = m.getX();
-        double yMass = m.getY();
+        applyCenterOfMass(m.getStore(), m.getIndex(), myCenterXMass, myCenterYMass);
+    }
 
-        Point2D target = new Point2D.Double(xMass, yMass);
-        Point2D source = new Point2D.Double(myCenterXMass, myCenterYMass);
+    /**
+     * Applies a center of mass force to the mass at the given index
+     * 
+     * @param masses The mass store
+     * @param index Index of the mass
+     * @param myCenterXMass Center mass x coordinate
+     * @param myCenterYMass Center mass y coordinate
+     */
+    public void applyCenterOfMass (MassStore masses, int index,
+                                   double myCenterXMass, double myCenterYMass) {
+        double dx = myCenterXMass - masses.getX(index);
+        double dy = myCenterYMass - masses.getY(index);
 
-        double distance =
-                Math.sqrt((myCenterXMass - xMass) * (myCenterXMass - xMass) +
-                          (myCenterYMass - yMass) * (myCenterYMass - yMass));
+        double distance = CartesianVector.length(dx, dy);
         double centExpVal = myCenterOfMassForce;
-        double force = 1 / Math.pow(distance, centExpVal);
-
-        Vector v = new Vector(target, source);
-        v.setMagnitude(force);
+        // a per-frame pull of the original program
+        double force =
+                FrameUnits.force(1 / Math.pow(Math.max(distance, NEAREST_DISTANCE), centExpVal),
+                                 masses.getMassValue(index));
 
-        m.applyForce(v);
+        // pull along the line from the mass toward the center
+        masses.applyForce(index, CartesianVector.alongX(dx, dy, force),
+                          CartesianVector.alongY(dx, dy, force));
     }
     
+    /**
+     * Returns true if the center of mass force is on
+     * @return
+     */
+    public boolean isCenterOfMassOn () {
+        return myCenterOfMassForce != 0;
+    }
+
     /**
      * Toggles center of mass force on or off
      * by changing force value
@@ -0,0 +1,353 @@
+package simulation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import util.Force;
+
+
+/**
+ * Saves the whole state of a running engine so it can carry on later
+ * exactly where it left off: the step count and clock, the global force
+ * toggles, and for each assembly its integrator, center of mass toggle,
+ * mouse, masses (position, velocity, and accumulated force), and springs
+ * with their current rest lengths. Stepping a restored engine gives the
+ * same numbers, bit for bit, as stepping the original would have.
+ *
+ * Saving is split in two so it can run alongside the simulation: capture
+ * copies the state into a buffer between steps, which is quick, and write
+ * puts the buffer in a file, which can happen on another thread (see
+ * Checkpointer). Files are replaced atomically, so a crash while writing
+ * leaves the previous checkpoint intact.
+ *
+ * All numbers are little endian:
+ *
+ * <PRE>
+ * header   int magic, int version, int length, long steps,
+ *          double time not yet simulated, double timestep, int max substeps,
+ *          int width, int height, int forces, then per force byte kind,
+ *          byte toggles, then int assemblies
+ * assembly short name length, integrator class name, byte center of mass on,
+ *          double mouse x, double mouse y, byte mouse pressed,
+ *          int mass closest to mouse, int mouse mass, store, int springs,
+ *          int mouse spring, then the spring records
+ * store    int masses, the mass records, double total mass,
+ *          byte center valid, double center x, double center y
+ * mass     double x, double y, double velocity x, double velocity y,
+ *          double force x, double force y, double mass, int flags
+ * spring   byte kind (0 spring, 1 muscle, 2 rod), int start, int end,
+ *          double length, double k,
+ *          and for muscles double amplitude, double delay, double frequency
+ * </PRE>
+ *
+ * Masses are named by index in their store, -1 meaning none.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class Checkpoint {
+    /**
+     * First four bytes of every file: "SPRC"
+     */
+    public static final int MAGIC = 0x43525053;
+    /**
+     * Version written and read by this code; 2 added rods
+     */
+    public static final int VERSION = 2;
+    /**
+     * Byte order of every number
+     */
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    /**
+     * Usual file extension
+     */
+    public static final String EXTENSION = ".spc";
+
+    static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES + 2 * Double.BYTES +
+                                   5 * Integer.BYTES;
+    static final int FORCE_SIZE = 2;
+    static final int MAX_NAME_BYTES = 1024;
+    static final int ASSEMBLY_SIZE = 1 + 2 * Double.BYTES + 1 + 4 * Integer.BYTES;
+    static final int MASS_SIZE = 7 * Double.BYTES + Integer.BYTES;
+    static final int MUSCLE_SIZE = 1 + 2 * Integer.BYTES + 5 * Double.BYTES;
+    // kinds of spring
+    static final byte SPRING = 0;
+    static final byte MUSCLE = 1;
+    static final byte ROD = 2;
+
+    // kinds of global force
+    private static final byte OTHER = 0;
+    private static final byte GRAVITY = 1;
+    private static final byte VISCOSITY = 2;
+    private static final byte WALL_REPULSION = 3;
+    // toggle bits of wall repulsion
+    private static final int TOP = 1;
+    private static final int RIGHT = 2;
+    private static final int LEFT = 4;
+    private static final int BOTTOM = 8;
+    // room to grow before a reused buffer must be replaced
+    private static final int SLACK_DIVISOR = 4;
+
+    private Checkpoint () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * Returns the size of a store's state with the given number of masses.
+     */
+    static int storeSize (int masses) {
+        return Integer.BYTES + masses * MASS_SIZE + Double.BYTES + 1 + 2 * Double.BYTES;
+    }
+
+    /**
+     * Save the state of the given engine in the given file.
+     *
+     * @param engine    the engine, between steps
+     * @param file      the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void save (SimulationEngine engine, File file) throws IOException {
+        write(capture(engine, null), file);
+    }
+
+    /**
+     * Copy the state of the given engine into a buffer. The given buffer is
+     * reused if it is big enough, so capturing again and again allocates
+     * nothing once the model stops growing.
+     *
+     * @param engine    the engine, between steps
+     * @param buffer    buffer from an earlier capture, or null
+     * @return buffer holding the state, ready to be read or written
+     */
+    public static ByteBuffer capture (SimulationEngine engine, ByteBuffer buffer) {
+        List<Force> forces = engine.getForces();
+        List<Assembly> assemblies = engine.getAssemblies();
+        long size = HEADER_SIZE + (long) forces.size() * FORCE_SIZE;
+        for (int i = 0; i < assemblies.size(); i++) {
+            size += assemblies.get(i).stateSize();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("model is too big to checkpoint");
+        }
+        if (buffer == null || buffer.capacity() < size) {
+            long room = size + size / SLACK_DIVISOR;
+            buffer = ByteBuffer.allocate((int) Math.min(room, Integer.MAX_VALUE)).order(ORDER);
+        }
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        // length, filled in at the end
+        buffer.putInt(0);
+        buffer.putLong(engine.getStepCount());
+        buffer.putDouble(engine.getAccumulatedTime());
+        buffer.putDouble(engine.getTimestep());
+        buffer.putInt(engine.getMaxSubsteps());
+        buffer.putInt(engine.getBounds().width);
+        buffer.putInt(engine.getBounds().height);
+        buffer.putInt(forces.size());
+        for (int i = 0; i < forces.size(); i++) {
+            Force f = forces.get(i);
+            buffer.put(kindOf(f));
+            buffer.put((byte) togglesOf(f));
+        }
+        buffer.putInt(assemblies.size());
+        for (int i = 0; i < assemblies.size(); i++) {
+            assemblies.get(i).writeState(buffer);
+        }
+        buffer.flip();
+        buffer.putInt(2 * Integer.BYTES, buffer.limit());
+        return buffer;
+    }
+
+    /**
+     * Write a captured state to the given file, replacing it only once the
+     * new state is safely on disk.
+     *
+     * @param state     buffer returned by capture; its position is not changed
+     * @param file      the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write (ByteBuffer state, File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        ByteBuffer out = state.duplicate();
+        FileChannel channel = new FileOutputStream(temporary).getChannel();
+        try {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        finally {
+            channel.close();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Put the given engine back in the state saved in the given file.
+     *
+     * @param engine    the engine, between steps
+     * @param file      the file to read
+     * @throws IOException if the file cannot be read
+     * @throws ModelFormatException if the file is not a valid checkpoint
+     */
+    public static void restore (SimulationEngine engine, File file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ORDER);
+        restore(engine, in, file.getName());
+    }
+
+    /**
+     * Put the given engine back in a captured state. The engine must have
+     * the same kinds of global force, in the same order, as the one
+     * captured; its assemblies are replaced by the captured ones.
+     *
+     * @param engine    the engine, between steps
+     * @param state     buffer returned by capture; its position is not changed
+     * @throws ModelFormatException if the buffer is not a valid checkpoint
+     */
+    public static void restore (SimulationEngine engine, ByteBuffer state) {
+        restore(engine, state, "checkpoint");
+    }
+
+    private static void restore (SimulationEngine engine, ByteBuffer state, String source) {
+        ByteBuffer in = state.duplicate().order(ORDER);
+        try {
+            if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+                throw new ModelFormatException(source, "not a checkpoint");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new ModelFormatException(source, "unsupported version " + version);
+            }
+            if (in.getInt() != state.remaining()) {
+                throw new ModelFormatException(source, "size does not match its header");
+            }
+            long steps = in.getLong();
+            double accumulatedTime = in.getDouble();
+            double timestep = in.getDouble();
+            int maxSubsteps = in.getInt();
+            int width = in.getInt();
+            int height = in.getInt();
+            // check the forces before changing anything
+            List<Force> forces = engine.getForces();
+            int forceCount = in.getInt();
+            if (forceCount != forces.size()) {
+                throw new ModelFormatException(source, "saved with " + forceCount +
+                                                       " global forces, not " + forces.size());
+            }
+            int forceStart = in.position();
+            for (int i = 0; i < forceCount; i++) {
+                if (in.get() != kindOf(forces.get(i))) {
+                    throw new ModelFormatException(source, "global force " + i +
+                                                           " is of a different kind");
+                }
+                in.get();
+            }
+            in.position(forceStart);
+            for (int i = 0; i < forceCount; i++) {
+                in.get();
+                setToggles(forces.get(i), in.get());
+            }
+            engine.setClock(steps, accumulatedTime);
+            engine.setTimestep(timestep);
+            engine.setMaxSubsteps(maxSubsteps);
+            engine.setBounds(width, height);
+
+            List<Assembly> assemblies = engine.getAssemblies();
+            int assemblyCount = in.getInt();
+            if (assemblyCount < 0) {
+                throw new ModelFormatException(source, "negative number of assemblies");
+            }
+            while (assemblies.size() > assemblyCount) {
+                engine.remove(assemblies.get(assemblies.size() - 1));
+            }
+            while (assemblies.size() < assemblyCount) {
+                engine.add(new Assembly());
+            }
+            for (int i = 0; i < assemblyCount; i++) {
+                assemblies.get(i).readState(in);
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new ModelFormatException(source, "ends too soon");
+        }
+        catch (IllegalArgumentException e) {
+            throw new ModelFormatException(source, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns which kind of global force the given one is.
+     */
+    private static byte kindOf (Force force) {
+        if (force instanceof Gravity) {
+            return GRAVITY;
+        }
+        if (force instanceof Viscosity) {
+            return VISCOSITY;
+        }
+        if (force instanceof WallRepulsion) {
+            return WALL_REPULSION;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Returns which parts of the given global force are on, as bits.
+     */
+    private static int togglesOf (Force force) {
+        if (force instanceof Gravity) {
+            return ((Gravity) force).isGravityOn() ? 1 : 0;
+        }
+        if (force instanceof Viscosity) {
+            return ((Viscosity) force).isViscosityOn() ? 1 : 0;
+        }
+        if (force instanceof WallRepulsion) {
+            WallRepulsion walls = (WallRepulsion) force;
+            return (walls.isTopRepulsionOn() ? TOP : 0) | (walls.isRightRepulsionOn() ? RIGHT : 0) |
+                   (walls.isLeftRepulsionOn() ? LEFT : 0) |
+                   (walls.isBottomRepulsionOn() ? BOTTOM : 0);
+        }
+        return 0;
+    }
+
+    /**
+     * Turn parts of the given global force on or off to match the given bits.
+     */
+    private static void setToggles (Force force, int toggles) {
+        if (force instanceof Gravity) {
+            Gravity gravity = (Gravity) force;
+            if (gravity.isGravityOn() != ((toggles & 1) != 0)) {
+                gravity.toggleGravity();
+            }
+        }
+        else if (force instanceof Viscosity) {
+            Viscosity viscosity = (Viscosity) force;
+            if (viscosity.isViscosityOn() != ((toggles & 1) != 0)) {
+                viscosity.toggleViscosity();
+            }
+        }
+        else if (force instanceof WallRepulsion) {
+            WallRepulsion walls = (WallRepulsion) force;
+            if (walls.isTopRepulsionOn() != ((toggles & TOP) != 0)) {
+                walls.toggleTopRepulsion();
+            }
+            if (walls.isRightRepulsionOn() != ((toggles & RIGHT) != 0)) {
+                walls.toggleRightRepulsion();
+            }
+            if (walls.isLeftRepulsionOn() != ((toggles & LEFT) != 0)) {
+                walls.toggleLeftRepulsion();
+            }
+            if (walls.isBottomRepulsionOn() != ((toggles & BOTTOM) != 0)) {
+                walls.toggleBottomRepulsion();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Saves a checkpoint of the engine it observes every so many steps, so a
+ * long run that dies can carry on from close to where it was (see
+ * Checkpoint).
+ *
+ * The step loop only pays for copying the state into a buffer; the file
+ * is written on a background thread. If that thread is still busy with
+ * the last checkpoint when the next one is due, the new one is skipped
+ * rather than making the simulation wait, and the buffer is reused for
+ * the one after.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class Checkpointer implements SimulationObserver {
+    private File myFile;
+    private long myInterval;
+    private ExecutorService myWriter;
+    private ByteBuffer myBuffer;
+    private Future<?> myPending;
+    private int myWrittenCount;
+    private int mySkippedCount;
+
+    /**
+     * Save to the given file every given number of steps.
+     *
+     * @param file      the checkpoint file, replaced each time
+     * @param interval  steps between checkpoints
+     */
+    public Checkpointer (File file, long interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be at least one step");
+        }
+        myFile = file;
+        myInterval = interval;
+        myWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread (Runnable r) {
+                Thread t = new Thread(r, "checkpoint writer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Returns the file checkpoints are saved in
+     *
+     * @return
+     */
+    public File getFile () {
+        return myFile;
+    }
+
+    /**
+     * Returns the number of checkpoints written so far
+     *
+     * @return
+     */
+    public synchronized int getWrittenCount () {
+        return myWrittenCount;
+    }
+
+    /**
+     * Returns the number of checkpoints skipped because the last one was
+     * still being written
+     *
+     * @return
+     */
+    public int getSkippedCount () {
+        return mySkippedCount;
+    }
+
+    /**
+     * Capture a checkpoint when one is due and hand it to the writer.
+     *
+     * @param engine    the engine that stepped
+     */
+    @Override
+    public void simulationStepped (SimulationEngine engine) {
+        if (engine.getStepCount() % myInterval == 0) {
+            save(engine);
+        }
+    }
+
+    /**
+     * Capture a checkpoint now and hand it to the writer, unless the last
+     * one is still being written.
+     *
+     * @param engine    the engine, between steps
+     * @return true if the checkpoint was taken
+     */
+    public boolean save (SimulationEngine engine) {
+        if (myPending != null && !myPending.isDone()) {
+            mySkippedCount++;
+            return false;
+        }
+        myBuffer = Checkpoint.capture(engine, myBuffer);
+        final ByteBuffer state = myBuffer;
+        myPending = myWriter.submit(new Runnable() {
+            @Override
+            public void run () {
+                try {
+                    Checkpoint.write(state, myFile);
+                    written();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Wait for the checkpoint being written, if any, to be on disk.
+     */
+    public void finish () {
+        if (myPending == null) {
+            return;
+        }
+        try {
+            myPending.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    /**
+     * Finish the checkpoint being written and stop the writer thread.
+     */
+    public void close () {
+        finish();
+        myWriter.shutdown();
+    }
+
+    private synchronized void written () {
+        myWrittenCount++;
+    }
+}
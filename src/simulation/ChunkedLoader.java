@@ -0,0 +1,494 @@
+package simulation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import util.IntMap;
+
+
+/**
+ * Loads a large .xsp file on several threads, for a Factory.
+ *
+ * The file is cut into chunks that end at line breaks. First every chunk
+ * is read at the same time, and its commands written down with masses
+ * still named by id. Then the masses are created in file order and their
+ * ids entered in a table, and the springs, muscles, and rods of every
+ * chunk are resolved against that table at the same time. The assembly
+ * comes out exactly as the one-thread Factory would make it.
+ *
+ * A spring may only name masses defined before it in the file, as with
+ * the one-thread Factory. A mistake anywhere stops the load with the
+ * ModelFormatException the one-thread Factory would give, and leaves the
+ * assembly and the factory as they were. Files that define an id twice,
+ * and factories that already hold ids from an earlier load, are handed
+ * back to the one-thread Factory, which knows how to mix those.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class ChunkedLoader {
+    /**
+     * Bytes in each chunk, about
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+    private static final int BOUNDARY_SEARCH = 4096;
+
+    private Factory myFactory;
+    private int myParallelism;
+    private long myChunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Create a loader for the given factory that uses every processor.
+     *
+     * @param factory       the factory whose ids are used and kept
+     */
+    public ChunkedLoader (Factory factory) {
+        this(factory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a loader for the given factory.
+     *
+     * @param factory       the factory whose ids are used and kept
+     * @param parallelism   number of threads
+     */
+    public ChunkedLoader (Factory factory, int parallelism) {
+        myFactory = factory;
+        myParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Change about how many bytes each chunk has.
+     *
+     * @param chunkSize     bytes per chunk
+     */
+    public void setChunkSize (long chunkSize) {
+        myChunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Load the model in the given file into the given assembly.
+     *
+     * @param assembly      the assembly
+     * @param file          the .xsp file
+     * @throws IOException if the file cannot be read
+     * @throws ModelFormatException if the file has a mistake in it
+     */
+    public void loadModel (Assembly assembly, File file) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        ExecutorService pool = new ForkJoinPool(myParallelism);
+        try {
+            if (!myFactory.isEmpty() ||
+                !build(assembly, read(channel, file.getName(), pool), file.getName(), pool)) {
+                // springs may name masses from earlier loads, or ids defined twice
+                myFactory.loadModel(assembly, new ModelTokenizer(channel, file.getName()));
+            }
+        }
+        finally {
+            pool.shutdown();
+            channel.close();
+        }
+    }
+
+    /**
+     * Read every chunk of the file on the pool.
+     */
+    private Chunk[] read (final FileChannel channel, final String source,
+                          ExecutorService pool) throws IOException {
+        final long[] bounds = boundaries(channel);
+        Chunk[] chunks = new Chunk[bounds.length - 1];
+        List<Callable<Chunk>> tasks = new ArrayList<Callable<Chunk>>();
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = new Chunk();
+            final Chunk chunk = chunks[c];
+            final int index = c;
+            tasks.add(new Callable<Chunk>() {
+                @Override
+                public Chunk call () throws IOException {
+                    chunk.read(new ModelTokenizer(new Region(channel, bounds[index],
+                                                             bounds[index + 1]), source));
+                    return chunk;
+                }
+            });
+        }
+        runAll(pool, tasks);
+        return chunks;
+    }
+
+    /**
+     * Create the masses, resolve the springs and add everything to the
+     * assembly, or throw the first mistake in the file.
+     *
+     * @return false if an id is defined twice, leaving everything unchanged
+     */
+    private boolean build (final Assembly assembly, final Chunk[] chunks, String source,
+                           ExecutorService pool) throws IOException {
+        // where each chunk starts, in commands, springs, masses and lines
+        int count = chunks.length;
+        long[] firstCommand = new long[count + 1];
+        int[] firstSpring = new int[count + 1];
+        int[] firstMass = new int[count + 1];
+        int[] firstLine = new int[count + 1];
+        firstLine[0] = 1;
+        int last = count;
+        for (int c = 0; c < count; c++) {
+            firstCommand[c + 1] = firstCommand[c] + chunks[c].myCommands;
+            firstSpring[c + 1] = firstSpring[c] + chunks[c].mySprings;
+            firstMass[c + 1] = firstMass[c] + chunks[c].myMasses;
+            firstLine[c + 1] = firstLine[c] + chunks[c].myLines;
+            if (chunks[c].myError != null) {
+                // nothing after a mistake counts
+                last = c + 1;
+                break;
+            }
+        }
+
+        // masses, in file order
+        final MassStore store = assembly.getMasses();
+        final IntMap<Mass> ids = new IntMap<Mass>(firstMass[last]);
+        final long[] definedAt = new long[firstMass[last]];
+        final int base = store.size();
+        store.ensureCapacity(base + firstMass[last]);
+        for (int c = 0; c < last; c++) {
+            Chunk chunk = chunks[c];
+            for (int m = 0; m < chunk.myMasses; m++) {
+                int id = chunk.myMassId[m];
+                if (ids.containsKey(id)) {
+                    discard(store, base);
+                    return false;
+                }
+                ids.put(id, store.create(chunk.myMassX[m], chunk.myMassY[m],
+                                         chunk.myMassValue[m], chunk.myMassFlags[m]));
+                definedAt[firstMass[c] + m] = firstCommand[c] + chunk.myMassCommand[m];
+            }
+        }
+
+        // springs, each chunk on its own
+        final Spring[] springs = new Spring[firstSpring[last]];
+        List<Callable<Chunk>> tasks = new ArrayList<Callable<Chunk>>();
+        for (int c = 0; c < last; c++) {
+            final Chunk chunk = chunks[c];
+            final long commandOffset = firstCommand[c];
+            final int springOffset = firstSpring[c];
+            tasks.add(new Callable<Chunk>() {
+                @Override
+                public Chunk call () {
+                    chunk.resolve(ids, definedAt, base, commandOffset, springs, springOffset);
+                    return chunk;
+                }
+            });
+        }
+        runAll(pool, tasks);
+
+        // the first mistake in the file wins
+        for (int c = 0; c < last; c++) {
+            Chunk chunk = chunks[c];
+            if (chunk.myError != null) {
+                discard(store, base);
+                throw new ModelFormatException(source, firstLine[c] + chunk.myErrorLine - 1,
+                                               chunk.myError);
+            }
+        }
+        for (Spring s : springs) {
+            assembly.add(s);
+        }
+        for (int c = 0; c < last; c++) {
+            for (int m = 0; m < chunks[c].myMasses; m++) {
+                int id = chunks[c].myMassId[m];
+                myFactory.define(id, ids.get(id));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove the masses added to the store from the given index on.
+     */
+    private static void discard (MassStore store, int base) {
+        store.truncate(base);
+    }
+
+    /**
+     * Returns where the chunks start and end, each start just after a line break.
+     */
+    private long[] boundaries (FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<Long>();
+        bounds.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_SEARCH);
+        long next = myChunkSize;
+        while (next < size) {
+            // move forward to just after the next line break
+            long position = next;
+            long found = size;
+            while (found == size && position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        found = position + i + 1;
+                        break;
+                    }
+                }
+                position += read;
+            }
+            if (found >= size) {
+                break;
+            }
+            bounds.add(found);
+            next = found + myChunkSize;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Run the given tasks on the pool and wait for them all.
+     */
+    private static void runAll (ExecutorService pool, List<Callable<Chunk>> tasks)
+        throws IOException {
+        try {
+            for (Future<Chunk> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while loading", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Reads part of a file channel, so each chunk can have a tokenizer of its
+     * own; reads at a position do not disturb the other chunks' reads.
+     */
+    private static class Region implements ReadableByteChannel {
+        private FileChannel myChannel;
+        private long myPosition;
+        private long myEnd;
+
+        public Region (FileChannel channel, long start, long end) {
+            myChannel = channel;
+            myPosition = start;
+            myEnd = end;
+        }
+
+        @Override
+        public int read (ByteBuffer destination) throws IOException {
+            if (myPosition >= myEnd) {
+                return -1;
+            }
+            int limit = destination.limit();
+            int wanted = (int) Math.min(destination.remaining(), myEnd - myPosition);
+            destination.limit(destination.position() + wanted);
+            int read = myChannel.read(destination, myPosition);
+            destination.limit(limit);
+            if (read < 0) {
+                return -1;
+            }
+            myPosition += read;
+            return read;
+        }
+
+        @Override
+        public boolean isOpen () {
+            return myChannel.isOpen();
+        }
+
+        @Override
+        public void close () {
+            // the whole file is closed by the loader
+        }
+    }
+
+    /**
+     * The commands of one chunk, with masses still named by id, and the
+     * chunk's first mistake if it has one.
+     */
+    private static class Chunk implements ModelBuilder {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private int myCommands;
+        private int myLines;
+        // masses
+        private int myMasses;
+        private int[] myMassId = new int[INITIAL_CAPACITY];
+        private double[] myMassX = new double[INITIAL_CAPACITY];
+        private double[] myMassY = new double[INITIAL_CAPACITY];
+        private double[] myMassValue = new double[INITIAL_CAPACITY];
+        private int[] myMassFlags = new int[INITIAL_CAPACITY];
+        private int[] myMassCommand = new int[INITIAL_CAPACITY];
+        // springs, muscles, and rods
+        private int mySprings;
+        private int[] myStart = new int[INITIAL_CAPACITY];
+        private int[] myEnd = new int[INITIAL_CAPACITY];
+        private double[] myLength = new double[INITIAL_CAPACITY];
+        private double[] myK = new double[INITIAL_CAPACITY];
+        private int[] mySpringCommand = new int[INITIAL_CAPACITY];
+        private int[] mySpringLine = new int[INITIAL_CAPACITY];
+        // muscle values, made when the first muscle is read; null for springs
+        private double[][] myMuscle;
+        // which records are rods, made when the first rod is read
+        private boolean[] myRod;
+        // first mistake, and its line within the chunk
+        private String myError;
+        private int myErrorLine;
+        private ModelTokenizer myInput;
+
+        /**
+         * Read every command of the chunk, stopping at the first mistake.
+         */
+        public void read (ModelTokenizer input) throws IOException {
+            myInput = input;
+            try {
+                Factory.parse(input, this);
+                // every line of the chunk ends with a line break but the file's last
+                myLines = input.getLineNumber() - 1;
+            }
+            catch (ModelFormatException e) {
+                myError = e.getReason();
+                myErrorLine = e.getLineNumber();
+            }
+            finally {
+                myInput = null;
+                input.close();
+            }
+        }
+
+        @Override
+        public void mass (int id, double x, double y, double mass, int flags) {
+            if (myMasses == myMassId.length) {
+                int n = 2 * myMasses;
+                myMassId = Arrays.copyOf(myMassId, n);
+                myMassX = Arrays.copyOf(myMassX, n);
+                myMassY = Arrays.copyOf(myMassY, n);
+                myMassValue = Arrays.copyOf(myMassValue, n);
+                myMassFlags = Arrays.copyOf(myMassFlags, n);
+                myMassCommand = Arrays.copyOf(myMassCommand, n);
+            }
+            myMassId[myMasses] = id;
+            myMassX[myMasses] = x;
+            myMassY[myMasses] = y;
+            myMassValue[myMasses] = mass;
+            myMassFlags[myMasses] = flags;
+            myMassCommand[myMasses] = myCommands++;
+            myMasses++;
+        }
+
+        @Override
+        public void spring (int start, int end, double length, double k) {
+            if (mySprings == myStart.length) {
+                int n = 2 * mySprings;
+                myStart = Arrays.copyOf(myStart, n);
+                myEnd = Arrays.copyOf(myEnd, n);
+                myLength = Arrays.copyOf(myLength, n);
+                myK = Arrays.copyOf(myK, n);
+                mySpringCommand = Arrays.copyOf(mySpringCommand, n);
+                mySpringLine = Arrays.copyOf(mySpringLine, n);
+                if (myMuscle != null) {
+                    myMuscle = Arrays.copyOf(myMuscle, n);
+                }
+                if (myRod != null) {
+                    myRod = Arrays.copyOf(myRod, n);
+                }
+            }
+            myStart[mySprings] = start;
+            myEnd[mySprings] = end;
+            myLength[mySprings] = length;
+            myK[mySprings] = k;
+            mySpringCommand[mySprings] = myCommands++;
+            mySpringLine[mySprings] = myInput.getLineNumber();
+            mySprings++;
+        }
+
+        @Override
+        public void muscle (int start, int end, double length, double k,
+                            double amplitude, double delay, double frequency) {
+            spring(start, end, length, k);
+            if (myMuscle == null) {
+                myMuscle = new double[myStart.length][];
+            }
+            myMuscle[mySprings - 1] = new double[] { amplitude, delay, frequency };
+        }
+
+        @Override
+        public void rod (int start, int end, double length) {
+            spring(start, end, length, 0);
+            if (myRod == null) {
+                myRod = new boolean[myStart.length];
+            }
+            myRod[mySprings - 1] = true;
+        }
+
+        /**
+         * Make this chunk's springs, muscles, and rods, or note the first that names
+         * a mass that is not defined before it.
+         */
+        public void resolve (IntMap<Mass> ids, long[] definedAt, int base,
+                             long commandOffset, Spring[] springs, int springOffset) {
+            for (int s = 0; s < mySprings; s++) {
+                long command = commandOffset + mySpringCommand[s];
+                Mass start = reference(ids, definedAt, base, myStart[s], command);
+                Mass end = reference(ids, definedAt, base, myEnd[s], command);
+                if (start == null || end == null) {
+                    myError = Factory.noMassMessage((start == null) ? myStart[s] : myEnd[s]);
+                    myErrorLine = mySpringLine[s];
+                    return;
+                }
+                double k = FrameUnits.springConstant(myK[s], start, end);
+                if (myMuscle != null && myMuscle[s] != null) {
+                    double[] values = myMuscle[s];
+                    springs[springOffset + s] = new Muscle(start, end, myLength[s], k,
+                                                           values[0], values[1], values[2]);
+                }
+                else if (myRod != null && myRod[s]) {
+                    springs[springOffset + s] = new Rod(start, end, myLength[s]);
+                }
+                else {
+                    springs[springOffset + s] = new Spring(start, end, myLength[s], k);
+                }
+            }
+        }
+
+        /**
+         * Returns the mass with the given id if it is defined before the
+         * given command, or null.
+         */
+        private static Mass reference (IntMap<Mass> ids, long[] definedAt, int base, int id,
+                                       long command) {
+            Mass result = ids.get(id);
+            if (result == null || definedAt[result.getIndex() - base] > command) {
+                return null;
+            }
+            return result;
+        }
+    }
+}
@@ -1,123 +1,262 @@
 package simulation;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import util.IntMap;
 
 
 /**
  * An assembly class that creates
- * The masses, springs, and muscles
+ * The masses, springs, muscles, and rods
+ * 
+ * Files are read with a ModelTokenizer, and a mistake in a file stops
+ * the load with a ModelFormatException that names the line. Binary model
+ * files are recognized and handed to a ModelReader, and large text files
+ * to a ChunkedLoader.
  * 
  * @author Jerry Li & Bill Muensterman
  */
 public class Factory {
     // data file keywords
-    private static final String MASS_KEYWORD = "mass";
-    private static final String SPRING_KEYWORD = "spring";
-    private static final String MUSCLE_KEYWORD = "muscle";
-    private static final String FIXED_MASS_KEYWORD = "fixedMass";
+    private static final byte[] MASS_KEYWORD = keyword("mass");
+    private static final byte[] SPRING_KEYWORD = keyword("spring");
+    private static final byte[] MUSCLE_KEYWORD = keyword("muscle");
+    private static final byte[] FIXED_MASS_KEYWORD = keyword("fixedMass");
+    private static final byte[] ROD_KEYWORD = keyword("rod");
+
+    /**
+     * Text files at least this big are loaded on several threads, when
+     * there is more than one processor
+     */
+    public static final long PARALLEL_LOAD_SIZE = 2L * ChunkedLoader.DEFAULT_CHUNK_SIZE;
 
     // mass IDs
-    private Map<Integer, Mass> myMasses = new HashMap<Integer, Mass>();
+    private IntMap<Mass> myMasses = new IntMap<Mass>();
+    // id of each mass made, in the order they were made
+    private int[] myIds = new int[0];
+    private int myIdCount;
 
     /**
      * load the model
      * 
      * @param assembly     the Assembly
      * @param modelFile    the file to load from
+     * @throws ModelFormatException if the file has a mistake in it
      */
     public void loadModel (Assembly assembly, File modelFile) {
         try {
-            Scanner input = new Scanner(modelFile);
-            while (input.hasNext()) {
-                Scanner line = new Scanner(input.nextLine());
-                while (line.hasNext()) {
-                    String type = line.next();
-                    if (MASS_KEYWORD.equals(type)) {
-                        assembly.add(massCommand(line));
-                    }
-                    else if (SPRING_KEYWORD.equals(type)) {
-                        assembly.add(springCommand(line));
-                    }
-                    else if (MUSCLE_KEYWORD.equals(type)) {
-                        assembly.add(muscleCommand(line));
-                    }
-                    else if (FIXED_MASS_KEYWORD.equals(type)) {
-                        assembly.add(fixMassCommand(line));
-                    }
-                }
+            if (ModelReader.isBinary(modelFile)) {
+                new ModelReader().loadModel(assembly, modelFile);
+                return;
+            }
+            if (modelFile.length() >= PARALLEL_LOAD_SIZE &&
+                Runtime.getRuntime().availableProcessors() > 1) {
+                new ChunkedLoader(this).loadModel(assembly, modelFile);
+                return;
+            }
+            ModelTokenizer input = new ModelTokenizer(modelFile);
+            try {
+                loadModel(assembly, input);
+            }
+            finally {
+                input.close();
             }
-            input.close();
         }
-        catch (FileNotFoundException e) {
+        catch (IOException e) {
             // should not happen because File came from user selection
             e.printStackTrace();
         }
     }
 
     /**
-     * Creates a muscle object
+     * load the model from the given tokens
+     * 
+     * @param assembly     the Assembly
+     * @param input        the tokens to load from
+     * @throws IOException if the tokens cannot be read
+     * @throws ModelFormatException if the input has a mistake in it
+     */
+    public void loadModel (final Assembly assembly, final ModelTokenizer input)
+        throws IOException {
+        parse(input, new ModelBuilder() {
+            @Override
+            public void mass (int id, double x, double y, double mass, int flags) {
+                define(id, assembly.getMasses().create(x, y, mass, flags));
+            }
+
+            @Override
+            public void spring (int start, int end, double length, double k) {
+                Mass first = massReference(input, start);
+                Mass second = massReference(input, end);
+                assembly.add(new Spring(first, second, length,
+                                        FrameUnits.springConstant(k, first, second)));
+            }
+
+            @Override
+            public void muscle (int start, int end, double length, double k,
+                                double amplitude, double delay, double frequency) {
+                Mass first = massReference(input, start);
+                Mass second = massReference(input, end);
+                assembly.add(new Muscle(first, second, length,
+                                        FrameUnits.springConstant(k, first, second),
+                                        amplitude, delay, frequency));
+            }
+
+            @Override
+            public void rod (int start, int end, double length) {
+                assembly.add(new Rod(massReference(input, start), massReference(input, end),
+                                     length));
+            }
+        });
+    }
+
+    /**
+     * Read every command from the given tokens and pass it to the builder.
+     * 
+     * @param input        the tokens to read
+     * @param builder      what to do with each command
+     * @throws IOException if the tokens cannot be read
+     * @throws ModelFormatException if the input has a mistake in it
+     */
+    static void parse (ModelTokenizer input, ModelBuilder builder) throws IOException {
+        while (input.nextToken()) {
+            if (input.isWord(MASS_KEYWORD)) {
+                massCommand(input, builder, 0);
+            }
+            else if (input.isWord(SPRING_KEYWORD)) {
+                springCommand(input, builder);
+            }
+            else if (input.isWord(MUSCLE_KEYWORD)) {
+                muscleCommand(input, builder);
+            }
+            else if (input.isWord(FIXED_MASS_KEYWORD)) {
+                massCommand(input, builder, MassStore.FIXED);
+            }
+            else if (input.isWord(ROD_KEYWORD)) {
+                rodCommand(input, builder);
+            }
+            else {
+                throw input.error("unknown command: " + input.getToken());
+            }
+        }
+    }
+
+    /**
+     * Returns the id of each mass made so far, in the order they were made,
+     * which is also their order in a freshly loaded assembly
+     * 
+     * @return
+     */
+    public int[] getIds () {
+        return Arrays.copyOf(myIds, myIdCount);
+    }
+
+    /**
+     * Returns true if no masses have been made yet
+     */
+    boolean isEmpty () {
+        return myIdCount == 0;
+    }
+
+    /**
+     * Remember the mass made for the given id
+     */
+    void define (int id, Mass mass) {
+        myMasses.put(id, mass);
+        if (myIdCount == myIds.length) {
+            myIds = Arrays.copyOf(myIds, Math.max(16, 2 * myIdCount));
+        }
+        myIds[myIdCount++] = id;
+    }
+
+    /**
+     * Reads a muscle
      * 
      * @param line
-     * @return result
+     * @param builder
      */
-    private Muscle muscleCommand (Scanner line) {
-        Mass m1 = myMasses.get(line.nextInt());
-        Mass m2 = myMasses.get(line.nextInt());
-        double length = line.nextDouble();
-        double ks = line.nextDouble();
-        double amp = line.nextDouble();
-        double delay = line.nextDouble();
-        double freq = line.nextDouble();
-        return new Muscle(m1, m2, length, ks, amp, delay, freq);
+    private static void muscleCommand (ModelTokenizer line, ModelBuilder builder)
+        throws IOException {
+        int m1 = line.nextInt("mass id");
+        int m2 = line.nextInt("mass id");
+        double length = line.nextDouble("length");
+        double ks = line.nextDouble("spring constant");
+        double amp = line.nextDouble("amplitude");
+        double delay = line.nextDouble("delay");
+        double freq = line.nextDouble("frequency");
+        builder.muscle(m1, m2, length, ks, amp, delay, freq);
     }
 
     /**
-     * Creates a Fixed Mass
+     * Reads a mass with the given flags
      * 
      * @param line
-     * @return result
+     * @param builder
+     * @param flags
      */
-    private FixedMass fixMassCommand (Scanner line) {
-        int id = line.nextInt();
-        double x = line.nextDouble();
-        double y = line.nextDouble();
-        double mass = line.nextDouble();
-        FixedMass result = new FixedMass(x, y, mass);
-        myMasses.put(id, result);
-        return result;
+    private static void massCommand (ModelTokenizer line, ModelBuilder builder, int flags)
+        throws IOException {
+        int id = line.nextInt("mass id");
+        double x = line.nextDouble("x");
+        double y = line.nextDouble("y");
+        double mass = line.nextDouble("mass");
+        builder.mass(id, x, y, mass, flags);
     }
 
     /**
-     * Creates a mass
+     * Reads a spring
      * 
      * @param line
-     * @return result
+     * @param builder
      */
-    private Mass massCommand (Scanner line) {
-        int id = line.nextInt();
-        double x = line.nextDouble();
-        double y = line.nextDouble();
-        double mass = line.nextDouble();
-        Mass result = new Mass(x, y, mass);
-        myMasses.put(id, result);
-        return result;
+    private static void springCommand (ModelTokenizer line, ModelBuilder builder)
+        throws IOException {
+        int m1 = line.nextInt("mass id");
+        int m2 = line.nextInt("mass id");
+        double restLength = line.nextDouble("rest length");
+        double ks = line.nextDouble("spring constant");
+        builder.spring(m1, m2, restLength, ks);
+    }
+
+    /**
+     * Reads a rod
+     * 
+     * @param line
+     * @param builder
+     */
+    private static void rodCommand (ModelTokenizer line, ModelBuilder builder)
+        throws IOException {
+        int m1 = line.nextInt("mass id");
+        int m2 = line.nextInt("mass id");
+        double length = line.nextDouble("length");
+        builder.rod(m1, m2, length);
     }
 
     /**
-     * creates a spring
+     * Returns the mass made earlier for the given id
      * 
      * @param line
-     * @return result
+     * @param id
+     * @return the mass
      */
-    private Spring springCommand (Scanner line) {
-        Mass m1 = myMasses.get(line.nextInt());
-        Mass m2 = myMasses.get(line.nextInt());
-        double restLength = line.nextDouble();
-        double ks = line.nextDouble();
-        return new Spring(m1, m2, restLength, ks);
+    private Mass massReference (ModelTokenizer line, int id) {
+        Mass result = myMasses.get(id);
+        if (result == null) {
+            throw line.error(noMassMessage(id));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the error message for a reference to a mass that is not defined
+     */
+    static String noMassMessage (int id) {
+        return "no mass with id " + id;
+    }
+
+    private static byte[] keyword (String word) {
+        return word.getBytes(StandardCharsets.US_ASCII);
     }
 }
@@ -17,10 +17,20 @@ public class FixedMass extends Mass {
      * @param mass              Mass value
      */
     public FixedMass (double x, double y, double mass) {
-        super(x, y, mass);
+        super(x, y, mass, MassStore.FIXED);
 
     }
 
+    /**
+     * Constructs a handle onto a fixed slot that is already filled in
+     * 
+     * @param store             the store
+     * @param index             the slot
+     */
+    FixedMass (MassStore store, int index) {
+        super(store, index);
+    }
+
     /**
      * Empty update method because no forces act upon mass
      */
@@ -0,0 +1,19 @@
+package simulation;
+
+/**
+ * Works out the forces on every mass of a store from its current
+ * positions and velocities. Integrators call this as many times per
+ * step as their method needs.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public interface ForceEvaluator {
+
+    /**
+     * Replace the accumulated forces of every mass with the forces acting
+     * on it in the store's current state.
+     * 
+     * @param masses    the mass store
+     */
+    void evaluate (MassStore masses);
+}
@@ -0,0 +1,61 @@
+package simulation;
+
+
+/**
+ * Converts the numbers of the original program, which were per animation
+ * frame, to the real time units the simulation now runs in. The original
+ * ran 25 frames a second, added every force straight to a mass's velocity
+ * each frame whatever the mass, and moved each mass 1/40 of its velocity
+ * each frame. So a pull of 1 there moved a mass as an acceleration of
+ * ACCELERATION pixels per second squared does now.
+ *
+ * Model files keep their spring constants in the original units, and the
+ * forces keep their original strengths, so models move as they used to.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class FrameUnits {
+    /**
+     * Pixels per second squared that a per-frame pull of 1 amounts to,
+     * 25 * 25 / 40
+     */
+    public static final double ACCELERATION = 25 * 25 / 40.0;
+
+    private FrameUnits () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * Returns the force that gives a mass of the given value the same
+     * motion a per-frame pull of the given size gave it.
+     *
+     * @param pull      pull in the original units
+     * @param mass      the mass's value
+     * @return
+     */
+    public static double force (double pull, double mass) {
+        return pull * ACCELERATION * mass;
+    }
+
+    /**
+     * Returns the hooke's constant, in real units, of a spring between the
+     * given masses that had the given constant in the original units. The
+     * original pushed each free end as if it weighed 1, so the spring
+     * stretches and swings as it did there: its masses close in on each
+     * other at the same rate.
+     *
+     * @param k         constant in the original units
+     * @param start     first mass
+     * @param end       second mass
+     * @return
+     */
+    public static double springConstant (double k, Mass start, Mass end) {
+        double startInverse = start.getStore().getInverseMass()[start.getIndex()];
+        double endInverse = end.getStore().getInverseMass()[end.getIndex()];
+        int moving = ((startInverse > 0) ? 1 : 0) + ((endInverse > 0) ? 1 : 0);
+        if (moving == 0) {
+            return k * ACCELERATION;
+        }
+        return k * ACCELERATION * moving / (startInverse + endInverse);
+    }
+}
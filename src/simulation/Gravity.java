@@ -1,6 +1,7 @@
 package simulation;
 
 import java.awt.Dimension;
+import util.CartesianVector;
 import util.Force;
 import util.Vector;
 
@@ -15,6 +16,8 @@ public class Gravity extends Force {
     private static final int DOWN_DIRECTION = 90;
     private double myGravitySpeed;
     private double myToggleGravitySpeedHolder;
+    // gravity as x and y changes, so applying it needs no trigonometry
+    private CartesianVector myDownwardAcceleration = new CartesianVector();
     
     /**
      * Constructs a Gravity object that 
@@ -26,16 +29,49 @@ public class Gravity extends Force {
         super();
         myGravitySpeed = grav;
         myToggleGravitySpeedHolder = grav;
+        resetDownwardAcceleration();
+    }
+
+    /**
+     * Returns true if gravity is on
+     * @return
+     */
+    public boolean isGravityOn () {
+        return myGravitySpeed != 0;
     }
     
     /**
      * Update the force being applied to the mass
      * @param bounds    size of simulation
-     * @param m         mass object
+     * @param masses    the mass store
+     * @param index     index of the mass
      */
     @Override 
-    public void update  (Dimension bounds, Mass m) {
-        applyGravity(m);
+    public void update  (Dimension bounds, MassStore masses, int index) {
+        applyGravity(masses, index);
+    }
+    
+    /**
+     * Update the force being applied to a range of masses
+     * @param bounds    size of simulation
+     * @param masses    the mass store
+     * @param start     first index
+     * @param end       one past the last index
+     */
+    @Override
+    public void update (Dimension bounds, MassStore masses, int start, int end) {
+        double downX = myDownwardAcceleration.getXChange();
+        double downY = myDownwardAcceleration.getYChange();
+        double[] mass = masses.getMassValues();
+        double[] forceX = masses.getForceX();
+        double[] forceY = masses.getForceY();
+        for (int i = start; i < end; i++) {
+            // masses with negative mass ignore forces
+            if (mass[i] >= 0) {
+                forceX[i] += downX * mass[i];
+                forceY[i] += downY * mass[i];
+            }
+        }
     }
     
     /**
@@ -43,8 +79,19 @@ public class Gravity extends Force {
      * @param m         The mass object
      */
     public void applyGravity (Mass m) {
-        Vector downwardAcceleration = new Vector(DOWN_DIRECTION, myGravitySpeed);
-        m.applyForce(downwardAcceleration);
+        applyGravity(m.getStore(), m.getIndex());
+    }
+
+    /**
+     * Applies the force to the mass at the given index. Gravity is an
+     * acceleration, so the force grows with the mass.
+     * @param masses    the mass store
+     * @param index     index of the mass
+     */
+    public void applyGravity (MassStore masses, int index) {
+        double mass = masses.getMassValue(index);
+        masses.applyForce(index, myDownwardAcceleration.getXChange() * mass,
+                          myDownwardAcceleration.getYChange() * mass);
     }
     
     /**
@@ -58,6 +105,14 @@ public class Gravity extends Force {
         else {
             myGravitySpeed = myToggleGravitySpeedHolder;
         }
+        resetDownwardAcceleration();
+    }
+
+    /**
+     * Recompute the x and y changes of gravity from its speed
+     */
+    private void resetDownwardAcceleration () {
+        myDownwardAcceleration = new CartesianVector(new Vector(DOWN_DIRECTION, myGravitySpeed));
     }
 
 }
@@ -0,0 +1,24 @@
+package simulation;
+
+/**
+ * A numerical method that advances masses through one timestep, using
+ * the forces a ForceEvaluator reports. Fixed masses never move.
+ * 
+ * Integrators may keep scratch space between steps, so each assembly
+ * should have its own instance. The pass that leaves the masses at their
+ * new positions should also sum the center of mass (MassStore.beginMoments),
+ * so it never needs a pass of its own.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public interface Integrator {
+
+    /**
+     * Advance every mass of the store by the given time.
+     * 
+     * @param masses        the mass store
+     * @param forces        works out the forces for a state
+     * @param elapsedTime   length of the step
+     */
+    void step (MassStore masses, ForceEvaluator forces, double elapsedTime);
+}
@@ -3,20 +3,21 @@ package simulation;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
-import util.Location;
+import util.CartesianVector;
 import util.Pixmap;
-import util.Sprite;
 import util.Vector;
 
 
 /**
- * Details a mass class that has forces acting on it
- * 
+ * Details a mass class that has forces acting on it.
+ *
+ * A mass is only a handle onto a slot of a MassStore, which holds the
+ * actual state so the simulation can work on all masses by index.
+ *
  * @author Jerry Li & Bill Muensterman
  */
-public class Mass extends Sprite {
-   
-    
+public class Mass {
+
     /**
      * Size of object
      */
@@ -29,9 +30,9 @@ public class Mass extends Sprite {
      * Angle value to correct original faulty code
      */
     public static final int ANGLE_CORRECT = 180;
-    
-    private double myMass;
-    private Vector myAcceleration;
+
+    private MassStore myStore;
+    private int myIndex;
 
     /**
      * Constructs a mass based on coordinates, mass value, viscosity, and gravity acting
@@ -41,35 +42,97 @@ public class Mass extends Sprite {
      * @param mass      mass value
      */
     public Mass (double x, double y, double mass) {
-        super(DEFUALT_IMAGE, new Location(x, y), DEFAULT_SIZE);
-        myMass = mass;
-        myAcceleration = new Vector();
+        this(x, y, mass, 0);
+    }
+
+    /**
+     * Constructs a mass with the given store flags, kept in a private
+     * store until it is added to an assembly
+     * @param x         x coordinate
+     * @param y         y coordinate
+     * @param mass      mass value
+     * @param flags     MassStore flags
+     */
+    protected Mass (double x, double y, double mass, int flags) {
+        myStore = new MassStore(1);
+        myIndex = myStore.add(this, x, y, mass, flags);
+    }
+
+    /**
+     * Constructs a handle onto a slot that is already filled in, for
+     * stores that create masses in bulk
+     * @param store     the store
+     * @param index     the slot
+     */
+    Mass (MassStore store, int index) {
+        bind(store, index);
+    }
+
+    /**
+     * Returns the store that holds this mass's state
+     * @return myStore
+     */
+    public MassStore getStore () {
+        return myStore;
+    }
 
+    /**
+     * Returns this mass's index in its store
+     * @return myIndex
+     */
+    public int getIndex () {
+        return myIndex;
+    }
+
+    /**
+     * Point this handle at a (new) slot.
+     */
+    void bind (MassStore store, int index) {
+        myStore = store;
+        myIndex = index;
     }
 
     /**
      * Returns the mass of the mass
-     * 
+     *
      * @return myMass
      */
     public double getMyMass () {
-        return myMass;
+        return myStore.getMassValue(myIndex);
     }
-    
+
     /**
      * Get the acceleration of oject
      * @return
      */
     public Vector getAcceleration () {
-        return myAcceleration;
+        return CartesianVector.toVector(myStore.getForceX()[myIndex],
+                                        myStore.getForceY()[myIndex]);
     }
-    
+
     /**
      * Change acceleration of object
      * @param v         The acceleration changed to
      */
     public void changeAcceleration (Vector v) {
-        myAcceleration = v;
+        myStore.setForce(myIndex, v.getXChange(), v.getYChange());
+    }
+
+    /**
+     * Returns mass's velocity.
+     * @return
+     */
+    public Vector getVelocity () {
+        return CartesianVector.toVector(myStore.getVelocityX()[myIndex],
+                                        myStore.getVelocityY()[myIndex]);
+    }
+
+    /**
+     * Resets mass's velocity.
+     * @param velocity  the new velocity
+     */
+    public void setVelocity (Vector velocity) {
+        myStore.setVelocity(myIndex, velocity.getXChange(), velocity.getYChange());
     }
 
     /**
@@ -78,21 +141,14 @@ public class Mass extends Sprite {
      * @param elapsedTime       Framerate
      * @param bounds            size of simulation
      */
-    @Override
     public void update (double elapsedTime, Dimension bounds) {
-        getBounce(bounds);
-        // convert force back into Mover's velocity
-        getVelocity().sum(myAcceleration);
-        myAcceleration.reset();
-        // move mass by velocity
-        super.update(elapsedTime, bounds);
+        myStore.update(myIndex, elapsedTime, bounds);
     }
 
     /**
      * Paint mass on canvas
      * @param pen       The graphics pen
      */
-    @Override
     public void paint (Graphics2D pen) {
         pen.setColor(Color.BLACK);
         pen.fillOval((int) getLeft(), (int) getTop(), (int) getWidth(), (int) getHeight());
@@ -103,9 +159,7 @@ public class Mass extends Sprite {
      * @param force        The force being applied
      */
     public void applyForce (Vector force) {
-        if (myMass >= 0) {
-            myAcceleration.sum(force);
-        }
+        myStore.applyForce(myIndex, force);
     }
 
     /**
@@ -113,21 +167,69 @@ public class Mass extends Sprite {
      * @param other          The mass object
      */
     public double distance (Mass other) {
-        // this is a little awkward, so hide it
-        return new Location(getX(), getY()).distance(new Location(other.getX(), other.getY()));
+        return CartesianVector.length(getX() - other.getX(), getY() - other.getY());
+    }
+
+    /**
+     * Resets mass's center.
+     */
+    public void setCenter (double x, double y) {
+        myStore.setPosition(myIndex, x, y);
+    }
+
+    /**
+     * Returns mass's x coordinate in pixels.
+     */
+    public double getX () {
+        return myStore.getX(myIndex);
+    }
+
+    /**
+     * Returns mass's y-coordinate in pixels.
+     */
+    public double getY () {
+        return myStore.getY(myIndex);
+    }
+
+    /**
+     * Returns mass's left-most coordinate in pixels.
+     */
+    public double getLeft () {
+        return getX() - DEFAULT_SIZE.width / 2;
+    }
+
+    /**
+     * Returns mass's top-most coordinate in pixels.
+     */
+    public double getTop () {
+        return getY() - DEFAULT_SIZE.height / 2;
+    }
+
+    /**
+     * Returns mass's right-most coordinate in pixels.
+     */
+    public double getRight () {
+        return getX() + DEFAULT_SIZE.width / 2;
+    }
+
+    /**
+     * Returns mass's bottom-most coordinate in pixels.
+     */
+    public double getBottom () {
+        return getY() + DEFAULT_SIZE.height / 2;
+    }
+
+    /**
+     * Returns mass's width in pixels.
+     */
+    public double getWidth () {
+        return DEFAULT_SIZE.getWidth();
     }
 
     /**
-     * Check if ball is out of bounds, and "bounces" it if so
-     * 
-     * @param bounds
+     * Returns mass's height in pixels.
      */
-    private void getBounce (Dimension bounds) {
-        if (getBottom() >= bounds.height || getTop() <= 0) {
-            getVelocity().setDirection(-getVelocity().getDirection());
-        }
-        else if (getRight() >= bounds.width || getRight() <= 0) {
-            getVelocity().setDirection(ANGLE_CORRECT - getVelocity().getDirection());
-        }
+    public double getHeight () {
+        return DEFAULT_SIZE.getHeight();
     }
 }
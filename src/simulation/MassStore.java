@@ -0,0 +1,735 @@
+package simulation;
+
+import java.awt.Dimension;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import util.CompensatedSum;
+import util.Vector;
+
+
+/**
+ * Holds the state of many masses in parallel primitive arrays
+ * (structure of arrays), so the simulation can walk them by index
+ * instead of chasing one object per mass.
+ *
+ * The arrays returned by the array accessors may be replaced when the
+ * store grows, so fetch them again after adding masses.
+ *
+ * The store also keeps the total mass and the center of mass. The total
+ * changes as masses come and go; the center is summed by the integrator
+ * in the same pass that moves the masses (see beginMoments), and only
+ * rescanned when masses were moved some other way. Masses with a
+ * negative value, like the mouse's, are not counted.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class MassStore {
+    /**
+     * Flag for masses that no force moves
+     */
+    public static final int FIXED = 1;
+    /**
+     * Most removed masses kept in one store before another is started
+     */
+    public static final int MAX_DETACHED = 64;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // position
+    private double[] myX;
+    private double[] myY;
+    // positions at the start of the last step, for drawing between steps
+    private double[] myPreviousX;
+    private double[] myPreviousY;
+    // velocity
+    private double[] myVelocityX;
+    private double[] myVelocityY;
+    // accumulated force for the next step
+    private double[] myForceX;
+    private double[] myForceY;
+    private double[] myMass;
+    private double[] myInverseMass;
+    private int[] myFlags;
+    // view handles, kept so indices can be patched when masses move
+    private Mass[] myHandles;
+    private int mySize;
+    // center of mass
+    private CompensatedSum myTotalMass = new CompensatedSum();
+    private CompensatedSum myMomentX = new CompensatedSum();
+    private CompensatedSum myMomentY = new CompensatedSum();
+    private double myCenterX;
+    private double myCenterY;
+    private boolean myMomentsValid;
+    // bumped when masses come and go, and when they move
+    private int myStructureCount;
+    private int myMoveCount;
+    // where removed masses are kept, made when the first one is removed
+    // and let go once it is full or this store is cleared, so it lives
+    // only as long as the masses in it are held elsewhere
+    private MassStore myDetached;
+
+    /**
+     * Create an empty store with room for a few masses.
+     */
+    public MassStore () {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty store with room for the given number of masses.
+     *
+     * @param capacity  initial number of slots
+     */
+    public MassStore (int capacity) {
+        int n = Math.max(1, capacity);
+        myX = new double[n];
+        myY = new double[n];
+        myPreviousX = new double[n];
+        myPreviousY = new double[n];
+        myVelocityX = new double[n];
+        myVelocityY = new double[n];
+        myForceX = new double[n];
+        myForceY = new double[n];
+        myMass = new double[n];
+        myInverseMass = new double[n];
+        myFlags = new int[n];
+        myHandles = new Mass[n];
+    }
+
+    /**
+     * Returns the number of masses in the store.
+     */
+    public int size () {
+        return mySize;
+    }
+
+    /**
+     * Add a mass to the store and return its index.
+     *
+     * @param handle    view handle that refers to the new slot
+     * @param x         x coordinate
+     * @param y         y coordinate
+     * @param mass      mass value
+     * @param flags     combination of flag constants
+     * @return index of the new mass
+     */
+    int add (Mass handle, double x, double y, double mass, int flags) {
+        ensureCapacity(mySize + 1);
+        int index = mySize++;
+        myX[index] = x;
+        myY[index] = y;
+        myPreviousX[index] = x;
+        myPreviousY[index] = y;
+        myVelocityX[index] = 0;
+        myVelocityY[index] = 0;
+        myForceX[index] = 0;
+        myForceY[index] = 0;
+        myMass[index] = mass;
+        myInverseMass[index] = ((flags & FIXED) != 0 || mass <= 0) ? 0 : 1 / mass;
+        myFlags[index] = flags;
+        myHandles[index] = handle;
+        if (mass > 0) {
+            myTotalMass.add(mass);
+            myMomentsValid = false;
+        }
+        myStructureCount++;
+        return index;
+    }
+
+    /**
+     * Create a mass straight in this store, without a store of its own
+     * first, and return its handle. Fixed masses get a FixedMass handle.
+     * Meant for loading many masses at once.
+     *
+     * @param x         x coordinate
+     * @param y         y coordinate
+     * @param mass      mass value
+     * @param flags     combination of flag constants
+     * @return the new mass
+     */
+    Mass create (double x, double y, double mass, int flags) {
+        int index = add(null, x, y, mass, flags);
+        Mass handle = ((flags & FIXED) != 0) ? new FixedMass(this, index)
+                                             : new Mass(this, index);
+        myHandles[index] = handle;
+        return handle;
+    }
+
+    /**
+     * Move the given mass into this store, carrying over its state.
+     *
+     * @param mass      the mass to move
+     */
+    public void add (Mass mass) {
+        MassStore source = mass.getStore();
+        if (source == this) {
+            return;
+        }
+        int from = mass.getIndex();
+        int index = add(mass, source.myX[from], source.myY[from], source.myMass[from],
+                        source.myFlags[from]);
+        myVelocityX[index] = source.myVelocityX[from];
+        myVelocityY[index] = source.myVelocityY[from];
+        myForceX[index] = source.myForceX[from];
+        myForceY[index] = source.myForceY[from];
+        source.release(from);
+        mass.bind(this, index);
+    }
+
+    /**
+     * Remove the given mass from this store. The mass keeps its state in
+     * a store that holds this store's removed masses, so it can be added
+     * again later. That store is reused until MAX_DETACHED masses are in
+     * it, so masses that come and go, like the mouse's, cost nothing, and
+     * masses removed for good are not held on to forever.
+     *
+     * @param mass      the mass to remove
+     */
+    public void remove (Mass mass) {
+        if (mass.getStore() != this) {
+            return;
+        }
+        if (myDetached == null || myDetached.size() >= MAX_DETACHED) {
+            myDetached = new MassStore();
+        }
+        myDetached.add(mass);
+    }
+
+    /**
+     * Remove the masses from the given index on, all at once. They keep
+     * their state, in order, in one new store of their own, so this costs
+     * the same few arrays however many masses go.
+     *
+     * @param size      number of masses to keep
+     */
+    void truncate (int size) {
+        int count = mySize - size;
+        if (count <= 0) {
+            return;
+        }
+        MassStore detached = new MassStore(count);
+        System.arraycopy(myX, size, detached.myX, 0, count);
+        System.arraycopy(myY, size, detached.myY, 0, count);
+        System.arraycopy(myPreviousX, size, detached.myPreviousX, 0, count);
+        System.arraycopy(myPreviousY, size, detached.myPreviousY, 0, count);
+        System.arraycopy(myVelocityX, size, detached.myVelocityX, 0, count);
+        System.arraycopy(myVelocityY, size, detached.myVelocityY, 0, count);
+        System.arraycopy(myForceX, size, detached.myForceX, 0, count);
+        System.arraycopy(myForceY, size, detached.myForceY, 0, count);
+        System.arraycopy(myMass, size, detached.myMass, 0, count);
+        System.arraycopy(myInverseMass, size, detached.myInverseMass, 0, count);
+        System.arraycopy(myFlags, size, detached.myFlags, 0, count);
+        System.arraycopy(myHandles, size, detached.myHandles, 0, count);
+        detached.mySize = count;
+        for (int i = 0; i < count; i++) {
+            detached.myHandles[i].bind(detached, i);
+            if (detached.myMass[i] > 0) {
+                detached.myTotalMass.add(detached.myMass[i]);
+                if (size > 0) {
+                    myTotalMass.add(-detached.myMass[i]);
+                }
+            }
+        }
+        Arrays.fill(myHandles, size, mySize, null);
+        mySize = size;
+        if (size == 0) {
+            // start over exactly rather than keep rounding leftovers
+            myTotalMass.reset();
+        }
+        myMomentsValid = false;
+        myStructureCount++;
+    }
+
+    /**
+     * Returns true if the given mass lives in this store.
+     */
+    public boolean contains (Mass mass) {
+        return mass.getStore() == this;
+    }
+
+    /**
+     * Remove all masses, detaching their handles.
+     */
+    public void clear () {
+        truncate(0);
+        myDetached = null;
+    }
+
+    /**
+     * Returns the view handle for the mass at the given index.
+     */
+    public Mass getMass (int index) {
+        return myHandles[index];
+    }
+
+    /**
+     * Returns x coordinate of the mass at the given index.
+     */
+    public double getX (int index) {
+        return myX[index];
+    }
+
+    /**
+     * Returns y coordinate of the mass at the given index.
+     */
+    public double getY (int index) {
+        return myY[index];
+    }
+
+    /**
+     * Returns mass value of the mass at the given index.
+     */
+    public double getMassValue (int index) {
+        return myMass[index];
+    }
+
+    /**
+     * Returns true if the mass at the given index is fixed in place.
+     */
+    public boolean isFixed (int index) {
+        return (myFlags[index] & FIXED) != 0;
+    }
+
+    /**
+     * Move the mass at the given index. It jumps there: drawing between
+     * steps does not show it on its way.
+     */
+    public void setPosition (int index, double x, double y) {
+        myX[index] = x;
+        myY[index] = y;
+        myPreviousX[index] = x;
+        myPreviousY[index] = y;
+        if (myMass[index] > 0) {
+            myMomentsValid = false;
+        }
+        myMoveCount++;
+    }
+
+    /**
+     * Resets the velocity of the mass at the given index.
+     */
+    public void setVelocity (int index, double dx, double dy) {
+        myVelocityX[index] = dx;
+        myVelocityY[index] = dy;
+    }
+
+    /**
+     * Resets the accumulated force of the mass at the given index.
+     */
+    public void setForce (int index, double dx, double dy) {
+        myForceX[index] = dx;
+        myForceY[index] = dy;
+    }
+
+    /**
+     * Add the given force to the mass at the given index. Masses with a
+     * negative mass value ignore forces.
+     */
+    public void applyForce (int index, double dx, double dy) {
+        if (myMass[index] >= 0) {
+            myForceX[index] += dx;
+            myForceY[index] += dy;
+        }
+    }
+
+    /**
+     * Add the given force to the mass at the given index.
+     */
+    public void applyForce (int index, Vector force) {
+        applyForce(index, force.getXChange(), force.getYChange());
+    }
+
+    /**
+     * Returns x coordinates, indexed by mass.
+     */
+    public double[] getPositionX () {
+        return myX;
+    }
+
+    /**
+     * Returns y coordinates, indexed by mass.
+     */
+    public double[] getPositionY () {
+        return myY;
+    }
+
+    /**
+     * Returns x coordinates at the start of the last step, indexed by mass.
+     */
+    public double[] getPreviousX () {
+        return myPreviousX;
+    }
+
+    /**
+     * Returns y coordinates at the start of the last step, indexed by mass.
+     */
+    public double[] getPreviousY () {
+        return myPreviousY;
+    }
+
+    /**
+     * Remember where every mass is as the start of a step, so the masses
+     * can be drawn part of the way through it.
+     */
+    public void savePositions () {
+        System.arraycopy(myX, 0, myPreviousX, 0, mySize);
+        System.arraycopy(myY, 0, myPreviousY, 0, mySize);
+    }
+
+    /**
+     * Note that masses were moved straight through the position arrays,
+     * outside an integrator pass, so the center of mass is summed again
+     * the next time it is asked for.
+     */
+    public void positionsChanged () {
+        myMomentsValid = false;
+        myMoveCount++;
+    }
+
+    /**
+     * Returns x velocities, indexed by mass.
+     */
+    public double[] getVelocityX () {
+        return myVelocityX;
+    }
+
+    /**
+     * Returns y velocities, indexed by mass.
+     */
+    public double[] getVelocityY () {
+        return myVelocityY;
+    }
+
+    /**
+     * Returns accumulated x forces, indexed by mass.
+     */
+    public double[] getForceX () {
+        return myForceX;
+    }
+
+    /**
+     * Returns accumulated y forces, indexed by mass.
+     */
+    public double[] getForceY () {
+        return myForceY;
+    }
+
+    /**
+     * Returns mass values, indexed by mass.
+     */
+    public double[] getMassValues () {
+        return myMass;
+    }
+
+    /**
+     * Returns inverse mass values (0 for fixed masses), indexed by mass.
+     */
+    public double[] getInverseMass () {
+        return myInverseMass;
+    }
+
+    /**
+     * Returns flags, indexed by mass.
+     */
+    public int[] getFlags () {
+        return myFlags;
+    }
+
+    /**
+     * Clear the accumulated force of every mass.
+     */
+    public void clearForces () {
+        Arrays.fill(myForceX, 0, mySize, 0);
+        Arrays.fill(myForceY, 0, mySize, 0);
+    }
+
+    /**
+     * Bounce every mass that is out of bounds.
+     *
+     * @param bounds            size of simulation
+     */
+    public void bounce (Dimension bounds) {
+        for (int i = 0; i < mySize; i++) {
+            bounce(i, bounds);
+        }
+    }
+
+    /**
+     * Check if the mass at the given index is out of bounds, and "bounces"
+     * it if so by turning its velocity back.
+     *
+     * @param index             the mass
+     * @param bounds            size of simulation
+     */
+    public void bounce (int index, Dimension bounds) {
+        double halfWidth = Mass.DEFAULT_SIZE.width / 2;
+        double halfHeight = Mass.DEFAULT_SIZE.height / 2;
+        double x = myX[index];
+        double y = myY[index];
+        if (y + halfHeight >= bounds.height || y - halfHeight <= 0) {
+            myVelocityY[index] = -myVelocityY[index];
+        }
+        else if (x + halfWidth >= bounds.width || x + halfWidth <= 0) {
+            myVelocityX[index] = -myVelocityX[index];
+        }
+    }
+
+    /**
+     * Move the mass at the given index by its accumulated force and velocity
+     * with one semi-implicit Euler step, bouncing it if it is out of bounds.
+     * Fixed masses do not move.
+     *
+     * @param index             the mass
+     * @param elapsedTime       length of the step
+     * @param bounds            size of simulation
+     */
+    public void update (int index, double elapsedTime, Dimension bounds) {
+        if ((myFlags[index] & FIXED) == 0) {
+            bounce(index, bounds);
+            myVelocityX[index] += myForceX[index] * myInverseMass[index] * elapsedTime;
+            myVelocityY[index] += myForceY[index] * myInverseMass[index] * elapsedTime;
+            myX[index] += myVelocityX[index] * elapsedTime;
+            myY[index] += myVelocityY[index] * elapsedTime;
+            if (myMass[index] > 0) {
+                myMomentsValid = false;
+            }
+            myMoveCount++;
+        }
+        myForceX[index] = 0;
+        myForceY[index] = 0;
+    }
+
+    /**
+     * Returns the total of the (non-negative) mass values.
+     */
+    public double getTotalMass () {
+        return myTotalMass.getSum();
+    }
+
+    /**
+     * Returns x coordinate of the center of mass, as of the last time the
+     * masses were moved. NaN when there is no mass.
+     */
+    public double getCenterX () {
+        updateMoments();
+        return myCenterX;
+    }
+
+    /**
+     * Returns y coordinate of the center of mass, as of the last time the
+     * masses were moved. NaN when there is no mass.
+     */
+    public double getCenterY () {
+        updateMoments();
+        return myCenterY;
+    }
+
+    /**
+     * Start summing the center of mass. An integrator calls this before
+     * the pass that moves the masses, addMoment for every mass in that
+     * pass, fixed or not, and endMoments after it. The center seen in
+     * between is still the previous one.
+     */
+    public void beginMoments () {
+        myMomentX.reset();
+        myMomentY.reset();
+    }
+
+    /**
+     * Add the mass at the given index, where it is now, to the center of mass.
+     */
+    public void addMoment (int index) {
+        double mass = myMass[index];
+        if (mass > 0) {
+            myMomentX.add(mass * myX[index]);
+            myMomentY.add(mass * myY[index]);
+        }
+    }
+
+    /**
+     * Finish summing the center of mass.
+     */
+    public void endMoments () {
+        double total = getTotalMass();
+        myCenterX = myMomentX.getSum() / total;
+        myCenterY = myMomentY.getSum() / total;
+        myMomentsValid = true;
+        myMoveCount++;
+    }
+
+    /**
+     * Returns true if the center of mass is known without summing it again.
+     */
+    boolean hasCenter () {
+        return myMomentsValid;
+    }
+
+    /**
+     * Put back a center of mass read from getCenterX and getCenterY, once
+     * the masses are back where they were when it was read.
+     */
+    void restoreCenter (double x, double y) {
+        myCenterX = x;
+        myCenterY = y;
+        myMomentsValid = true;
+    }
+
+    /**
+     * Returns a number that changes whenever masses are added or removed,
+     * so indices held elsewhere can be checked for staleness.
+     */
+    public int getStructureCount () {
+        return myStructureCount;
+    }
+
+    /**
+     * Returns a number that changes whenever masses may have moved: after
+     * every integrator pass and every setPosition.
+     */
+    public int getMoveCount () {
+        return myMoveCount;
+    }
+
+    /**
+     * Write the whole state of the store, down to the cached center of
+     * mass, in the layout described by Checkpoint.
+     *
+     * @param out       buffer with room for Checkpoint.storeSize bytes
+     */
+    void writeState (ByteBuffer out) {
+        out.putInt(mySize);
+        for (int i = 0; i < mySize; i++) {
+            out.putDouble(myX[i]);
+            out.putDouble(myY[i]);
+            out.putDouble(myVelocityX[i]);
+            out.putDouble(myVelocityY[i]);
+            out.putDouble(myForceX[i]);
+            out.putDouble(myForceY[i]);
+            out.putDouble(myMass[i]);
+            out.putInt(myFlags[i]);
+        }
+        out.putDouble(getTotalMass());
+        out.put((byte) (myMomentsValid ? 1 : 0));
+        out.putDouble(myCenterX);
+        out.putDouble(myCenterY);
+    }
+
+    /**
+     * Replace everything in the store with a state written by writeState.
+     * The old masses are detached and every restored mass gets a new
+     * handle, so the total and center come back exactly as they were
+     * rather than summed again in a different order.
+     *
+     * @param in        buffer positioned at the state
+     */
+    void readState (ByteBuffer in) {
+        clear();
+        int size = in.getInt();
+        if (size < 0) {
+            throw new IllegalArgumentException("negative number of masses");
+        }
+        ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            double x = in.getDouble();
+            double y = in.getDouble();
+            double velocityX = in.getDouble();
+            double velocityY = in.getDouble();
+            double forceX = in.getDouble();
+            double forceY = in.getDouble();
+            double mass = in.getDouble();
+            int index = create(x, y, mass, in.getInt()).getIndex();
+            myVelocityX[index] = velocityX;
+            myVelocityY[index] = velocityY;
+            myForceX[index] = forceX;
+            myForceY[index] = forceY;
+        }
+        myTotalMass.reset();
+        myTotalMass.add(in.getDouble());
+        myMomentsValid = in.get() != 0;
+        myCenterX = in.getDouble();
+        myCenterY = in.getDouble();
+        myMoveCount++;
+    }
+
+    /**
+     * Make the given handle the one for the mass at the given index, in
+     * place of the handle it has now.
+     *
+     * @param index     index of the mass
+     * @param handle    its new handle, taken from wherever it was
+     */
+    void replaceHandle (int index, Mass handle) {
+        myHandles[index] = handle;
+        handle.bind(this, index);
+    }
+
+    /**
+     * Sum the center of mass again if masses were moved outside an
+     * integrator pass, or added or removed.
+     */
+    private void updateMoments () {
+        if (!myMomentsValid) {
+            beginMoments();
+            for (int i = 0; i < mySize; i++) {
+                addMoment(i);
+            }
+            endMoments();
+        }
+    }
+
+    /**
+     * Make sure the store can hold the given number of masses.
+     *
+     * @param capacity  number of masses
+     */
+    public void ensureCapacity (int capacity) {
+        if (capacity <= myX.length) {
+            return;
+        }
+        int n = Math.max(capacity, myX.length * 2);
+        myX = Arrays.copyOf(myX, n);
+        myY = Arrays.copyOf(myY, n);
+        myPreviousX = Arrays.copyOf(myPreviousX, n);
+        myPreviousY = Arrays.copyOf(myPreviousY, n);
+        myVelocityX = Arrays.copyOf(myVelocityX, n);
+        myVelocityY = Arrays.copyOf(myVelocityY, n);
+        myForceX = Arrays.copyOf(myForceX, n);
+        myForceY = Arrays.copyOf(myForceY, n);
+        myMass = Arrays.copyOf(myMass, n);
+        myInverseMass = Arrays.copyOf(myInverseMass, n);
+        myFlags = Arrays.copyOf(myFlags, n);
+        myHandles = Arrays.copyOf(myHandles, n);
+    }
+
+    /**
+     * Free the slot at the given index by moving the last mass into it.
+     */
+    private void release (int index) {
+        if (myMass[index] > 0) {
+            myTotalMass.add(-myMass[index]);
+            myMomentsValid = false;
+        }
+        myStructureCount++;
+        int last = --mySize;
+        if (last == 0) {
+            // start over exactly rather than keep rounding leftovers
+            myTotalMass.reset();
+        }
+        if (index != last) {
+            myX[index] = myX[last];
+            myY[index] = myY[last];
+            myPreviousX[index] = myPreviousX[last];
+            myPreviousY[index] = myPreviousY[last];
+            myVelocityX[index] = myVelocityX[last];
+            myVelocityY[index] = myVelocityY[last];
+            myForceX[index] = myForceX[last];
+            myForceY[index] = myForceY[last];
+            myMass[index] = myMass[last];
+            myInverseMass[index] = myInverseMass[last];
+            myFlags[index] = myFlags[last];
+            myHandles[index] = myHandles[last];
+            myHandles[index].bind(this, index);
+        }
+        myHandles[last] = null;
+    }
+}
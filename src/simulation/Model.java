@@ -3,21 +3,37 @@ package simulation;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import util.Force;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.swing.SwingUtilities;
+import util.TripleBuffer;
 import view.Canvas;
 
 
 /**
- * Creates Springies universe
+ * Creates Springies universe and connects it to the canvas: reads the
+ * user's input and hands the physics to a SimulationEngine.
+ * 
+ * The model is updated on a simulation thread of its own, not the Swing
+ * event thread. Input reaches it as commands put on a lock-free queue by
+ * the event thread, which it runs at the start of each update; anything
+ * it needs done to the display (choosing files, resizing) goes back to
+ * the event thread with invokeLater. Whenever a frame is to be drawn it
+ * publishes a snapshot of the assemblies, and painting draws the latest
+ * one, so neither thread waits for the other. The snapshot shows the
+ * masses part of the way through the last step, as far as real time has
+ * got into the next one, so they move smoothly whatever the step rate.
  * 
  * @author Jerry Li & Bill Muensterman
  */
 public class Model {
-    private static final double GRAVITY_SPEED = 7;
-    private static final double VISCOSITY = .9;
-    private static final double WALL_REPULSION = -.01;
+    private static final double GRAVITY_SPEED = SimulationEngine.DEFAULT_GRAVITY;
+    private static final double VISCOSITY = SimulationEngine.DEFAULT_VISCOSITY;
+    private static final double WALL_REPULSION = SimulationEngine.DEFAULT_WALL_REPULSION;
     private static final int LOAD_NEW = KeyEvent.VK_N;
     private static final int GRAVITY_TOGGLE = KeyEvent.VK_G;
     private static final int VISCOSITY_TOGGLE = KeyEvent.VK_V;
@@ -27,6 +43,8 @@ public class Model {
     private static final int RIGHT_WALL = KeyEvent.VK_3;
     private static final int LEFT_WALL = KeyEvent.VK_4;
     private static final int CLEAR = KeyEvent.VK_C;
+    private static final int REPLAY = KeyEvent.VK_P;
+    private static final int ADAPTIVE_TOGGLE = KeyEvent.VK_A;
     private static final int INCREASE_SIZE = KeyEvent.VK_UP;
     private static final int DECREASE_SIZE = KeyEvent.VK_DOWN;
     private static final int RESIZE_FACTOR = 10;
@@ -38,12 +56,23 @@ public class Model {
     private Canvas myView;
     // simulation state
     private List<Mass> myMasses;
-    private List<Assembly> myAssemblies;
-    private List<Force> myForces;
+    private SimulationEngine myEngine;
 
     private Gravity myGravity;
     private Viscosity myViscosity;
     private WallRepulsion myWallRepulsion;
+    private TrajectoryRecorder myRecorder;
+    // input from the event thread, run on the simulation thread
+    private Queue<Runnable> myCommands;
+    private int myWidth;
+    private int myHeight;
+    private double myMouseX;
+    private double myMouseY;
+    private boolean myMousePressed;
+    private boolean myMouseKnown;
+    // what painting draws, handed over from the simulation thread
+    private TripleBuffer<Snapshot> mySnapshots;
+    private AssemblyRenderer myRenderer;
 
     /**
      * Create a game of the given size with the given display for its shapes.
@@ -54,10 +83,10 @@ public class Model {
     public Model (Canvas canvas) {
         myView = canvas;
         initialize();
-        myForces.add(myGravity);
-        myForces.add(myViscosity);
-        myForces.add(myWallRepulsion);
-        myAssemblies.add(myView.getAssembly());
+        myEngine.add(myGravity);
+        myEngine.add(myViscosity);
+        myEngine.add(myWallRepulsion);
+        myEngine.add(myView.getAssembly());
 
     }
     
@@ -66,8 +95,12 @@ public class Model {
      */
     public void initialize() {
         myMasses = new ArrayList<>();
-        myAssemblies = new ArrayList<>();
-        myForces = new ArrayList<>();
+        myCommands = new ConcurrentLinkedQueue<Runnable>();
+        myWidth = myView.getWidth();
+        myHeight = myView.getHeight();
+        mySnapshots = new TripleBuffer<Snapshot>(new Snapshot(), new Snapshot(), new Snapshot());
+        myRenderer = new AssemblyRenderer();
+        myEngine = new SimulationEngine(myView.getSize());
         myGravity = new Gravity(myGravitySpeed);
         myViscosity = new Viscosity(myViscosityValue);
         myWallRepulsion = new WallRepulsion(myWallRepulsionFactor);
@@ -83,65 +116,192 @@ public class Model {
     }
 
     /**
-     * Draw all elements of the simulation.
+     * Return the engine that runs the physics
+     * 
+     * @return
+     */
+    public SimulationEngine getEngine () {
+        return myEngine;
+    }
+
+    /**
+     * Start recording where every mass is, after the steps taken in each
+     * update, into the given trajectory file. Stops any recording already
+     * going on.
+     * 
+     * @param file      the file to write
+     * @param interval  steps between frames
+     * @throws IOException if the file cannot be created
+     */
+    public void startRecording (File file, long interval) throws IOException {
+        stopRecording();
+        myRecorder = new TrajectoryRecorder(file, interval);
+        myEngine.addObserver(myRecorder);
+    }
+
+    /**
+     * Stop recording, once the frames already taken are written.
+     * 
+     * @throws IOException if any frame could not be written
+     */
+    public void stopRecording () throws IOException {
+        if (myRecorder != null) {
+            myEngine.removeObserver(myRecorder);
+            TrajectoryRecorder recorder = myRecorder;
+            myRecorder = null;
+            recorder.close();
+        }
+    }
+
+    /**
+     * Draw the latest snapshot of the simulation. Can be called on any
+     * one thread while the simulation runs on another.
      * 
      * @param pen Graphics2D pen
      */
     public void paint (Graphics2D pen) {
-        for (Assembly a : myAssemblies) {
-            a.paint(pen);
+        Snapshot snapshot = mySnapshots.getReadBuffer();
+        for (int i = 0; i < snapshot.getAssemblyCount(); i++) {
+            myRenderer.paint(pen, snapshot.getAssembly(i));
         }
     }
 
+    /**
+     * Run the given command on the simulation thread at the start of the
+     * next update. Can be called from any thread.
+     * 
+     * @param command   the command
+     */
+    public void post (Runnable command) {
+        myCommands.add(command);
+    }
+
+    /**
+     * Tell the model a key was pressed. Can be called from any thread.
+     * 
+     * @param key       code of the key
+     */
+    public void keyPressed (final int key) {
+        post(new Runnable() {
+            @Override
+            public void run () {
+                checkInput(key);
+            }
+        });
+    }
+
+    /**
+     * Tell the model where the mouse is and whether it is pressed. Can be
+     * called from any thread.
+     * 
+     * @param x         mouse x coordinate
+     * @param y         mouse y coordinate
+     * @param pressed   true while the mouse is held down
+     */
+    public void mouseChanged (final double x, final double y, final boolean pressed) {
+        post(new Runnable() {
+            @Override
+            public void run () {
+                myMouseX = x;
+                myMouseY = y;
+                myMousePressed = pressed;
+                myMouseKnown = true;
+            }
+        });
+    }
+
+    /**
+     * Tell the model the canvas changed size. Can be called from any thread.
+     * 
+     * @param width     new width
+     * @param height    new height
+     */
+    public void resized (final int width, final int height) {
+        post(new Runnable() {
+            @Override
+            public void run () {
+                myWidth = width;
+                myHeight = height;
+            }
+        });
+    }
+
     /**
      * changeCanvasSize
      * 
      * @param key the user input
      */
     public void changeCanvasSize (int key) {
-        Dimension bounds = myView.getSize();
-        if (key == INCREASE_SIZE) {
-            if (myView.getKeysPressed().contains(key)) {
-                myView.clearKeys();
-                bounds.setSize(bounds.width + RESIZE_FACTOR, bounds.height + RESIZE_FACTOR);
-                myView.setSize(bounds);
-            }
+        if (key != INCREASE_SIZE && key != DECREASE_SIZE) {
+            return;
         }
-        if (key == DECREASE_SIZE) {
-            if (myView.getKeysPressed().contains(key)) {
-                myView.clearKeys();
-                bounds.setSize(bounds.width - RESIZE_FACTOR, bounds.height - RESIZE_FACTOR);
+        final int change = (key == INCREASE_SIZE) ? RESIZE_FACTOR : -RESIZE_FACTOR;
+        // the canvas belongs to the event thread; it reports its new size back
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run () {
+                Dimension bounds = myView.getSize();
+                bounds.setSize(bounds.width + change, bounds.height + change);
                 myView.setSize(bounds);
             }
-        }
+        });
     }
 
     /**
      * Update simulation for this moment, given the time since the last moment.
-     * Checks input. Iterates through each assembly. For each assembly, iterates
-     * through each mass
+     * Runs the input that came in since the last update, passes the canvas
+     * size and mouse to the engine, and lets it catch up in fixed steps.
      * 
-     * @param elapsedTime framerate
+     * @param elapsedTime seconds since the last update
+     * @return number of steps taken
      */
-    public void update (double elapsedTime) {
-        checkInput();
-        Dimension bounds = myView.getSize();
-        for (Assembly assem : myAssemblies) {
-            assem.update(elapsedTime);
-            for (Mass m : assem.getMasses()) {
-                for (Force f : myForces) {
-                    f.update(bounds, m);
-                }
-            }
+    public int update (double elapsedTime) {
+        runCommands();
+        myEngine.setBounds(myWidth, myHeight);
+        checkMouse();
+        return myEngine.advance(elapsedTime);
+    }
+
+    /**
+     * Copy the assemblies for painting, as far into the next step as real
+     * time has got, and make that the latest copy.
+     */
+    public void publish () {
+        mySnapshots.getWriteBuffer().capture(myEngine, myEngine.getInterpolation());
+        mySnapshots.publish();
+    }
+
+    /**
+     * Runs the commands posted since the last update
+     */
+    public void runCommands () {
+        Runnable command = myCommands.poll();
+        while (command != null) {
+            command.run();
+            command = myCommands.poll();
+        }
+    }
+
+    /**
+     * Passes the mouse state to every assembly
+     */
+    public void checkMouse () {
+        if (!myMouseKnown) {
+            return;
+        }
+        List<Assembly> assemblies = myEngine.getAssemblies();
+        for (int i = 0; i < assemblies.size(); i++) {
+            assemblies.get(i).setMouse(myMouseX, myMouseY, myMousePressed);
         }
     }
     
     
     /**
-     * Checks input from user
+     * Acts on a key pressed by the user
+     * 
+     * @param key code of the key
      */
-    public void checkInput () {
-        int key = myView.getLastKeyPressed();
+    public void checkInput (int key) {
         changeCanvasSize(key);
         loadFile(key);
         toggleGravity(key);
@@ -152,6 +312,8 @@ public class Model {
         toggleRightWallRepulsion(key);
         toggleBottomWallRepulsion(key);
         clear(key);
+        replay(key);
+        toggleAdaptiveTimestep(key);
     }
 
     /**
@@ -161,7 +323,6 @@ public class Model {
      */
     public void toggleTopWallRepulsion (int key) {
         if (key == TOP_WALL) {
-            myView.setLastKeyPressed();
             myWallRepulsion.toggleTopRepulsion();
         }
     }
@@ -173,7 +334,6 @@ public class Model {
      */
     public void toggleBottomWallRepulsion (int key) {
         if (key == BOTTOM_WALL) {
-            myView.setLastKeyPressed();
             myWallRepulsion.toggleBottomRepulsion();
         }
     }
@@ -185,7 +345,6 @@ public class Model {
      */
     public void toggleRightWallRepulsion (int key) {
         if (key == RIGHT_WALL) {
-            myView.setLastKeyPressed();
             myWallRepulsion.toggleRightRepulsion();
         }
     }
@@ -197,7 +356,6 @@ public class Model {
      */
     public void toggleLeftWallRepulsion (int key) {
         if (key == LEFT_WALL) {
-            myView.setLastKeyPressed();
             myWallRepulsion.toggleLeftRepulsion();
         }
     }
@@ -209,8 +367,7 @@ public class Model {
      */
     public void toggleCenterOfMass (int key) {
         if (key == CENTER_OF_MASS_TOGGLE) {
-            myView.setLastKeyPressed();
-            for (Assembly a : myAssemblies) {
+            for (Assembly a : myEngine.getAssemblies()) {
                 a.getCenterOfMass().toggleCenterOfMass();
             }
         }
@@ -223,7 +380,6 @@ public class Model {
      */
     public void toggleViscosity (int key) {
         if (key == VISCOSITY_TOGGLE) {
-            myView.setLastKeyPressed();
             myViscosity.toggleViscosity();
         }
     }
@@ -235,11 +391,26 @@ public class Model {
      */
     public void toggleGravity (int key) {
         if (key == GRAVITY_TOGGLE) {
-            myView.setLastKeyPressed();
             myGravity.toggleGravity();
         }
     }
 
+    /**
+     * toggles splitting steps into as many shorter ones as the springs need
+     * 
+     * @param key input from user
+     */
+    public void toggleAdaptiveTimestep (int key) {
+        if (key == ADAPTIVE_TOGGLE) {
+            if (myEngine.getAdaptiveTimestep() == null) {
+                myEngine.setAdaptiveTimestep(new AdaptiveTimestep());
+            }
+            else {
+                myEngine.setAdaptiveTimestep(null);
+            }
+        }
+    }
+
     /**
      * loads another assembly
      * 
@@ -247,10 +418,37 @@ public class Model {
      */
     public void loadFile (int key) {
         if (key == LOAD_NEW) {
-            myView.setLastKeyPressed();
-            Assembly assem = new Assembly(myView);
-            myAssemblies.add(assem);
-            myView.loadModel(assem);
+            // files are chosen on the event thread, into an assembly the
+            // simulation does not have yet, which is handed over once loaded
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run () {
+                    final Assembly assem = new Assembly();
+                    myView.loadModel(assem);
+                    post(new Runnable() {
+                        @Override
+                        public void run () {
+                            myEngine.add(assem);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * plays back a recorded trajectory in place of the simulation
+     * 
+     * @param key input from user
+     */
+    public void replay (int key) {
+        if (key == REPLAY) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run () {
+                    myView.startReplay();
+                }
+            });
         }
     }
 
@@ -261,8 +459,7 @@ public class Model {
      */
     public void clear (int key) {
         if (key == CLEAR) {
-            myView.setLastKeyPressed();
-            for (Assembly a : myAssemblies) {
+            for (Assembly a : myEngine.getAssemblies()) {
                 a.clear();
             }
         }
@@ -0,0 +1,33 @@
+package simulation;
+
+
+/**
+ * Receives the commands of a model file as they are read, with masses
+ * named by their ids. Factory builds an assembly from them straight
+ * away; ChunkedLoader just writes them down to resolve later.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+interface ModelBuilder {
+
+    /**
+     * A mass (flags 0) or fixed mass (MassStore.FIXED)
+     */
+    void mass (int id, double x, double y, double mass, int flags);
+
+    /**
+     * A spring between the masses with the given ids
+     */
+    void spring (int start, int end, double length, double k);
+
+    /**
+     * A muscle between the masses with the given ids
+     */
+    void muscle (int start, int end, double length, double k,
+                 double amplitude, double delay, double frequency);
+
+    /**
+     * A rod between the masses with the given ids
+     */
+    void rod (int start, int end, double length);
+}
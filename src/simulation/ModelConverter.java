@@ -0,0 +1,54 @@
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * Converts .xsp model files to binary model files, which load much faster.
+ * 
+ * Usage: java simulation.ModelConverter model.xsp [model.spb]
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class ModelConverter {
+    private ModelConverter () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * main --- where the conversion starts
+     * @param args      the .xsp file, then optionally the file to write
+     */
+    public static void main (String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: ModelConverter model.xsp [model" +
+                               BinaryModelFormat.EXTENSION + "]");
+            System.exit(1);
+        }
+        File input = new File(args[0]);
+        File output = (args.length > 1) ? new File(args[1]) : binaryName(input);
+        Assembly assembly = new Assembly();
+        Factory factory = new Factory();
+        try {
+            factory.loadModel(assembly, input);
+        }
+        catch (ModelFormatException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        new ModelWriter().write(assembly, output, factory.getIds());
+        System.out.printf("%s: %d masses, %d springs%n", output, assembly.getMasses().size(),
+                          assembly.getSprings().size());
+    }
+
+    /**
+     * Returns the given file with the binary extension in place of its own.
+     */
+    private static File binaryName (File input) {
+        String name = input.getName();
+        int dot = name.lastIndexOf('.');
+        String base = (dot > 0) ? name.substring(0, dot) : name;
+        return new File(input.getParentFile(), base + BinaryModelFormat.EXTENSION);
+    }
+}
@@ -0,0 +1,71 @@
+package simulation;
+
+
+/**
+ * Reports a mistake in a model data file, with the line it is on.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class ModelFormatException extends RuntimeException {
+    // default serialization ID
+    private static final long serialVersionUID = 1L;
+
+    private final String mySource;
+    private final int myLineNumber;
+    private final String myReason;
+
+    /**
+     * Create an exception for the given line of the given file.
+     * 
+     * @param source        name of the file
+     * @param lineNumber    line the mistake is on, counting from 1
+     * @param message       what is wrong
+     */
+    public ModelFormatException (String source, int lineNumber, String message) {
+        super(String.format("%s:%d: %s", source, lineNumber, message));
+        mySource = source;
+        myLineNumber = lineNumber;
+        myReason = message;
+    }
+
+    /**
+     * Create an exception for a file that has no lines, such as a binary one.
+     * 
+     * @param source        name of the file
+     * @param message       what is wrong
+     */
+    public ModelFormatException (String source, String message) {
+        super(String.format("%s: %s", source, message));
+        mySource = source;
+        myLineNumber = 0;
+        myReason = message;
+    }
+
+    /**
+     * Returns the name of the file with the mistake
+     * 
+     * @return
+     */
+    public String getSource () {
+        return mySource;
+    }
+
+    /**
+     * Returns what is wrong, without the file and line
+     * 
+     * @return
+     */
+    public String getReason () {
+        return myReason;
+    }
+
+    /**
+     * Returns the line the mistake is on, counting from 1, or 0 if the
+     * file has no lines
+     * 
+     * @return
+     */
+    public int getLineNumber () {
+        return myLineNumber;
+    }
+}
@@ -0,0 +1,160 @@
+package simulation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Loads a binary model file (see BinaryModelFormat) into an assembly.
+ * Masses are created straight in the assembly's store, which is grown
+ * once for all of them, so loading costs little more than reading.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class ModelReader {
+    /**
+     * Bytes read from the file at a time
+     */
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    private FileChannel myChannel;
+    private ByteBuffer myBuffer;
+    private String mySource;
+
+    /**
+     * Returns true if the given file starts like a binary model file.
+     * 
+     * @param file      the file to check
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBinary (File file) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(BinaryModelFormat.ORDER);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // keep reading until the magic number is in
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == BinaryModelFormat.MAGIC;
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Add the model in the given file to the given assembly.
+     * 
+     * @param assembly      the assembly
+     * @param file          the file to read
+     * @throws IOException if the file cannot be read
+     * @throws ModelFormatException if the file is not a valid model
+     */
+    public void loadModel (Assembly assembly, File file) throws IOException {
+        mySource = file.getName();
+        myChannel = new FileInputStream(file).getChannel();
+        myBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(BinaryModelFormat.ORDER);
+        myBuffer.flip();
+        try {
+            require(BinaryModelFormat.headerSize(1));
+            if (myBuffer.getInt() != BinaryModelFormat.MAGIC) {
+                throw error("not a binary model file");
+            }
+            int version = myBuffer.getInt();
+            if (version < 1 || version > BinaryModelFormat.VERSION) {
+                throw error("unsupported version " + version);
+            }
+            int massCount = myBuffer.getInt();
+            int springCount = myBuffer.getInt();
+            int muscleCount = myBuffer.getInt();
+            int rodCount = 0;
+            if (version > 1) {
+                require(Integer.BYTES);
+                rodCount = myBuffer.getInt();
+            }
+            if (massCount < 0 || springCount < 0 || muscleCount < 0 || rodCount < 0 ||
+                myChannel.size() != BinaryModelFormat.fileSize(version, massCount, springCount,
+                                                               muscleCount, rodCount)) {
+                throw error("file size does not match its header");
+            }
+
+            MassStore store = assembly.getMasses();
+            store.ensureCapacity(store.size() + massCount);
+            Mass[] masses = new Mass[massCount];
+            for (int i = 0; i < massCount; i++) {
+                require(BinaryModelFormat.MASS_SIZE);
+                myBuffer.getInt();
+                double x = myBuffer.getDouble();
+                double y = myBuffer.getDouble();
+                double mass = myBuffer.getDouble();
+                int flags = myBuffer.get() & 0xFF;
+                masses[i] = store.create(x, y, mass, flags);
+            }
+            for (int i = 0; i < springCount; i++) {
+                require(BinaryModelFormat.SPRING_SIZE);
+                Mass start = mass(masses, "spring", i);
+                Mass end = mass(masses, "spring", i);
+                double length = myBuffer.getDouble();
+                double k = myBuffer.getDouble();
+                assembly.add(new Spring(start, end, length, k));
+            }
+            for (int i = 0; i < muscleCount; i++) {
+                require(BinaryModelFormat.MUSCLE_SIZE);
+                Mass start = mass(masses, "muscle", i);
+                Mass end = mass(masses, "muscle", i);
+                double length = myBuffer.getDouble();
+                double k = myBuffer.getDouble();
+                double amplitude = myBuffer.getDouble();
+                double delay = myBuffer.getDouble();
+                double frequency = myBuffer.getDouble();
+                assembly.add(new Muscle(start, end, length, k, amplitude, delay, frequency));
+            }
+            for (int i = 0; i < rodCount; i++) {
+                require(BinaryModelFormat.ROD_SIZE);
+                Mass start = mass(masses, "rod", i);
+                Mass end = mass(masses, "rod", i);
+                assembly.add(new Rod(start, end, myBuffer.getDouble()));
+            }
+        }
+        finally {
+            myChannel.close();
+            myChannel = null;
+            myBuffer = null;
+        }
+    }
+
+    /**
+     * Read a mass position and return the mass made for it.
+     */
+    private Mass mass (Mass[] masses, String kind, int record) {
+        int position = myBuffer.getInt();
+        if (position < 0 || position >= masses.length) {
+            throw error(String.format("%s %d names mass %d, but there are %d", kind, record,
+                                      position, masses.length));
+        }
+        return masses[position];
+    }
+
+    /**
+     * Make sure the given number of bytes is in the buffer.
+     */
+    private void require (int bytes) throws IOException {
+        if (myBuffer.remaining() >= bytes) {
+            return;
+        }
+        myBuffer.compact();
+        while (myBuffer.position() < bytes) {
+            if (myChannel.read(myBuffer) < 0) {
+                myBuffer.flip();
+                throw error("file ends early");
+            }
+        }
+        myBuffer.flip();
+    }
+
+    private ModelFormatException error (String message) {
+        return new ModelFormatException(mySource, message);
+    }
+}
@@ -0,0 +1,344 @@
+package simulation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Splits a model data file into words and numbers, reading it through a
+ * large buffer straight from its channel. Words are compared and numbers
+ * parsed in place, byte by byte, so reading a file makes no garbage per
+ * line (unlike Scanner, which runs regular expressions over Strings).
+ * 
+ * Tokens are separated by white space. A command starts with nextToken,
+ * which may move on to later lines; the values that follow must be on the
+ * same line and are read with nextInt and nextDouble.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class ModelTokenizer implements Closeable {
+    /**
+     * Bytes read from the channel at a time
+     */
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    // largest integer a double holds exactly, and exact powers of ten
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private ReadableByteChannel myChannel;
+    private String mySource;
+    private byte[] myBuffer;
+    private ByteBuffer myWrapper;
+    private int myPosition;
+    private int myLimit;
+    private boolean myEndOfInput;
+    private int myLineNumber = 1;
+    // current token
+    private int myTokenStart;
+    private int myTokenEnd;
+
+    /**
+     * Create a tokenizer over the given file.
+     * 
+     * @param file      the file to read
+     * @throws IOException if the file cannot be opened
+     */
+    public ModelTokenizer (File file) throws IOException {
+        this(new FileInputStream(file).getChannel(), file.getName());
+    }
+
+    /**
+     * Create a tokenizer over the given channel, which it closes when done.
+     * 
+     * @param channel   the bytes to read
+     * @param source    name used in error messages
+     */
+    public ModelTokenizer (ReadableByteChannel channel, String source) {
+        myChannel = channel;
+        mySource = source;
+        myBuffer = new byte[BUFFER_SIZE];
+        myWrapper = ByteBuffer.wrap(myBuffer);
+    }
+
+    /**
+     * Returns the name used in error messages
+     * 
+     * @return
+     */
+    public String getSource () {
+        return mySource;
+    }
+
+    /**
+     * Returns the line the current token is on, counting from 1
+     * 
+     * @return
+     */
+    public int getLineNumber () {
+        return myLineNumber;
+    }
+
+    /**
+     * Move to the next token, on this line or a later one.
+     * 
+     * @return false if there are no more tokens
+     * @throws IOException if the channel cannot be read
+     */
+    public boolean nextToken () throws IOException {
+        while (true) {
+            if (myPosition == myLimit && !fill(myLimit)) {
+                return false;
+            }
+            byte b = myBuffer[myPosition];
+            if (b == '\n') {
+                myLineNumber++;
+            }
+            else if (!isSpace(b)) {
+                break;
+            }
+            myPosition++;
+        }
+        scanToken();
+        return true;
+    }
+
+    /**
+     * Returns true if the current token is the given word.
+     * 
+     * @param word      the word, in ASCII
+     */
+    public boolean isWord (byte[] word) {
+        if (myTokenEnd - myTokenStart != word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (myBuffer[myTokenStart + i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the current token as a String, for error messages.
+     */
+    public String getToken () {
+        return new String(myBuffer, myTokenStart, myTokenEnd - myTokenStart,
+                          StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Read the next value on this line as an integer.
+     * 
+     * @param what      name of the value, for the error message
+     * @throws IOException if the channel cannot be read
+     */
+    public int nextInt (String what) throws IOException {
+        nextOnLine(what);
+        int i = myTokenStart;
+        boolean negative = false;
+        if (myBuffer[i] == '-' || myBuffer[i] == '+') {
+            negative = myBuffer[i] == '-';
+            i++;
+        }
+        if (i == myTokenEnd) {
+            throw notNumber(what);
+        }
+        long value = 0;
+        for (; i < myTokenEnd; i++) {
+            int digit = myBuffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw notNumber(what);
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw error(what + " is too large: " + getToken());
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw error(what + " is too large: " + getToken());
+        }
+        return (int) value;
+    }
+
+    /**
+     * Read the next value on this line as a number.
+     * 
+     * @param what      name of the value, for the error message
+     * @throws IOException if the channel cannot be read
+     */
+    public double nextDouble (String what) throws IOException {
+        nextOnLine(what);
+        int i = myTokenStart;
+        boolean negative = false;
+        if (myBuffer[i] == '-' || myBuffer[i] == '+') {
+            negative = myBuffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean exact = true;
+        boolean point = false;
+        for (; i < myTokenEnd; i++) {
+            byte b = myBuffer[i];
+            if (b >= '0' && b <= '9') {
+                digits++;
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (point) {
+                        scale--;
+                    }
+                }
+                else {
+                    exact = false;
+                }
+            }
+            else if (b == '.' && !point) {
+                point = true;
+            }
+            else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            throw notNumber(what);
+        }
+        if (i < myTokenEnd) {
+            // exponent, or rubbish
+            byte b = myBuffer[i];
+            if (b != 'e' && b != 'E') {
+                throw notNumber(what);
+            }
+            exact = false;
+        }
+        if (exact && scale >= -POWERS_OF_TEN.length + 1) {
+            // both parts are exact doubles, so one division rounds correctly
+            double value = mantissa / POWERS_OF_TEN[-scale];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(getToken());
+        }
+        catch (NumberFormatException e) {
+            throw notNumber(what);
+        }
+    }
+
+    /**
+     * Returns an exception for the given problem on the current line.
+     */
+    public ModelFormatException error (String message) {
+        return new ModelFormatException(mySource, myLineNumber, message);
+    }
+
+    @Override
+    public void close () throws IOException {
+        myChannel.close();
+    }
+
+    /**
+     * Move to the next token, which must be on this line.
+     */
+    private void nextOnLine (String what) throws IOException {
+        myPosition = myTokenEnd;
+        while (true) {
+            if (myPosition == myLimit && !fill(myLimit)) {
+                throw error("missing " + what);
+            }
+            byte b = myBuffer[myPosition];
+            if (b == '\n') {
+                throw error("missing " + what);
+            }
+            if (!isSpace(b)) {
+                break;
+            }
+            myPosition++;
+        }
+        scanToken();
+    }
+
+    /**
+     * Find the end of the token that starts at the current position.
+     */
+    private void scanToken () throws IOException {
+        myTokenStart = myPosition;
+        int end = myPosition;
+        while (true) {
+            if (end == myLimit) {
+                // filling moves the token to the front of the buffer
+                int offset = end - myTokenStart;
+                boolean more = fill(myTokenStart);
+                end = myTokenStart + offset;
+                if (!more) {
+                    break;
+                }
+                continue;
+            }
+            byte b = myBuffer[end];
+            if (b == '\n' || isSpace(b)) {
+                break;
+            }
+            end++;
+        }
+        myTokenEnd = end;
+        myPosition = end;
+    }
+
+    /**
+     * Read more bytes, keeping those from the given index on, which move
+     * to the front of the buffer.
+     * 
+     * @return false if there is nothing more to read
+     */
+    private boolean fill (int from) throws IOException {
+        if (myEndOfInput) {
+            return false;
+        }
+        int keep = myLimit - from;
+        if (keep == myBuffer.length) {
+            // a token longer than the buffer
+            byte[] bigger = new byte[myBuffer.length * 2];
+            System.arraycopy(myBuffer, 0, bigger, 0, keep);
+            myBuffer = bigger;
+            myWrapper = ByteBuffer.wrap(myBuffer);
+        }
+        else {
+            System.arraycopy(myBuffer, from, myBuffer, 0, keep);
+        }
+        myTokenStart -= from;
+        myPosition -= from;
+        myLimit = keep;
+        myWrapper.clear();
+        myWrapper.position(myLimit);
+        int read;
+        do {
+            read = myChannel.read(myWrapper);
+        }
+        while (read == 0);
+        if (read < 0) {
+            myEndOfInput = true;
+            return false;
+        }
+        myLimit += read;
+        return true;
+    }
+
+    private ModelFormatException notNumber (String what) {
+        return error(what + " is not a number: " + getToken());
+    }
+
+    private static boolean isSpace (byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+    }
+}
@@ -0,0 +1,151 @@
+package simulation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+
+/**
+ * Saves an assembly as a binary model file (see BinaryModelFormat). The
+ * mouse's mass and spring are not part of the model and are left out.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class ModelWriter {
+    /**
+     * Bytes collected before each write to the file
+     */
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    private FileChannel myChannel;
+    private ByteBuffer myBuffer;
+
+    /**
+     * Save the given assembly, numbering the masses from 0.
+     * 
+     * @param assembly  the assembly
+     * @param file      the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write (Assembly assembly, File file) throws IOException {
+        write(assembly, file, null);
+    }
+
+    /**
+     * Save the given assembly with the given mass ids.
+     * 
+     * @param assembly  the assembly
+     * @param file      the file to write
+     * @param ids       id of the mass at each index of the assembly's store,
+     *                  or null to number them from 0
+     * @throws IOException if the file cannot be written
+     */
+    public void write (Assembly assembly, File file, int[] ids) throws IOException {
+        MassStore masses = assembly.getMasses();
+        List<Spring> springs = assembly.getSprings();
+        // position of each stored mass among the records, or -1 if left out
+        int[] position = new int[masses.size()];
+        int massCount = 0;
+        for (int i = 0; i < masses.size(); i++) {
+            position[i] = assembly.isTransient(masses.getMass(i)) ? -1 : massCount++;
+        }
+        int springCount = 0;
+        int muscleCount = 0;
+        int rodCount = 0;
+        for (int i = 0; i < springs.size(); i++) {
+            Spring s = springs.get(i);
+            if (!assembly.isTransient(s)) {
+                if (s instanceof Muscle) {
+                    muscleCount++;
+                }
+                else if (s instanceof Rod) {
+                    rodCount++;
+                }
+                else {
+                    springCount++;
+                }
+            }
+        }
+
+        myChannel = new FileOutputStream(file).getChannel();
+        myBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(BinaryModelFormat.ORDER);
+        try {
+            myBuffer.putInt(BinaryModelFormat.MAGIC);
+            myBuffer.putInt(BinaryModelFormat.VERSION);
+            myBuffer.putInt(massCount);
+            myBuffer.putInt(springCount);
+            myBuffer.putInt(muscleCount);
+            myBuffer.putInt(rodCount);
+            for (int i = 0; i < masses.size(); i++) {
+                if (position[i] < 0) {
+                    continue;
+                }
+                room(BinaryModelFormat.MASS_SIZE);
+                myBuffer.putInt((ids == null) ? position[i] : ids[i]);
+                myBuffer.putDouble(masses.getX(i));
+                myBuffer.putDouble(masses.getY(i));
+                myBuffer.putDouble(masses.getMassValue(i));
+                myBuffer.put((byte) masses.getFlags()[i]);
+            }
+            for (int pass = 0; pass < 3; pass++) {
+                // plain springs first, then muscles, then rods
+                boolean muscles = pass == 1;
+                boolean rods = pass == 2;
+                for (int i = 0; i < springs.size(); i++) {
+                    Spring s = springs.get(i);
+                    if (assembly.isTransient(s) || (s instanceof Muscle) != muscles ||
+                        (s instanceof Rod) != rods) {
+                        continue;
+                    }
+                    if (s.getStart().getStore() != masses || s.getEnd().getStore() != masses) {
+                        throw new IllegalArgumentException("spring " + i +
+                                                           " joins a mass from elsewhere");
+                    }
+                    room(BinaryModelFormat.MUSCLE_SIZE);
+                    myBuffer.putInt(position[s.getStart().getIndex()]);
+                    myBuffer.putInt(position[s.getEnd().getIndex()]);
+                    myBuffer.putDouble(s.getLength());
+                    if (rods) {
+                        continue;
+                    }
+                    myBuffer.putDouble(s.getK());
+                    if (muscles) {
+                        Muscle m = (Muscle) s;
+                        myBuffer.putDouble(m.getAmplitude());
+                        myBuffer.putDouble(m.getDelay());
+                        myBuffer.putDouble(m.getFrequency());
+                    }
+                }
+            }
+            flush();
+        }
+        finally {
+            myChannel.close();
+            myChannel = null;
+            myBuffer = null;
+        }
+    }
+
+    /**
+     * Make room in the buffer for the given number of bytes.
+     */
+    private void room (int bytes) throws IOException {
+        if (myBuffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Write out everything in the buffer.
+     */
+    private void flush () throws IOException {
+        myBuffer.flip();
+        while (myBuffer.hasRemaining()) {
+            myChannel.write(myBuffer);
+        }
+        myBuffer.clear();
+    }
+}
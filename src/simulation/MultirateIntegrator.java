@@ -0,0 +1,223 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Semi-implicit Euler that takes short steps only where the springs need
+ * them. Each spring gets a level from how fast it swings its masses (see
+ * AdaptiveTimestep.frequency): level 0 springs are fine with the whole
+ * step, and a level l spring needs 2^l steps in its place.
+ *
+ * The global forces, the pull to the center of mass and the level 0
+ * springs are worked out once per step, as usual, and give every mass
+ * their push for the whole step. The springs of each higher level then
+ * push only their own masses, 2^l times, each for 1 / 2^l of the step.
+ * Between pushes a mass just coasts, so a mass is moved along only when
+ * a spring is about to measure it, and the rest of the world is left
+ * alone. The work per step is then one pass over everything plus, for
+ * each level, 2^l passes over the few springs and masses on it, rather
+ * than the stiffest spring's number of passes over everything.
+ *
+ * With no springs above level 0 this takes exactly the same steps as
+ * SemiImplicitEuler.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class MultirateIntegrator implements SpringIntegrator {
+    /**
+     * Highest level, at which a step is split into 2^MAX_LEVEL; stiffer
+     * springs are stepped there too
+     */
+    public static final int MAX_LEVEL = 10;
+
+    // what the split below was worked out for
+    private Assembly myAssembly;
+    private double myTimestep = Double.NaN;
+    private int myStructureCount = -1;
+    // springs left to the force evaluator
+    private List<Spring> mySlowSprings;
+    // springs and the indices of their masses, by level from 1 up
+    private List<List<Spring>> myLevelSprings = new ArrayList<List<Spring>>();
+    private int[][] myLevelMasses = new int[0][];
+    private int myTopLevel;
+    // time within the step that each mass has been moved along to
+    private double[] myMoveTime = new double[0];
+
+    @Override
+    public List<Spring> prepare (Assembly assembly, boolean changed, double elapsedTime) {
+        MassStore masses = assembly.getMasses();
+        if (changed || assembly != myAssembly || elapsedTime != myTimestep ||
+            masses.getStructureCount() != myStructureCount) {
+            split(assembly, elapsedTime);
+        }
+        return mySlowSprings;
+    }
+
+    /**
+     * Returns the highest level any spring is on
+     *
+     * @return
+     */
+    public int getTopLevel () {
+        return myTopLevel;
+    }
+
+    /**
+     * Returns the number of springs on the given level
+     *
+     * @param level     the level
+     * @return
+     */
+    public int getSpringCount (int level) {
+        if (level == 0) {
+            return mySlowSprings.size();
+        }
+        return (level <= myTopLevel) ? myLevelSprings.get(level - 1).size() : 0;
+    }
+
+    @Override
+    public void step (MassStore masses, ForceEvaluator forces, double elapsedTime) {
+        if (masses.size() > myMoveTime.length) {
+            myMoveTime = new double[masses.size()];
+        }
+        forces.evaluate(masses);
+        double[] x = masses.getPositionX();
+        double[] y = masses.getPositionY();
+        double[] vx = masses.getVelocityX();
+        double[] vy = masses.getVelocityY();
+        double[] fx = masses.getForceX();
+        double[] fy = masses.getForceY();
+        double[] inverseMass = masses.getInverseMass();
+        int[] flags = masses.getFlags();
+        for (int i = 0; i < masses.size(); i++) {
+            if ((flags[i] & MassStore.FIXED) == 0) {
+                vx[i] += fx[i] * inverseMass[i] * elapsedTime;
+                vy[i] += fy[i] * inverseMass[i] * elapsedTime;
+            }
+            myMoveTime[i] = 0;
+        }
+
+        int parts = 1 << myTopLevel;
+        for (int j = 0; j < parts; j++) {
+            double time = elapsedTime * j / parts;
+            for (int level = 1; level <= myTopLevel; level++) {
+                // a level l spring pushes every 2^(top - l) parts
+                if (j % (parts >> level) == 0) {
+                    push(masses, level, time, elapsedTime / (1 << level));
+                }
+            }
+        }
+
+        masses.beginMoments();
+        for (int i = 0; i < masses.size(); i++) {
+            if ((flags[i] & MassStore.FIXED) == 0) {
+                double coast = elapsedTime - myMoveTime[i];
+                x[i] += vx[i] * coast;
+                y[i] += vy[i] * coast;
+            }
+            masses.addMoment(i);
+        }
+        masses.endMoments();
+    }
+
+    /**
+     * Bring the masses of the given level along to the given time, and
+     * push them with the level's springs for the given length of time.
+     */
+    private void push (MassStore masses, int level, double time, double length) {
+        double[] x = masses.getPositionX();
+        double[] y = masses.getPositionY();
+        double[] vx = masses.getVelocityX();
+        double[] vy = masses.getVelocityY();
+        double[] fx = masses.getForceX();
+        double[] fy = masses.getForceY();
+        double[] inverseMass = masses.getInverseMass();
+        int[] flags = masses.getFlags();
+        int[] indices = myLevelMasses[level - 1];
+        for (int k = 0; k < indices.length; k++) {
+            int i = indices[k];
+            if ((flags[i] & MassStore.FIXED) == 0) {
+                double coast = time - myMoveTime[i];
+                x[i] += vx[i] * coast;
+                y[i] += vy[i] * coast;
+            }
+            myMoveTime[i] = time;
+            fx[i] = 0;
+            fy[i] = 0;
+        }
+        List<Spring> springs = myLevelSprings.get(level - 1);
+        for (int s = 0; s < springs.size(); s++) {
+            springs.get(s).applyHookesLaw();
+        }
+        for (int k = 0; k < indices.length; k++) {
+            int i = indices[k];
+            if ((flags[i] & MassStore.FIXED) == 0) {
+                vx[i] += fx[i] * inverseMass[i] * length;
+                vy[i] += fy[i] * inverseMass[i] * length;
+            }
+        }
+    }
+
+    /**
+     * Put each spring of the given assembly on its level for steps of the
+     * given length, and list the masses each level pushes.
+     */
+    private void split (Assembly assembly, double elapsedTime) {
+        MassStore masses = assembly.getMasses();
+        List<Spring> springs = assembly.getSprings();
+        mySlowSprings = new ArrayList<Spring>();
+        myLevelSprings.clear();
+        myTopLevel = 0;
+        for (int s = 0; s < springs.size(); s++) {
+            Spring spring = springs.get(s);
+            // the mouse's spring changes ends every step, so it stays with the evaluator
+            int level = assembly.isTransient(spring) ? 0 : levelOf(spring, elapsedTime);
+            if (level == 0) {
+                mySlowSprings.add(spring);
+                continue;
+            }
+            while (myLevelSprings.size() < level) {
+                myLevelSprings.add(new ArrayList<Spring>());
+            }
+            myLevelSprings.get(level - 1).add(spring);
+            myTopLevel = Math.max(myTopLevel, level);
+        }
+        myLevelMasses = new int[myTopLevel][];
+        int[] lastLevel = new int[masses.size()];
+        for (int level = 1; level <= myTopLevel; level++) {
+            int[] indices = new int[masses.size()];
+            int count = 0;
+            List<Spring> onLevel = myLevelSprings.get(level - 1);
+            for (int s = 0; s < onLevel.size(); s++) {
+                Spring spring = onLevel.get(s);
+                Mass[] ends = { spring.getStart(), spring.getEnd() };
+                for (Mass end : ends) {
+                    // masses of other stores are not this integrator's to move
+                    if (masses.contains(end) && lastLevel[end.getIndex()] != level) {
+                        lastLevel[end.getIndex()] = level;
+                        indices[count++] = end.getIndex();
+                    }
+                }
+            }
+            myLevelMasses[level - 1] = Arrays.copyOf(indices, count);
+        }
+        myAssembly = assembly;
+        myTimestep = elapsedTime;
+        myStructureCount = masses.getStructureCount();
+    }
+
+    /**
+     * Returns the level the given spring needs for steps of the given length.
+     */
+    private static int levelOf (Spring spring, double elapsedTime) {
+        double steps = AdaptiveTimestep.frequency(spring) * elapsedTime / AdaptiveTimestep.COURANT;
+        int level = 0;
+        while (level < MAX_LEVEL && (1 << level) < steps) {
+            level++;
+        }
+        return level;
+    }
+}
@@ -1,6 +1,5 @@
 package simulation;
 
-import java.awt.Dimension;
 import util.Pixmap;
 
 
@@ -49,17 +48,42 @@ public class Muscle extends Spring {
         myFreq = freq;
     }
 
+    /**
+     * Returns the amplitude of the muscle's oscillation
+     * 
+     * @return myAmp
+     */
+    public double getAmplitude () {
+        return myAmp;
+    }
+
+    /**
+     * Returns the delay (phase) of the muscle's oscillation
+     * 
+     * @return myDelay
+     */
+    public double getDelay () {
+        return myDelay;
+    }
+
+    /**
+     * Returns the frequency of the muscle's oscillation
+     * 
+     * @return myFreq
+     */
+    public double getFrequency () {
+        return myFreq;
+    }
+
     /**
      * Updates the length of the muscle based on harmonic oscillation equation.
      * 
      * @param elapsedTime       framerate
-     * @param bounds            size of simulation
      */
     @Override
-    public void update (double elapsedTime, Dimension bounds) {
+    public void updateLength (double elapsedTime) {
         myRestLength = getLength() * (1 + myAmp * Math.sin((myFreq * elapsedTime) + myDelay));
         setLength(myRestLength);
-        super.update(elapsedTime, bounds);
     }
 
 }
@@ -0,0 +1,241 @@
+package simulation;
+
+import java.awt.Dimension;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import util.Force;
+
+
+/**
+ * Applies the global forces to the masses of a store, splitting the
+ * masses into chunks that run on a fork/join pool. Each global force
+ * only looks at the mass it is pushing, so chunks never touch the same
+ * mass and need no locking.
+ * 
+ * Springs push two masses, so they are run one SpringColoring batch at
+ * a time; within a batch no two springs share a mass.
+ * 
+ * Small stores are not worth the hand-off, so below a threshold the
+ * work is done on the calling thread, which also allocates nothing.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class ParallelForces {
+    /**
+     * Default number of masses each task handles
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+    /**
+     * Default fewest masses worth running in parallel
+     */
+    public static final int DEFAULT_THRESHOLD = 16384;
+
+    private ForkJoinPool myPool;
+    private int myParallelism;
+    private int myChunkSize = DEFAULT_CHUNK_SIZE;
+    private int myThreshold = DEFAULT_THRESHOLD;
+
+    /**
+     * Use one thread per available processor.
+     */
+    public ParallelForces () {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Use the given number of threads.
+     * 
+     * @param parallelism   number of threads; 1 means always sequential
+     */
+    public ParallelForces (int parallelism) {
+        setParallelism(parallelism);
+    }
+
+    /**
+     * Returns the number of threads used
+     * 
+     * @return
+     */
+    public int getParallelism () {
+        return myParallelism;
+    }
+
+    /**
+     * Change the number of threads used.
+     * 
+     * @param parallelism   number of threads; 1 means always sequential
+     */
+    public void setParallelism (int parallelism) {
+        if (parallelism == myParallelism) {
+            return;
+        }
+        if (myPool != null) {
+            myPool.shutdown();
+        }
+        myParallelism = Math.max(1, parallelism);
+        myPool = (myParallelism > 1) ? new ForkJoinPool(myParallelism) : null;
+    }
+
+    /**
+     * Returns the pool tasks run on, or null when sequential
+     * 
+     * @return
+     */
+    public ForkJoinPool getPool () {
+        return myPool;
+    }
+
+    /**
+     * Returns how many masses each task handles
+     * 
+     * @return
+     */
+    public int getChunkSize () {
+        return myChunkSize;
+    }
+
+    /**
+     * Change how many masses each task handles.
+     * 
+     * @param chunkSize     masses per task
+     */
+    public void setChunkSize (int chunkSize) {
+        myChunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Change the fewest masses worth running in parallel.
+     * 
+     * @param threshold     number of masses
+     */
+    public void setThreshold (int threshold) {
+        myThreshold = threshold;
+    }
+
+    /**
+     * Returns true if a store of the given size would be split across threads.
+     * 
+     * @param size          number of masses
+     * @return
+     */
+    public boolean isParallel (int size) {
+        return myPool != null && size >= myThreshold && size > myChunkSize;
+    }
+
+    /**
+     * Apply every force to every mass of the store, in list order for each mass.
+     * 
+     * @param forces        the global forces
+     * @param bounds        size of simulation
+     * @param masses        the mass store
+     */
+    public void apply (List<Force> forces, Dimension bounds, MassStore masses) {
+        if (forces.isEmpty()) {
+            return;
+        }
+        if (isParallel(masses.size())) {
+            myPool.invoke(new ForceTask(forces, bounds, masses, 0, masses.size(), myChunkSize));
+        }
+        else {
+            applyRange(forces, bounds, masses, 0, masses.size());
+        }
+    }
+
+    /**
+     * Apply hooke's law for every spring, batch by batch. The result is the
+     * same for any number of threads.
+     * 
+     * @param springs       the springs, packed in the order of the batches
+     * @param coloring      batches worked out for these springs
+     */
+    public void apply (SpringKernel springs, SpringColoring coloring) {
+        for (int b = 0; b < coloring.getBatchCount(); b++) {
+            int start = coloring.getBatchStart(b);
+            int end = coloring.getBatchEnd(b);
+            if (coloring.isIndependent(b) && isParallel(end - start)) {
+                myPool.invoke(new SpringTask(springs, start, end, myChunkSize));
+            }
+            else {
+                springs.applyHookesLaw(start, end);
+            }
+        }
+    }
+
+    /**
+     * Apply the forces to the masses in [start, end) on this thread.
+     */
+    private static void applyRange (List<Force> forces, Dimension bounds, MassStore masses,
+                                    int start, int end) {
+        for (int f = 0; f < forces.size(); f++) {
+            forces.get(f).update(bounds, masses, start, end);
+        }
+    }
+
+    /**
+     * Splits a range of masses in half until it is one chunk.
+     */
+    private static class ForceTask extends RecursiveAction {
+        // default serialization ID
+        private static final long serialVersionUID = 1L;
+
+        private final List<Force> myForces;
+        private final Dimension myBounds;
+        private final MassStore myMasses;
+        private final int myStart;
+        private final int myEnd;
+        private final int myChunkSize;
+
+        public ForceTask (List<Force> forces, Dimension bounds, MassStore masses,
+                          int start, int end, int chunkSize) {
+            myForces = forces;
+            myBounds = bounds;
+            myMasses = masses;
+            myStart = start;
+            myEnd = end;
+            myChunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute () {
+            if (myEnd - myStart <= myChunkSize) {
+                applyRange(myForces, myBounds, myMasses, myStart, myEnd);
+                return;
+            }
+            int middle = (myStart + myEnd) >>> 1;
+            invokeAll(new ForceTask(myForces, myBounds, myMasses, myStart, middle, myChunkSize),
+                      new ForceTask(myForces, myBounds, myMasses, middle, myEnd, myChunkSize));
+        }
+    }
+
+    /**
+     * Splits a range of one spring batch in half until it is one chunk.
+     */
+    private static class SpringTask extends RecursiveAction {
+        // default serialization ID
+        private static final long serialVersionUID = 1L;
+
+        private final SpringKernel mySprings;
+        private final int myStart;
+        private final int myEnd;
+        private final int myChunkSize;
+
+        public SpringTask (SpringKernel springs, int start, int end, int chunkSize) {
+            mySprings = springs;
+            myStart = start;
+            myEnd = end;
+            myChunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute () {
+            if (myEnd - myStart <= myChunkSize) {
+                mySprings.applyHookesLaw(myStart, myEnd);
+                return;
+            }
+            int middle = (myStart + myEnd) >>> 1;
+            invokeAll(new SpringTask(mySprings, myStart, middle, myChunkSize),
+                      new SpringTask(mySprings, middle, myEnd, myChunkSize));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package simulation;
+
+
+/**
+ * A rigid link between two masses. Where a stiff spring fakes a rod by
+ * pushing back hard, which only works with very short steps, a rod has
+ * no hooke's constant and pushes with no force at all. Instead, after
+ * each step the assembly moves the rod's masses back to the rod's length
+ * (see RodProjection), however long the step was.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class Rod extends Spring {
+
+    /**
+     * Constructs a rod between the given masses
+     *
+     * @param start     first mass
+     * @param end       second mass
+     * @param length    length the masses are kept apart
+     */
+    public Rod (Mass start, Mass end, double length) {
+        super(start, end, length, 0);
+    }
+
+    /**
+     * A rod pushes with no force, so this only measures its strain.
+     */
+    @Override
+    public void applyHookesLaw () {
+        updateStrain();
+    }
+
+    @Override
+    boolean usesHookesLaw () {
+        return false;
+    }
+}
@@ -0,0 +1,208 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import util.CartesianVector;
+
+
+/**
+ * Keeps the rods of an assembly at their lengths. After the integrator
+ * has moved the masses, each rod whose masses are too near or too far
+ * apart moves them back along the rod, each by its share of the inverse
+ * mass, so fixed masses stay put and the center of mass of the two does
+ * not move. The velocities change by the same amount over the length of
+ * the step, as if the masses had gone there themselves.
+ *
+ * Rods that share a mass fight each other, so the rods are gone over a
+ * number of times, each pass using where the earlier rods left the masses
+ * (Gauss-Seidel). Passes go batch by batch through a SpringColoring, so
+ * the rods of a batch share no mass and can be moved on several threads
+ * with the same result as one.
+ *
+ * Nothing here depends on the length of the step, so rods stay rigid
+ * however long the steps are; too few passes only make them a little
+ * soft.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class RodProjection {
+    /**
+     * Default number of passes over the rods each step
+     */
+    public static final int DEFAULT_ITERATIONS = 10;
+
+    private int myIterations = DEFAULT_ITERATIONS;
+    private SpringColoring myColoring = new SpringColoring();
+    // rods in batch order, with the indices of their masses and their lengths
+    private List<Spring> myRods = new ArrayList<Spring>();
+    private int[] myStart = new int[0];
+    private int[] myEnd = new int[0];
+    private double[] myLength = new double[0];
+    private int myStructureCount = -1;
+
+    /**
+     * Returns the number of passes over the rods each step
+     *
+     * @return
+     */
+    public int getIterations () {
+        return myIterations;
+    }
+
+    /**
+     * Change the number of passes over the rods each step.
+     *
+     * @param iterations    passes; more make the rods stiffer
+     */
+    public void setIterations (int iterations) {
+        myIterations = Math.max(1, iterations);
+    }
+
+    /**
+     * Returns the number of rods being kept at length
+     *
+     * @return
+     */
+    public int getRodCount () {
+        return myRods.size();
+    }
+
+    /**
+     * Move the masses of the given store back so the given rods have their
+     * lengths, after a step of the given length.
+     *
+     * @param rods          the rods
+     * @param changed       true if the rods changed since the last call
+     * @param masses        the store holding the rods' masses
+     * @param elapsedTime   length of the step just taken
+     * @param parallel      the scheduler, or null to stay on this thread
+     */
+    public void project (List<Spring> rods, boolean changed, MassStore masses,
+                         double elapsedTime, ParallelForces parallel) {
+        if (changed || masses.getStructureCount() != myStructureCount) {
+            layOut(rods, masses);
+        }
+        if (myRods.isEmpty()) {
+            return;
+        }
+        for (int pass = 0; pass < myIterations; pass++) {
+            for (int b = 0; b < myColoring.getBatchCount(); b++) {
+                int start = myColoring.getBatchStart(b);
+                int end = myColoring.getBatchEnd(b);
+                if (parallel != null && myColoring.isIndependent(b) &&
+                    parallel.isParallel(end - start)) {
+                    parallel.getPool().invoke(new ProjectTask(masses, elapsedTime, start, end,
+                                                              parallel.getChunkSize()));
+                }
+                else {
+                    project(masses, elapsedTime, start, end);
+                }
+            }
+        }
+        masses.positionsChanged();
+        for (int r = 0; r < myRods.size(); r++) {
+            myRods.get(r).updateStrain();
+        }
+    }
+
+    /**
+     * Move the masses of the rods at positions [start, end) of the batch order.
+     */
+    private void project (MassStore masses, double elapsedTime, int start, int end) {
+        double[] x = masses.getPositionX();
+        double[] y = masses.getPositionY();
+        double[] vx = masses.getVelocityX();
+        double[] vy = masses.getVelocityY();
+        double[] inverseMass = masses.getInverseMass();
+        for (int r = start; r < end; r++) {
+            int a = myStart[r];
+            int b = myEnd[r];
+            double wa = inverseMass[a];
+            double wb = inverseMass[b];
+            double w = wa + wb;
+            double dx = x[a] - x[b];
+            double dy = y[a] - y[b];
+            double distance = CartesianVector.length(dx, dy);
+            if (w <= 0 || distance == 0) {
+                continue;
+            }
+            // how far to move, per unit of inverse mass, along the rod
+            double scale = (distance - myLength[r]) / (w * distance);
+            double moveX = scale * dx;
+            double moveY = scale * dy;
+            x[a] -= wa * moveX;
+            y[a] -= wa * moveY;
+            x[b] += wb * moveX;
+            y[b] += wb * moveY;
+            vx[a] -= wa * moveX / elapsedTime;
+            vy[a] -= wa * moveY / elapsedTime;
+            vx[b] += wb * moveX / elapsedTime;
+            vy[b] += wb * moveY / elapsedTime;
+        }
+    }
+
+    /**
+     * Color the given rods and list their masses in batch order. Rods with
+     * a mass from another store are left alone.
+     */
+    private void layOut (List<Spring> rods, MassStore masses) {
+        List<Spring> kept = new ArrayList<Spring>();
+        for (int r = 0; r < rods.size(); r++) {
+            Spring rod = rods.get(r);
+            if (masses.contains(rod.getStart()) && masses.contains(rod.getEnd())) {
+                kept.add(rod);
+            }
+        }
+        myColoring.color(kept, masses);
+        int n = kept.size();
+        if (myStart.length < n) {
+            myStart = new int[n];
+            myEnd = new int[n];
+            myLength = new double[n];
+        }
+        myRods.clear();
+        for (int k = 0; k < n; k++) {
+            Spring rod = kept.get(myColoring.getSpringIndex(k));
+            myRods.add(rod);
+            myStart[k] = rod.getStart().getIndex();
+            myEnd[k] = rod.getEnd().getIndex();
+            myLength[k] = rod.getLength();
+        }
+        myStructureCount = masses.getStructureCount();
+    }
+
+    /**
+     * Splits a range of one rod batch in half until it is one chunk.
+     */
+    private class ProjectTask extends RecursiveAction {
+        // default serialization ID
+        private static final long serialVersionUID = 1L;
+
+        private final MassStore myMasses;
+        private final double myElapsedTime;
+        private final int myFirst;
+        private final int myLast;
+        private final int myChunkSize;
+
+        public ProjectTask (MassStore masses, double elapsedTime,
+                            int first, int last, int chunkSize) {
+            myMasses = masses;
+            myElapsedTime = elapsedTime;
+            myFirst = first;
+            myLast = last;
+            myChunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute () {
+            if (myLast - myFirst <= myChunkSize) {
+                project(myMasses, myElapsedTime, myFirst, myLast);
+                return;
+            }
+            int middle = (myFirst + myLast) >>> 1;
+            invokeAll(new ProjectTask(myMasses, myElapsedTime, myFirst, middle, myChunkSize),
+                      new ProjectTask(myMasses, myElapsedTime, middle, myLast, myChunkSize));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package simulation;
+
+import java.util.Arrays;
+
+
+/**
+ * Classic fourth order Runge-Kutta. Four force evaluations per step, but
+ * very accurate for smooth motion.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class RungeKutta4 implements Integrator {
+    // weights of the four stages
+    private static final double[] STAGE_WEIGHTS = { 1, 2, 2, 1 };
+    // how far into the step the next stage is evaluated
+    private static final double[] NEXT_STAGE_FRACTIONS = { 0.5, 0.5, 1, 0 };
+    private static final double WEIGHT_TOTAL = 6;
+
+    // state at the start of the step
+    private double[] myStartX = new double[0];
+    private double[] myStartY = new double[0];
+    private double[] myStartVelocityX = new double[0];
+    private double[] myStartVelocityY = new double[0];
+    // weighted sums of the stage derivatives
+    private double[] mySumX = new double[0];
+    private double[] mySumY = new double[0];
+    private double[] mySumVelocityX = new double[0];
+    private double[] mySumVelocityY = new double[0];
+
+    @Override
+    public void step (MassStore masses, ForceEvaluator forces, double elapsedTime) {
+        int n = masses.size();
+        ensureCapacity(n);
+        double[] x = masses.getPositionX();
+        double[] y = masses.getPositionY();
+        double[] vx = masses.getVelocityX();
+        double[] vy = masses.getVelocityY();
+        double[] fx = masses.getForceX();
+        double[] fy = masses.getForceY();
+        double[] inverseMass = masses.getInverseMass();
+        int[] flags = masses.getFlags();
+
+        System.arraycopy(x, 0, myStartX, 0, n);
+        System.arraycopy(y, 0, myStartY, 0, n);
+        System.arraycopy(vx, 0, myStartVelocityX, 0, n);
+        System.arraycopy(vy, 0, myStartVelocityY, 0, n);
+        Arrays.fill(mySumX, 0, n, 0);
+        Arrays.fill(mySumY, 0, n, 0);
+        Arrays.fill(mySumVelocityX, 0, n, 0);
+        Arrays.fill(mySumVelocityY, 0, n, 0);
+
+        int last = STAGE_WEIGHTS.length - 1;
+        for (int stage = 0; stage <= last; stage++) {
+            forces.evaluate(masses);
+            double weight = STAGE_WEIGHTS[stage];
+            double next = NEXT_STAGE_FRACTIONS[stage] * elapsedTime;
+            // the next stage pulls toward the center of mass where it is then
+            boolean moments = stage < last;
+            if (moments) {
+                masses.beginMoments();
+            }
+            for (int i = 0; i < n; i++) {
+                if ((flags[i] & MassStore.FIXED) == 0) {
+                    double ax = fx[i] * inverseMass[i];
+                    double ay = fy[i] * inverseMass[i];
+                    mySumX[i] += weight * vx[i];
+                    mySumY[i] += weight * vy[i];
+                    mySumVelocityX[i] += weight * ax;
+                    mySumVelocityY[i] += weight * ay;
+                    // move to where the next stage is evaluated
+                    x[i] = myStartX[i] + next * vx[i];
+                    y[i] = myStartY[i] + next * vy[i];
+                    vx[i] = myStartVelocityX[i] + next * ax;
+                    vy[i] = myStartVelocityY[i] + next * ay;
+                }
+                if (moments) {
+                    masses.addMoment(i);
+                }
+            }
+            if (moments) {
+                masses.endMoments();
+            }
+        }
+        double scale = elapsedTime / WEIGHT_TOTAL;
+        masses.beginMoments();
+        for (int i = 0; i < n; i++) {
+            if ((flags[i] & MassStore.FIXED) == 0) {
+                x[i] = myStartX[i] + scale * mySumX[i];
+                y[i] = myStartY[i] + scale * mySumY[i];
+                vx[i] = myStartVelocityX[i] + scale * mySumVelocityX[i];
+                vy[i] = myStartVelocityY[i] + scale * mySumVelocityY[i];
+            }
+            masses.addMoment(i);
+        }
+        masses.endMoments();
+    }
+
+    private void ensureCapacity (int n) {
+        if (myStartX.length >= n) {
+            return;
+        }
+        myStartX = Arrays.copyOf(myStartX, n);
+        myStartY = Arrays.copyOf(myStartY, n);
+        myStartVelocityX = Arrays.copyOf(myStartVelocityX, n);
+        myStartVelocityY = Arrays.copyOf(myStartVelocityY, n);
+        mySumX = Arrays.copyOf(mySumX, n);
+        mySumY = Arrays.copyOf(mySumY, n);
+        mySumVelocityX = Arrays.copyOf(mySumVelocityX, n);
+        mySumVelocityY = Arrays.copyOf(mySumVelocityY, n);
+    }
+}
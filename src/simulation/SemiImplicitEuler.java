@@ -0,0 +1,35 @@
+package simulation;
+
+/**
+ * Semi-implicit (symplectic) Euler: updates velocity from the current
+ * forces, then moves by the new velocity. One force evaluation per step
+ * and much better energy behavior than plain explicit Euler.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class SemiImplicitEuler implements Integrator {
+
+    @Override
+    public void step (MassStore masses, ForceEvaluator forces, double elapsedTime) {
+        forces.evaluate(masses);
+        double[] x = masses.getPositionX();
+        double[] y = masses.getPositionY();
+        double[] vx = masses.getVelocityX();
+        double[] vy = masses.getVelocityY();
+        double[] fx = masses.getForceX();
+        double[] fy = masses.getForceY();
+        double[] inverseMass = masses.getInverseMass();
+        int[] flags = masses.getFlags();
+        masses.beginMoments();
+        for (int i = 0; i < masses.size(); i++) {
+            if ((flags[i] & MassStore.FIXED) == 0) {
+                vx[i] += fx[i] * inverseMass[i] * elapsedTime;
+                vy[i] += fy[i] * inverseMass[i] * elapsedTime;
+                x[i] += vx[i] * elapsedTime;
+                y[i] += vy[i] * elapsedTime;
+            }
+            masses.addMoment(i);
+        }
+        masses.endMoments();
+    }
+}
@@ -0,0 +1,336 @@
+package simulation;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import util.Force;
+
+
+/**
+ * Runs the physics of the Springies universe without any display.
+ * The engine owns the world bounds, the global forces, and the
+ * assemblies, and can be stepped as fast as the caller likes. Views
+ * attach as optional observers.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class SimulationEngine {
+    /**
+     * Default magnitude of gravity, in pixels per second squared: the
+     * original program's pull of 7 a frame (see FrameUnits)
+     */
+    public static final double DEFAULT_GRAVITY = 7 * FrameUnits.ACCELERATION;
+    /**
+     * Default viscosity, the part of each force taken away. It scales
+     * forces rather than velocities, so it needs no change of units.
+     */
+    public static final double DEFAULT_VISCOSITY = .9;
+    /**
+     * Default wall repulsion exponent
+     */
+    public static final double DEFAULT_WALL_REPULSION = -.01;
+
+    /**
+     * Default length of one simulation step, in seconds
+     */
+    public static final double DEFAULT_TIMESTEP = 0.01;
+    /**
+     * Default most steps taken to catch up in one call to advance
+     */
+    public static final int DEFAULT_MAX_SUBSTEPS = 10;
+
+    private Dimension myBounds;
+    private List<Force> myForces;
+    private List<Assembly> myAssemblies;
+    private List<SimulationObserver> myObservers;
+    private ParallelForces myParallelForces;
+    private AssemblyScheduler myScheduler;
+    private long myStepCount;
+    // fixed step and time not yet simulated
+    private double myTimestep = DEFAULT_TIMESTEP;
+    private int myMaxSubsteps = DEFAULT_MAX_SUBSTEPS;
+    private double myAccumulatedTime;
+    // splits steps into shorter ones when the springs need it, or null
+    private AdaptiveTimestep myAdaptiveTimestep;
+
+    /**
+     * Create an empty world of the given size.
+     * 
+     * @param bounds    size of simulation
+     */
+    public SimulationEngine (Dimension bounds) {
+        myBounds = new Dimension(bounds);
+        myForces = new ArrayList<Force>();
+        myAssemblies = new ArrayList<Assembly>();
+        myObservers = new ArrayList<SimulationObserver>();
+        myParallelForces = new ParallelForces();
+        myScheduler = new AssemblyScheduler(myParallelForces);
+    }
+
+    /**
+     * Add gravity, viscosity, and wall repulsion with their default values,
+     * the same set the interactive program starts with.
+     */
+    public void addDefaultForces () {
+        add(new Gravity(DEFAULT_GRAVITY));
+        add(new Viscosity(DEFAULT_VISCOSITY));
+        add(new WallRepulsion(DEFAULT_WALL_REPULSION));
+    }
+
+    /**
+     * Returns the size of the world
+     * 
+     * @return
+     */
+    public Dimension getBounds () {
+        return myBounds;
+    }
+
+    /**
+     * Resize the world
+     * 
+     * @param width     new width
+     * @param height    new height
+     */
+    public void setBounds (int width, int height) {
+        myBounds.setSize(width, height);
+    }
+
+    /**
+     * Add a global force, applied to every mass of every assembly.
+     * 
+     * @param force     the force
+     */
+    public void add (Force force) {
+        myForces.add(force);
+    }
+
+    /**
+     * Returns the global forces
+     * 
+     * @return
+     */
+    public List<Force> getForces () {
+        return myForces;
+    }
+
+    /**
+     * Add an assembly to the world.
+     * 
+     * @param assembly  the assembly
+     */
+    public void add (Assembly assembly) {
+        assembly.setParallelForces(myParallelForces);
+        myAssemblies.add(assembly);
+    }
+
+    /**
+     * Take an assembly out of the world.
+     * 
+     * @param assembly  the assembly
+     */
+    public void remove (Assembly assembly) {
+        myAssemblies.remove(assembly);
+    }
+
+    /**
+     * Returns the scheduler that applies the global forces, whose
+     * parallelism, chunk size, and threshold can be tuned
+     * 
+     * @return
+     */
+    public ParallelForces getParallelForces () {
+        return myParallelForces;
+    }
+
+    /**
+     * Returns the assemblies in the world
+     * 
+     * @return
+     */
+    public List<Assembly> getAssemblies () {
+        return myAssemblies;
+    }
+
+    /**
+     * Start telling the given observer about each step.
+     * 
+     * @param observer  the observer
+     */
+    public void addObserver (SimulationObserver observer) {
+        myObservers.add(observer);
+    }
+
+    /**
+     * Stop telling the given observer about steps.
+     * 
+     * @param observer  the observer
+     */
+    public void removeObserver (SimulationObserver observer) {
+        myObservers.remove(observer);
+    }
+
+    /**
+     * Returns the number of steps taken so far
+     * 
+     * @return
+     */
+    public long getStepCount () {
+        return myStepCount;
+    }
+
+    /**
+     * Returns the fixed length of one step used by advance
+     * 
+     * @return
+     */
+    public double getTimestep () {
+        return myTimestep;
+    }
+
+    /**
+     * Change the fixed length of one step used by advance
+     * 
+     * @param timestep      seconds per step
+     */
+    public void setTimestep (double timestep) {
+        myTimestep = timestep;
+    }
+
+    /**
+     * Returns the most steps advance takes at once
+     * 
+     * @return
+     */
+    public int getMaxSubsteps () {
+        return myMaxSubsteps;
+    }
+
+    /**
+     * Change the most steps advance takes at once; time beyond that is dropped
+     * so a slow machine does not fall further and further behind.
+     * 
+     * @param substeps      most steps per call
+     */
+    public void setMaxSubsteps (int substeps) {
+        myMaxSubsteps = substeps;
+    }
+
+    /**
+     * Returns what splits steps into shorter ones, or null if steps are
+     * taken whole
+     * 
+     * @return
+     */
+    public AdaptiveTimestep getAdaptiveTimestep () {
+        return myAdaptiveTimestep;
+    }
+
+    /**
+     * Split each step into as many shorter ones as the springs need, rolling
+     * back and halving any that blow up; the timestep then only bounds how
+     * long a step can be.
+     * 
+     * @param adaptive  what splits the steps, or null to take them whole
+     */
+    public void setAdaptiveTimestep (AdaptiveTimestep adaptive) {
+        myAdaptiveTimestep = adaptive;
+    }
+
+    /**
+     * Returns the time given to advance that has not been simulated yet
+     * 
+     * @return
+     */
+    public double getAccumulatedTime () {
+        return myAccumulatedTime;
+    }
+
+    /**
+     * Returns how far real time has got into the next step, from 0 to 1.
+     * The world is a step behind real time; drawing the masses this far
+     * from where they were at the start of the last step to where they
+     * are now moves them smoothly however the steps and the frames fall.
+     * 
+     * @return
+     */
+    public double getInterpolation () {
+        return Math.min(1, myAccumulatedTime / myTimestep);
+    }
+
+    /**
+     * Set the step count and the time not yet simulated, when carrying on
+     * from a checkpoint.
+     */
+    void setClock (long stepCount, double accumulatedTime) {
+        myStepCount = stepCount;
+        myAccumulatedTime = accumulatedTime;
+    }
+
+    /**
+     * Simulate the given amount of (real) time in fixed-length steps. Time
+     * left over is kept for the next call.
+     * 
+     * @param elapsedTime   seconds since the last call
+     * @return number of steps taken
+     */
+    public int advance (double elapsedTime) {
+        myAccumulatedTime += elapsedTime;
+        int steps = 0;
+        while (myAccumulatedTime >= myTimestep && steps < myMaxSubsteps) {
+            step(myTimestep);
+            myAccumulatedTime -= myTimestep;
+            steps++;
+        }
+        if (steps == myMaxSubsteps) {
+            myAccumulatedTime = Math.min(myAccumulatedTime, myTimestep);
+        }
+        return steps;
+    }
+
+    /**
+     * Advance the simulation one step of the given length. Each assembly
+     * moves its masses under its springs and the global forces; independent
+     * assemblies run at the same time, and all finish before observers hear
+     * about the step. With an adaptive timestep the step may be taken as
+     * several shorter ones, which observers do not see.
+     * 
+     * @param elapsedTime   time for this step
+     */
+    public void step (double elapsedTime) {
+        for (int i = 0; i < myAssemblies.size(); i++) {
+            myAssemblies.get(i).getMasses().savePositions();
+        }
+        if (myAdaptiveTimestep != null) {
+            myAdaptiveTimestep.step(this, elapsedTime);
+        }
+        else {
+            integrate(elapsedTime);
+        }
+        myStepCount++;
+        for (int i = 0; i < myObservers.size(); i++) {
+            myObservers.get(i).simulationStepped(this);
+        }
+    }
+
+    /**
+     * Move every assembly on by the given time, without counting a step.
+     * 
+     * @param elapsedTime   time to move on by
+     */
+    void integrate (double elapsedTime) {
+        myScheduler.update(myAssemblies, elapsedTime, myBounds, myForces);
+    }
+
+    /**
+     * Take the given number of steps back to back, as fast as possible.
+     * 
+     * @param steps         number of steps
+     * @param elapsedTime   time for each step
+     */
+    public void run (long steps, double elapsedTime) {
+        for (long i = 0; i < steps; i++) {
+            step(elapsedTime);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package simulation;
+
+/**
+ * Something that wants to hear about each step of a SimulationEngine,
+ * for example a view that redraws afterwards.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public interface SimulationObserver {
+
+    /**
+     * Called after the engine finishes a step.
+     * 
+     * @param engine    the engine that stepped
+     */
+    void simulationStepped (SimulationEngine engine);
+}
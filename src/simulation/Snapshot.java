@@ -0,0 +1,75 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A copy of what is needed to draw every assembly of an engine at one
+ * step (see AssemblySnapshot). The simulation thread captures one after
+ * each update and the display draws the latest, so neither waits for the
+ * other and the display never sees masses halfway through a step.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class Snapshot {
+    private List<AssemblySnapshot> myAssemblies = new ArrayList<AssemblySnapshot>();
+    private int myAssemblyCount;
+    private long myStep;
+
+    /**
+     * Copy the assemblies of the given engine as they are now.
+     *
+     * @param engine    the engine, between steps
+     */
+    public void capture (SimulationEngine engine) {
+        capture(engine, 1);
+    }
+
+    /**
+     * Copy the assemblies of the given engine with their masses the given
+     * fraction of the way through the last step (see AssemblySnapshot).
+     *
+     * @param engine    the engine, between steps
+     * @param fraction  0 for the start of the last step, 1 for now
+     */
+    public void capture (SimulationEngine engine, double fraction) {
+        List<Assembly> assemblies = engine.getAssemblies();
+        while (myAssemblies.size() < assemblies.size()) {
+            myAssemblies.add(new AssemblySnapshot());
+        }
+        for (int i = 0; i < assemblies.size(); i++) {
+            myAssemblies.get(i).capture(assemblies.get(i), fraction);
+        }
+        myAssemblyCount = assemblies.size();
+        myStep = engine.getStepCount();
+    }
+
+    /**
+     * Returns the step captured
+     *
+     * @return
+     */
+    public long getStep () {
+        return myStep;
+    }
+
+    /**
+     * Returns the number of assemblies captured
+     *
+     * @return
+     */
+    public int getAssemblyCount () {
+        return myAssemblyCount;
+    }
+
+    /**
+     * Returns the given assembly as captured
+     *
+     * @param index     index of the assembly
+     * @return
+     */
+    public AssemblySnapshot getAssembly (int index) {
+        return myAssemblies.get(index);
+    }
+}
@@ -0,0 +1,429 @@
+package simulation;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A uniform grid over the masses of one store, for finding masses near a
+ * point without looking at all of them: the closest mass, the masses
+ * within a radius, and the masses inside a rectangle.
+ *
+ * Cells are kept in a hash table, so the world has no edges and masses
+ * that fly far away cost nothing extra. Each cell holds a linked list of
+ * mass indices. The grid catches up with the store lazily, on the next
+ * query: when masses were added or removed it is rebuilt, and when they
+ * only moved just the masses that changed cell are relinked.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class SpatialGrid {
+    /**
+     * Cell size used when none is given: twice the size of a mass
+     */
+    public static final double DEFAULT_CELL_SIZE = 2 * Mass.DEFAULT_SIZE.width;
+
+    private static final int NONE = -1;
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private MassStore myMasses;
+    private double myCellSize;
+    private int mySeenStructure;
+    private int mySeenMove;
+    private boolean myBuilt;
+
+    // per mass: cell key, cell slot, and links to the other masses in the cell
+    private long[] myKeyOf = new long[0];
+    private int[] mySlotOf = new int[0];
+    private int[] myNext = new int[0];
+    private int[] myPrevious = new int[0];
+    // open addressed table of cells: key and first mass, NONE when unused
+    private long[] myCellKeys = new long[MIN_TABLE_SIZE];
+    private int[] myCellHeads = new int[MIN_TABLE_SIZE];
+    private boolean[] myCellUsed = new boolean[MIN_TABLE_SIZE];
+    private int myCellCount;
+    // cells that hold masses, as of the last catch up
+    private int myMinCellX;
+    private int myMaxCellX;
+    private int myMinCellY;
+    private int myMaxCellY;
+    // closest mass found so far by nearest
+    private int myBest;
+    private double myBestDistance;
+
+    /**
+     * Create a grid over the given store with the default cell size.
+     *
+     * @param masses    the store
+     */
+    public SpatialGrid (MassStore masses) {
+        this(masses, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Create a grid over the given store.
+     *
+     * @param masses    the store
+     * @param cellSize  width and height of a cell in pixels
+     */
+    public SpatialGrid (MassStore masses, double cellSize) {
+        myMasses = masses;
+        myCellSize = cellSize;
+    }
+
+    /**
+     * Returns the width and height of a cell
+     *
+     * @return
+     */
+    public double getCellSize () {
+        return myCellSize;
+    }
+
+    /**
+     * Returns the index of the mass closest to the given point, or -1 if
+     * there are no masses. Ties go to the lower index.
+     *
+     * @param x     x coordinate
+     * @param y     y coordinate
+     * @return index in the store
+     */
+    public int nearest (double x, double y) {
+        update();
+        int n = myMasses.size();
+        if (n == 0) {
+            return NONE;
+        }
+        // cell numbers are longs so rings far out cannot overflow
+        long cx = cell(x);
+        long cy = cell(y);
+        // rings nearer than the occupied cells are empty
+        long first = Math.max(Math.max(myMinCellX - cx, cx - myMaxCellX),
+                              Math.max(myMinCellY - cy, cy - myMaxCellY));
+        long last = Math.max(Math.max(Math.abs(cx - myMinCellX), Math.abs(cx - myMaxCellX)),
+                             Math.max(Math.abs(cy - myMinCellY), Math.abs(cy - myMaxCellY)));
+        myBest = NONE;
+        myBestDistance = Double.POSITIVE_INFINITY;
+        long visited = 0;
+        for (long ring = Math.max(0, first); ring <= last; ring++) {
+            long top = Math.max(cy - ring, myMinCellY);
+            long bottom = Math.min(cy + ring, myMaxCellY);
+            for (long row = top; row <= bottom; row++) {
+                if (row == cy - ring || row == cy + ring) {
+                    long left = Math.max(cx - ring, myMinCellX);
+                    long right = Math.min(cx + ring, myMaxCellX);
+                    for (long col = left; col <= right; col++) {
+                        closestInCell(col, row, x, y);
+                    }
+                    visited += Math.max(0, right - left + 1);
+                }
+                else {
+                    if (cx - ring >= myMinCellX) {
+                        closestInCell(cx - ring, row, x, y);
+                    }
+                    if (cx + ring <= myMaxCellX) {
+                        closestInCell(cx + ring, row, x, y);
+                    }
+                    visited += 2;
+                }
+            }
+            // anything not yet seen is at least this far away
+            double reach = ring * myCellSize;
+            if (myBest != NONE && myBestDistance < reach * reach) {
+                break;
+            }
+            if (visited > n) {
+                // masses are spread too thin for the grid to help
+                return nearestByScan(x, y);
+            }
+        }
+        return myBest;
+    }
+
+    /**
+     * Add the masses within the given distance of a point to the given list.
+     *
+     * @param x         x coordinate
+     * @param y         y coordinate
+     * @param radius    largest distance
+     * @param result    list the masses are added to
+     */
+    public void within (double x, double y, double radius, List<Mass> result) {
+        update();
+        double limit = radius * radius;
+        double[] px = myMasses.getPositionX();
+        double[] py = myMasses.getPositionY();
+        long left = Math.max(cell(x - radius), myMinCellX);
+        long right = Math.min(cell(x + radius), myMaxCellX);
+        long top = Math.max(cell(y - radius), myMinCellY);
+        long bottom = Math.min(cell(y + radius), myMaxCellY);
+        if (tooManyCells(left, right, top, bottom)) {
+            for (int i = 0; i < myMasses.size(); i++) {
+                if (distanceSquared(px[i], py[i], x, y) <= limit) {
+                    result.add(myMasses.getMass(i));
+                }
+            }
+            return;
+        }
+        for (long row = top; row <= bottom; row++) {
+            for (long col = left; col <= right; col++) {
+                for (int i = head(col, row); i != NONE; i = myNext[i]) {
+                    if (distanceSquared(px[i], py[i], x, y) <= limit) {
+                        result.add(myMasses.getMass(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the masses inside the given rectangle to the given list.
+     *
+     * @param left      smallest x coordinate
+     * @param top       smallest y coordinate
+     * @param right     largest x coordinate
+     * @param bottom    largest y coordinate
+     * @param result    list the masses are added to
+     */
+    public void inside (double left, double top, double right, double bottom,
+                        List<Mass> result) {
+        update();
+        double[] px = myMasses.getPositionX();
+        double[] py = myMasses.getPositionY();
+        long firstCol = Math.max(cell(left), myMinCellX);
+        long lastCol = Math.min(cell(right), myMaxCellX);
+        long firstRow = Math.max(cell(top), myMinCellY);
+        long lastRow = Math.min(cell(bottom), myMaxCellY);
+        if (tooManyCells(firstCol, lastCol, firstRow, lastRow)) {
+            for (int i = 0; i < myMasses.size(); i++) {
+                if (px[i] >= left && px[i] <= right && py[i] >= top && py[i] <= bottom) {
+                    result.add(myMasses.getMass(i));
+                }
+            }
+            return;
+        }
+        for (long row = firstRow; row <= lastRow; row++) {
+            for (long col = firstCol; col <= lastCol; col++) {
+                for (int i = head(col, row); i != NONE; i = myNext[i]) {
+                    if (px[i] >= left && px[i] <= right && py[i] >= top && py[i] <= bottom) {
+                        result.add(myMasses.getMass(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Catch up with the store: rebuild if masses came or went, otherwise
+     * relink the masses that moved to another cell.
+     */
+    public void update () {
+        if (!myBuilt || mySeenStructure != myMasses.getStructureCount()) {
+            rebuild();
+        }
+        else if (mySeenMove != myMasses.getMoveCount()) {
+            relink();
+        }
+    }
+
+    /**
+     * Put every mass in its cell from scratch.
+     */
+    private void rebuild () {
+        int n = myMasses.size();
+        if (myKeyOf.length < n) {
+            int capacity = Math.max(n, myKeyOf.length * 2);
+            myKeyOf = new long[capacity];
+            mySlotOf = new int[capacity];
+            myNext = new int[capacity];
+            myPrevious = new int[capacity];
+        }
+        int tableSize = MIN_TABLE_SIZE;
+        while (tableSize < 2 * n) {
+            tableSize *= 2;
+        }
+        if (myCellKeys.length != tableSize) {
+            myCellKeys = new long[tableSize];
+            myCellHeads = new int[tableSize];
+            myCellUsed = new boolean[tableSize];
+        }
+        else {
+            Arrays.fill(myCellUsed, false);
+        }
+        myCellCount = 0;
+        double[] px = myMasses.getPositionX();
+        double[] py = myMasses.getPositionY();
+        resetBounds();
+        for (int i = 0; i < n; i++) {
+            int cx = cell(px[i]);
+            int cy = cell(py[i]);
+            growBounds(cx, cy);
+            link(i, key(cx, cy));
+        }
+        myBuilt = true;
+        mySeenStructure = myMasses.getStructureCount();
+        mySeenMove = myMasses.getMoveCount();
+    }
+
+    /**
+     * Move the masses that changed cell since the last catch up.
+     */
+    private void relink () {
+        int n = myMasses.size();
+        double[] px = myMasses.getPositionX();
+        double[] py = myMasses.getPositionY();
+        resetBounds();
+        for (int i = 0; i < n; i++) {
+            int cx = cell(px[i]);
+            int cy = cell(py[i]);
+            growBounds(cx, cy);
+            long key = key(cx, cy);
+            if (key != myKeyOf[i]) {
+                unlink(i);
+                // cells are never freed one by one, so start over when full
+                if (2 * (myCellCount + 1) > myCellKeys.length) {
+                    rebuild();
+                    return;
+                }
+                link(i, key);
+            }
+        }
+        mySeenMove = myMasses.getMoveCount();
+    }
+
+    /**
+     * Put the given mass at the front of the cell with the given key.
+     */
+    private void link (int index, long key) {
+        int slot = slot(key);
+        if (!myCellUsed[slot]) {
+            myCellUsed[slot] = true;
+            myCellKeys[slot] = key;
+            myCellHeads[slot] = NONE;
+            myCellCount++;
+        }
+        int head = myCellHeads[slot];
+        myNext[index] = head;
+        myPrevious[index] = NONE;
+        if (head != NONE) {
+            myPrevious[head] = index;
+        }
+        myCellHeads[slot] = index;
+        myKeyOf[index] = key;
+        mySlotOf[index] = slot;
+    }
+
+    /**
+     * Take the given mass out of its cell.
+     */
+    private void unlink (int index) {
+        int next = myNext[index];
+        int previous = myPrevious[index];
+        if (previous != NONE) {
+            myNext[previous] = next;
+        }
+        else {
+            myCellHeads[mySlotOf[index]] = next;
+        }
+        if (next != NONE) {
+            myPrevious[next] = previous;
+        }
+    }
+
+    /**
+     * Returns the slot of the cell with the given key, or the free slot
+     * where it would go.
+     */
+    private int slot (long key) {
+        int mask = myCellKeys.length - 1;
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (mixed ^ (mixed >>> 32)) & mask;
+        while (myCellUsed[slot] && myCellKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the first mass in the given cell, or NONE.
+     */
+    private int head (long cx, long cy) {
+        int slot = slot(key(cx, cy));
+        return myCellUsed[slot] ? myCellHeads[slot] : NONE;
+    }
+
+    /**
+     * Check the masses of one cell against the closest found so far.
+     */
+    private void closestInCell (long cx, long cy, double x, double y) {
+        double[] px = myMasses.getPositionX();
+        double[] py = myMasses.getPositionY();
+        for (int i = head(cx, cy); i != NONE; i = myNext[i]) {
+            double distance = distanceSquared(px[i], py[i], x, y);
+            if (distance < myBestDistance || (distance == myBestDistance && i < myBest)) {
+                myBestDistance = distance;
+                myBest = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the closest mass by looking at every one.
+     */
+    private int nearestByScan (double x, double y) {
+        double[] px = myMasses.getPositionX();
+        double[] py = myMasses.getPositionY();
+        int best = NONE;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < myMasses.size(); i++) {
+            double distance = distanceSquared(px[i], py[i], x, y);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns true if the given block of cells is bigger than the number of
+     * masses, when looking at every mass is cheaper.
+     */
+    private boolean tooManyCells (long left, long right, long top, long bottom) {
+        if (left > right || top > bottom) {
+            return false;
+        }
+        return (right - left + 1) * (bottom - top + 1) > myMasses.size();
+    }
+
+    private void resetBounds () {
+        myMinCellX = Integer.MAX_VALUE;
+        myMinCellY = Integer.MAX_VALUE;
+        myMaxCellX = Integer.MIN_VALUE;
+        myMaxCellY = Integer.MIN_VALUE;
+    }
+
+    private void growBounds (int cx, int cy) {
+        myMinCellX = Math.min(myMinCellX, cx);
+        myMaxCellX = Math.max(myMaxCellX, cx);
+        myMinCellY = Math.min(myMinCellY, cy);
+        myMaxCellY = Math.max(myMaxCellY, cy);
+    }
+
+    /**
+     * Returns the cell column or row of the given coordinate.
+     */
+    private int cell (double coordinate) {
+        return (int) Math.floor(coordinate / myCellSize);
+    }
+
+    private static long key (long cx, long cy) {
+        return (cx << Integer.SIZE) | (cy & 0xFFFFFFFFL);
+    }
+
+    private static double distanceSquared (double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+}
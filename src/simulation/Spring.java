@@ -3,18 +3,26 @@ package simulation;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
-import util.Location;
+import util.CartesianVector;
 import util.Pixmap;
-import util.Sprite;
 import util.Vector;
 
 
 /**
- * A class that details a spring that acts upon masses
+ * A class that details a spring that acts upon masses.
+ * 
+ * A spring is drawn as a line between its masses, so it keeps no
+ * sprite state of its own and updating it allocates nothing. Its color
+ * shows its strain, which is kept from the last time hooke's law was
+ * applied rather than measured again for every paint.
+ * 
+ * While an assembly's SpringKernel has the spring packed, the kernel's
+ * arrays hold its rest length and strain too, and the kernel applies
+ * hooke's law for it.
  * 
  * @author Jerry Li & Bill Muensterman
  */
-public class Spring extends Sprite {
+public class Spring {
 
     /**
      * Default image for spring
@@ -29,6 +37,11 @@ public class Spring extends Sprite {
     private Mass myEnd;
     private double myLength;
     private double myK;
+    // stretch beyond the rest length, as of the last force evaluation
+    private double myStrain;
+    // kernel that has this spring packed, and where, or null
+    private SpringKernel myKernel;
+    private int mySlot = -1;
 
     /**
      * Constructs spring based on masses its connected to, length, and k values
@@ -39,11 +52,11 @@ public class Spring extends Sprite {
      * @param kVal      hooke's constant
      */
     public Spring (Mass start, Mass end, double length, double kVal) {
-        super(DEFUALT_IMAGE, getCenter(start, end), getSize(start, end));
         myStart = start;
         myEnd = end;
         myLength = length;
         myK = kVal;
+        updateStrain();
     }
 
     /**
@@ -53,6 +66,36 @@ public class Spring extends Sprite {
      */
     public void setLength (double x) {
         myLength = x;
+        if (myKernel != null) {
+            myKernel.setLength(mySlot, x);
+        }
+    }
+
+    /**
+     * Returns hooke's constant
+     * 
+     * @return myK
+     */
+    public double getK () {
+        return myK;
+    }
+
+    /**
+     * Returns the mass at the start of the spring
+     * 
+     * @return myStart
+     */
+    public Mass getStart () {
+        return myStart;
+    }
+
+    /**
+     * Returns the mass at the end of the spring
+     * 
+     * @return myEnd
+     */
+    public Mass getEnd () {
+        return myEnd;
     }
 
     /**
@@ -64,45 +107,103 @@ public class Spring extends Sprite {
         return myLength;
     }
 
+    /**
+     * Returns how far the spring is stretched beyond its rest length
+     * (negative when squeezed), as of the last time hooke's law was applied
+     * or updateStrain was called
+     * 
+     * @return
+     */
+    public double getStrain () {
+        return (myKernel != null) ? myKernel.getStrain(mySlot) : myStrain;
+    }
+
+    /**
+     * Measure the strain again from where the masses are now, for when
+     * they were moved without applying hooke's law.
+     */
+    public void updateStrain () {
+        setStrain(myStart.distance(myEnd) - myLength);
+    }
+
     /**
      * Paint spring on canvas
      * 
      * @param pen       graphics pen
      */
-    @Override
     public void paint (Graphics2D pen) {
-        pen.setColor(getColor(myStart.distance(myEnd) - myLength));
+        pen.setColor(getColor(getStrain()));
         pen.drawLine((int) myStart.getX(), (int) myStart.getY(), (int) myEnd.getX(),
                      (int) myEnd.getY());
     }
 
     /**
-     * Applies hookes law to mass.
-     * Updates sprite values based on attached masses
+     * Changes the rest length for the passing of time, then applies hookes
+     * law to mass.
      * 
      * @param elapsedTime       frames
      * @param bounds            size of simulation
      */
-    @Override
     public void update (double elapsedTime, Dimension bounds) {
-        double dx = myStart.getX() - myEnd.getX();
-        double dy = myStart.getY() - myEnd.getY();
+        updateLength(elapsedTime);
+        applyHookesLaw();
+    }
+
+    /**
+     * Changes the rest length for the passing of time. Plain springs keep
+     * their length.
+     * 
+     * @param elapsedTime       length of the step
+     */
+    public void updateLength (double elapsedTime) {
+
+    }
+
+    /**
+     * Applies hookes law to the attached masses, using their current positions.
+     * Can be called several times per step by integrators.
+     */
+    public void applyHookesLaw () {
+        MassStore startMasses = myStart.getStore();
+        MassStore endMasses = myEnd.getStore();
+        int start = myStart.getIndex();
+        int end = myEnd.getIndex();
+        double dx = startMasses.getX(start) - endMasses.getX(end);
+        double dy = startMasses.getY(start) - endMasses.getY(end);
         // apply hooke's law to each attached mass
-        Vector force = new Vector(Vector.angleBetween(dx, dy),
-                                  myK * (myLength - Vector.distanceBetween(dx, dy)));
-        myStart.applyForce(force);
-        force.negate();
-        myEnd.applyForce(force);
-        // update sprite values based on attached masses
-        setCenter(getCenter(myStart, myEnd));
-        setSize(getSize(myStart, myEnd));
-        setVelocity(Vector.angleBetween(dx, dy), 0);
+        double distance = CartesianVector.length(dx, dy);
+        setStrain(distance - myLength);
+        double magnitude = myK * (myLength - distance);
+        double forceX = (distance == 0) ? magnitude : magnitude * dx / distance;
+        double forceY = (distance == 0) ? 0 : magnitude * dy / distance;
+        startMasses.applyForce(start, forceX, forceY);
+        endMasses.applyForce(end, -forceX, -forceY);
+    }
+
+    /**
+     * Returns true if this spring pushes its masses by hooke's law as
+     * written here, so a SpringKernel may do it instead.
+     */
+    boolean usesHookesLaw () {
+        return true;
+    }
+
+    /**
+     * Pack this spring into the given slot of the given kernel, or with
+     * a null kernel, go back to keeping its own values.
+     */
+    void bind (SpringKernel kernel, int slot) {
+        if (myKernel != null) {
+            myStrain = myKernel.getStrain(mySlot);
+        }
+        myKernel = kernel;
+        mySlot = slot;
     }
 
     /**
-     * Convenience method.
+     * Returns the color for the given strain.
      * 
-     * @param diff
+     * @param diff      the strain
      */
     protected Color getColor (double diff) {
         if (Vector.fuzzyEquals(diff, 0)) {
@@ -116,28 +217,6 @@ public class Spring extends Sprite {
         }
     }
 
-    /**
-     * Calculate center of spring
-     * 
-     * @param start
-     * @param end
-     * @return new Location((start.getX() + end.getX()) / 2, (start.getY() + end.getY()) / 2);
-     */
-    private static Location getCenter (Mass start, Mass end) {
-        return new Location((start.getX() + end.getX()) / 2, (start.getY() + end.getY()) / 2);
-    }
-
-    /**
-     * Compute size of spring
-     * 
-     * @param start
-     * @param end
-     * @return new Dimension((int)start.distance(end), IMAGE_HEIGHT);
-     */
-    private static Dimension getSize (Mass start, Mass end) {
-        return new Dimension((int) start.distance(end), IMAGE_HEIGHT);
-    }
-    
     /**
      * set parameters
      * @param start     mass to set
@@ -150,5 +229,19 @@ public class Spring extends Sprite {
         myEnd = end;
         myLength = length;
         myK = kVal;
+        if (myKernel != null) {
+            myKernel.update(mySlot, this);
+        }
+        updateStrain();
+    }
+
+    /**
+     * Remember the given strain, in the kernel's arrays if packed.
+     */
+    private void setStrain (double strain) {
+        myStrain = strain;
+        if (myKernel != null) {
+            myKernel.setStrain(mySlot, strain);
+        }
     }
 }
@@ -0,0 +1,176 @@
+package simulation;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Splits springs into batches ("colors") so that no two springs in a
+ * batch share a mass. All springs of one batch can then push their
+ * masses at the same time without locks, and running the batches one
+ * after another gives every mass the same sum, in the same order, no
+ * matter how many threads are used.
+ * 
+ * Colors are handed out greedily. Springs on masses that already have
+ * more than MAX_COLORS springs go into one last batch that is always
+ * run on a single thread.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class SpringColoring {
+    /**
+     * Most batches that may run in parallel
+     */
+    public static final int MAX_COLORS = Long.SIZE;
+
+    // spring indices, grouped by color
+    private int[] myOrder = new int[0];
+    // where each color starts in myOrder, plus one end marker
+    private int[] myBatchStart = new int[MAX_COLORS + 2];
+    private int myBatchCount;
+    // true if the last batch holds springs that could not be colored
+    private boolean myLeftoverBatch;
+    // scratch: colors already used at each mass, and color of each spring
+    private long[] myUsedColors = new long[0];
+    private int[] myColors = new int[0];
+    private int[] myCounts = new int[MAX_COLORS + 1];
+
+    /**
+     * Work out the batches for the given springs, whose masses live in
+     * the given store.
+     * 
+     * @param springs       the springs
+     * @param masses        the store holding their masses
+     */
+    public void color (List<Spring> springs, MassStore masses) {
+        int n = springs.size();
+        if (myOrder.length < n) {
+            myOrder = new int[n];
+            myColors = new int[n];
+        }
+        if (myUsedColors.length < masses.size()) {
+            myUsedColors = new long[masses.size()];
+        }
+        Arrays.fill(myUsedColors, 0, masses.size(), 0);
+        Arrays.fill(myCounts, 0);
+        for (int s = 0; s < n; s++) {
+            Spring spring = springs.get(s);
+            int start = indexIn(spring.getStart(), masses);
+            int end = indexIn(spring.getEnd(), masses);
+            long used = 0;
+            if (start >= 0) {
+                used |= myUsedColors[start];
+            }
+            if (end >= 0) {
+                used |= myUsedColors[end];
+            }
+            int color = Long.numberOfTrailingZeros(~used);
+            if (color < MAX_COLORS) {
+                long bit = 1L << color;
+                if (start >= 0) {
+                    myUsedColors[start] |= bit;
+                }
+                if (end >= 0) {
+                    myUsedColors[end] |= bit;
+                }
+            }
+            myColors[s] = color;
+            myCounts[color]++;
+        }
+        myLeftoverBatch = myCounts[MAX_COLORS] > 0;
+        // lay the springs out color by color, keeping list order within a color
+        myBatchCount = 0;
+        int offset = 0;
+        for (int c = 0; c <= MAX_COLORS; c++) {
+            if (myCounts[c] > 0) {
+                myBatchStart[myBatchCount++] = offset;
+                offset += myCounts[c];
+            }
+            myCounts[c] = offset - myCounts[c];
+        }
+        myBatchStart[myBatchCount] = offset;
+        for (int s = 0; s < n; s++) {
+            myOrder[myCounts[myColors[s]]++] = s;
+        }
+    }
+
+    /**
+     * Returns the number of batches
+     * 
+     * @return
+     */
+    public int getBatchCount () {
+        return myBatchCount;
+    }
+
+    /**
+     * Returns where the given batch starts in the order
+     * 
+     * @param batch     batch number
+     * @return
+     */
+    public int getBatchStart (int batch) {
+        return myBatchStart[batch];
+    }
+
+    /**
+     * Returns where the given batch ends (exclusive) in the order
+     * 
+     * @param batch     batch number
+     * @return
+     */
+    public int getBatchEnd (int batch) {
+        return myBatchStart[batch + 1];
+    }
+
+    /**
+     * Returns true if the springs of the given batch may run at the same time
+     * 
+     * @param batch     batch number
+     * @return
+     */
+    public boolean isIndependent (int batch) {
+        return !(myLeftoverBatch && batch == myBatchCount - 1);
+    }
+
+    /**
+     * Returns the index in the colored list of the spring at the given
+     * position of the order
+     * 
+     * @param position  position in the order
+     * @return
+     */
+    public int getSpringIndex (int position) {
+        return myOrder[position];
+    }
+
+    /**
+     * Apply hooke's law for the springs at positions [start, end) of the order.
+     * 
+     * @param springs   the springs that were colored
+     * @param start     first position
+     * @param end       one past the last position
+     */
+    public void applyHookesLaw (List<Spring> springs, int start, int end) {
+        for (int k = start; k < end; k++) {
+            springs.get(myOrder[k]).applyHookesLaw();
+        }
+    }
+
+    /**
+     * Apply hooke's law for every spring on this thread, batch by batch, so
+     * the result matches a parallel run exactly.
+     * 
+     * @param springs   the springs that were colored
+     */
+    public void applyHookesLaw (List<Spring> springs) {
+        applyHookesLaw(springs, 0, myBatchStart[myBatchCount]);
+    }
+
+    /**
+     * Returns the mass's index if it lives in the store, otherwise -1.
+     */
+    private static int indexIn (Mass mass, MassStore masses) {
+        return masses.contains(mass) ? mass.getIndex() : -1;
+    }
+}
@@ -0,0 +1,27 @@
+package simulation;
+
+import java.util.List;
+
+
+/**
+ * An integrator that applies some of an assembly's springs itself, in
+ * its own way, rather than leaving all of them to the ForceEvaluator.
+ * Before each step the assembly asks it which springs the evaluator
+ * should still apply.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public interface SpringIntegrator extends Integrator {
+
+    /**
+     * Get ready for a step of the given assembly, and return the springs
+     * the force evaluator should apply. Returning the same list as last
+     * time, when nothing changed, saves the assembly work.
+     * 
+     * @param assembly      the assembly about to step
+     * @param changed       true if springs were added or removed since the last call
+     * @param elapsedTime   length of the step
+     * @return springs the force evaluator applies
+     */
+    List<Spring> prepare (Assembly assembly, boolean changed, double elapsedTime);
+}
@@ -0,0 +1,260 @@
+package simulation;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Applies hooke's law for many springs at once from parallel primitive
+ * arrays, the way MassStore keeps the masses. Each spring's mass indices,
+ * rest length, hooke's constant and strain are copied into arrays (the
+ * spring is "packed"), so a pass over the springs reads no spring or
+ * mass objects at all.
+ *
+ * Springs are done a block at a time in three loops: the first gathers
+ * the pulls between the masses, the second works out the forces, and the
+ * third adds them to the masses. Only the first and last jump around the
+ * mass arrays; the second has no branches and walks its arrays in order,
+ * so the compiler is free to do several springs at once.
+ *
+ * A packed spring keeps its arrays up to date: setLength and
+ * setParameters write through, and getStrain reads back. Springs whose
+ * masses are not in the store, and springs that do not push by hooke's
+ * law, are not packed and apply themselves in their turn. Forces are
+ * added in the same order, with the same arithmetic, as calling
+ * applyHookesLaw on each spring, so the results are the same to the bit.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class SpringKernel {
+    /**
+     * Springs done by each of the three loops before the next one runs
+     */
+    public static final int BLOCK_SIZE = 256;
+
+    // scratch space for a block, one per thread so batches can be split up
+    private static final ThreadLocal<Block> BLOCKS = new ThreadLocal<Block>() {
+        @Override
+        protected Block initialValue () {
+            return new Block();
+        }
+    };
+
+    private MassStore myMasses;
+    private int myStructureCount = -1;
+    private boolean myStale = true;
+    // springs in batch order; packed ones are bound to their slot
+    private Spring[] mySprings = new Spring[0];
+    private int myCount;
+    // springs that apply themselves, or null where packed
+    private Spring[] myOwnLaw = new Spring[0];
+    private int[] myStart = new int[0];
+    private int[] myEnd = new int[0];
+    private double[] myLength = new double[0];
+    private double[] myK = new double[0];
+    private double[] myStrain = new double[0];
+
+    /**
+     * Pack the given springs, whose masses live in the given store, in
+     * the order of their batches.
+     *
+     * @param springs       the springs
+     * @param coloring      batches worked out for these springs
+     * @param masses        the store holding their masses
+     */
+    public void pack (List<Spring> springs, SpringColoring coloring, MassStore masses) {
+        unpack();
+        int n = springs.size();
+        if (mySprings.length < n) {
+            mySprings = new Spring[n];
+            myOwnLaw = new Spring[n];
+            myStart = new int[n];
+            myEnd = new int[n];
+            myLength = new double[n];
+            myK = new double[n];
+            myStrain = new double[n];
+        }
+        for (int k = 0; k < n; k++) {
+            Spring spring = springs.get(coloring.getSpringIndex(k));
+            mySprings[k] = spring;
+            if (spring.usesHookesLaw() &&
+                masses.contains(spring.getStart()) && masses.contains(spring.getEnd())) {
+                myOwnLaw[k] = null;
+                myStart[k] = spring.getStart().getIndex();
+                myEnd[k] = spring.getEnd().getIndex();
+                myLength[k] = spring.getLength();
+                myK[k] = spring.getK();
+                myStrain[k] = spring.getStrain();
+                spring.bind(this, k);
+            }
+            else {
+                // the loops still run over this slot, harmlessly, so keep it in range
+                myOwnLaw[k] = spring;
+                myStart[k] = 0;
+                myEnd[k] = 0;
+                myLength[k] = 0;
+                myK[k] = 0;
+            }
+        }
+        myCount = n;
+        myMasses = masses;
+        myStructureCount = masses.getStructureCount();
+        myStale = false;
+    }
+
+    /**
+     * Returns true if the springs must be packed again before they are
+     * applied: they never were, masses came or went, or a packed spring
+     * was given masses the arrays cannot hold.
+     *
+     * @return
+     */
+    public boolean isStale () {
+        return myStale || myMasses.getStructureCount() != myStructureCount;
+    }
+
+    /**
+     * Returns the number of springs, packed or not
+     *
+     * @return
+     */
+    public int size () {
+        return myCount;
+    }
+
+    /**
+     * Apply hooke's law for every spring on this thread.
+     */
+    public void applyHookesLaw () {
+        applyHookesLaw(0, myCount);
+    }
+
+    /**
+     * Apply hooke's law for the springs at positions [start, end) of the
+     * batch order, on this thread. Ranges of one batch may be done on
+     * different threads at the same time.
+     *
+     * @param start     first position
+     * @param end       one past the last position
+     */
+    public void applyHookesLaw (int start, int end) {
+        Block block = BLOCKS.get();
+        double[] x = myMasses.getPositionX();
+        double[] y = myMasses.getPositionY();
+        double[] forceX = myMasses.getForceX();
+        double[] forceY = myMasses.getForceY();
+        double[] mass = myMasses.getMassValues();
+        double[] dx = block.myDX;
+        double[] dy = block.myDY;
+        double[] distance = block.myDistance;
+        double[] magnitude = block.myMagnitude;
+        double[] pushX = block.myPushX;
+        double[] pushY = block.myPushY;
+        for (int first = start; first < end; first += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, end - first);
+            for (int j = 0; j < n; j++) {
+                int s = first + j;
+                dx[j] = x[myStart[s]] - x[myEnd[s]];
+                dy[j] = y[myStart[s]] - y[myEnd[s]];
+            }
+            for (int j = 0; j < n; j++) {
+                int s = first + j;
+                double d = Math.sqrt(dx[j] * dx[j] + dy[j] * dy[j]);
+                double m = myK[s] * (myLength[s] - d);
+                distance[j] = d;
+                magnitude[j] = m;
+                myStrain[s] = d - myLength[s];
+                pushX[j] = m * dx[j] / d;
+                pushY[j] = m * dy[j] / d;
+            }
+            for (int j = 0; j < n; j++) {
+                int s = first + j;
+                if (myOwnLaw[s] != null) {
+                    myOwnLaw[s].applyHookesLaw();
+                    continue;
+                }
+                double fx = pushX[j];
+                double fy = pushY[j];
+                if (distance[j] == 0) {
+                    // masses on top of each other are pushed apart along x
+                    fx = magnitude[j];
+                    fy = 0;
+                }
+                int a = myStart[s];
+                int b = myEnd[s];
+                // masses with negative mass ignore forces
+                if (mass[a] >= 0) {
+                    forceX[a] += fx;
+                    forceY[a] += fy;
+                }
+                if (mass[b] >= 0) {
+                    forceX[b] -= fx;
+                    forceY[b] -= fy;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the strain of the spring in the given slot
+     */
+    double getStrain (int slot) {
+        return myStrain[slot];
+    }
+
+    /**
+     * Change the strain of the spring in the given slot
+     */
+    void setStrain (int slot, double strain) {
+        myStrain[slot] = strain;
+    }
+
+    /**
+     * Change the rest length of the spring in the given slot
+     */
+    void setLength (int slot, double length) {
+        myLength[slot] = length;
+    }
+
+    /**
+     * Copy everything about the given spring into its slot again, or
+     * mark the springs stale if its masses cannot be packed.
+     */
+    void update (int slot, Spring spring) {
+        if (myMasses.contains(spring.getStart()) && myMasses.contains(spring.getEnd())) {
+            myStart[slot] = spring.getStart().getIndex();
+            myEnd[slot] = spring.getEnd().getIndex();
+            myLength[slot] = spring.getLength();
+            myK[slot] = spring.getK();
+        }
+        else {
+            myStale = true;
+        }
+    }
+
+    /**
+     * Let every packed spring go back to keeping its own values.
+     */
+    private void unpack () {
+        for (int k = 0; k < myCount; k++) {
+            if (myOwnLaw[k] == null) {
+                mySprings[k].bind(null, -1);
+            }
+        }
+        Arrays.fill(mySprings, 0, myCount, null);
+        Arrays.fill(myOwnLaw, 0, myCount, null);
+        myCount = 0;
+    }
+
+    /**
+     * Scratch space for one block of springs.
+     */
+    private static class Block {
+        private final double[] myDX = new double[BLOCK_SIZE];
+        private final double[] myDY = new double[BLOCK_SIZE];
+        private final double[] myDistance = new double[BLOCK_SIZE];
+        private final double[] myMagnitude = new double[BLOCK_SIZE];
+        private final double[] myPushX = new double[BLOCK_SIZE];
+        private final double[] myPushY = new double[BLOCK_SIZE];
+    }
+}
@@ -0,0 +1,117 @@
+package simulation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Layout of trajectory files, which hold the positions of every mass at
+ * many steps of a run (see TrajectoryRecorder and TrajectoryReader). All
+ * fixed-size numbers are little endian. A file is a header and then the
+ * frames, one after another:
+ *
+ * <PRE>
+ * header   int magic, int version, double quantum, int keyframe interval
+ * frame    int length of the rest of the frame, long step, byte keyframe,
+ *          int assemblies, int masses of each assembly,
+ *          then per mass varint x, varint y
+ * </PRE>
+ *
+ * Positions are rounded to a multiple of the quantum and kept as whole
+ * numbers of quanta. A keyframe holds those numbers as they are; any
+ * other frame holds the change from the frame before it, which is small
+ * for masses that move a little each step and so takes a byte or two.
+ * Varints are zigzag encoded, seven bits to a byte, low bits first. A
+ * frame length of 0 marks the end of the frames.
+ *
+ * Masses are in the order of their assembly's store, leaving out the
+ * mouse's mass, which is the order they were loaded in.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public final class TrajectoryFormat {
+    /**
+     * First four bytes of every file: "SPRT"
+     */
+    public static final int MAGIC = 0x54525053;
+    /**
+     * Version written by this code
+     */
+    public static final int VERSION = 1;
+    /**
+     * Byte order of every fixed-size number
+     */
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    /**
+     * Usual file extension
+     */
+    public static final String EXTENSION = ".spt";
+
+    /**
+     * Size of the header in bytes
+     */
+    public static final int HEADER_SIZE = 2 * Integer.BYTES + Double.BYTES + Integer.BYTES;
+    /**
+     * Size of a frame before its assemblies' mass counts, in bytes
+     */
+    public static final int FRAME_HEADER_SIZE = Integer.BYTES + Long.BYTES + 1 + Integer.BYTES;
+    /**
+     * Most bytes a varint takes
+     */
+    public static final int MAX_VARINT_SIZE = 10;
+
+    private static final int VARINT_BITS = 7;
+    private static final int VARINT_MASK = 0x7f;
+    private static final int VARINT_MORE = 0x80;
+
+    private TrajectoryFormat () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * Returns the most bytes a frame with the given numbers of assemblies
+     * and masses can take.
+     */
+    public static long maxFrameSize (int assemblies, long masses) {
+        return FRAME_HEADER_SIZE + (long) assemblies * Integer.BYTES +
+               masses * 2 * MAX_VARINT_SIZE;
+    }
+
+    /**
+     * Returns the given position as a whole number of quanta.
+     */
+    public static long quantize (double position, double quantum) {
+        return Math.round(position / quantum);
+    }
+
+    /**
+     * Write the given number as a zigzag varint.
+     */
+    static void putVarint (ByteBuffer out, long value) {
+        long zigzag = (value << 1) ^ (value >> (Long.SIZE - 1));
+        while ((zigzag & ~VARINT_MASK) != 0) {
+            out.put((byte) ((zigzag & VARINT_MASK) | VARINT_MORE));
+            zigzag >>>= VARINT_BITS;
+        }
+        out.put((byte) zigzag);
+    }
+
+    /**
+     * Read a number written by putVarint.
+     */
+    static long getVarint (ByteBuffer in) {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift >= Long.SIZE) {
+                throw new IllegalArgumentException("varint is too long");
+            }
+            b = in.get();
+            zigzag |= (long) (b & VARINT_MASK) << shift;
+            shift += VARINT_BITS;
+        }
+        while ((b & VARINT_MORE) != 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
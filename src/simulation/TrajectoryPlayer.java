@@ -0,0 +1,229 @@
+package simulation;
+
+import java.io.IOException;
+import java.util.List;
+
+
+/**
+ * Plays a recorded trajectory back on assemblies loaded from the model
+ * it was recorded from, moving their masses to where the recording says
+ * they were instead of simulating them. Play can go at any speed, in
+ * either direction, and jump to any frame; only the frames shown are
+ * read from the file.
+ *
+ * The assemblies should not also be in an engine, which would move them
+ * too.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class TrajectoryPlayer {
+    /**
+     * Fastest speed, in times real time
+     */
+    public static final double MAX_SPEED = 64;
+
+    private TrajectoryReader myReader;
+    private List<Assembly> myAssemblies;
+    private double myTimestep;
+    // step of the simulation being shown, between frames as time passes
+    private double myStep;
+    private double mySpeed = 1;
+    private boolean myPaused;
+    private int myFrame = -1;
+
+    /**
+     * Play the given recording on the given assemblies, which must have
+     * the masses it was recorded from, in the same order.
+     *
+     * @param reader        the recording
+     * @param assemblies    one assembly for each recorded
+     * @param timestep      length of a step when it was recorded
+     * @throws IOException if the first frame cannot be read
+     * @throws ModelFormatException if the assemblies do not match the recording
+     */
+    public TrajectoryPlayer (TrajectoryReader reader, List<Assembly> assemblies,
+                             double timestep) throws IOException {
+        if (reader.getFrameCount() == 0) {
+            throw new IllegalArgumentException("nothing was recorded");
+        }
+        myReader = reader;
+        myAssemblies = assemblies;
+        myTimestep = timestep;
+        seek(0);
+    }
+
+    /**
+     * Returns the assemblies being played
+     *
+     * @return
+     */
+    public List<Assembly> getAssemblies () {
+        return myAssemblies;
+    }
+
+    /**
+     * Returns the number of frames recorded
+     *
+     * @return
+     */
+    public int getFrameCount () {
+        return myReader.getFrameCount();
+    }
+
+    /**
+     * Returns the frame being shown
+     *
+     * @return
+     */
+    public int getFrame () {
+        return myFrame;
+    }
+
+    /**
+     * Returns the step of the simulation the shown frame was recorded at
+     *
+     * @return
+     */
+    public long getStep () {
+        return myReader.getStep(myFrame);
+    }
+
+    /**
+     * Returns how fast play goes, in times real time; negative plays backward
+     *
+     * @return
+     */
+    public double getSpeed () {
+        return mySpeed;
+    }
+
+    /**
+     * Change how fast play goes.
+     *
+     * @param speed     times real time; negative plays backward
+     */
+    public void setSpeed (double speed) {
+        mySpeed = Math.max(-MAX_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    /**
+     * Play in the other direction at the same speed.
+     */
+    public void reverse () {
+        mySpeed = -mySpeed;
+    }
+
+    /**
+     * Returns true if play is stopped at the shown frame
+     *
+     * @return
+     */
+    public boolean isPaused () {
+        return myPaused;
+    }
+
+    /**
+     * Stop or carry on playing.
+     */
+    public void togglePause () {
+        myPaused = !myPaused;
+    }
+
+    /**
+     * Move play along by the given amount of real time, stopping at
+     * either end of the recording.
+     *
+     * @param elapsedTime   seconds since the last update
+     * @throws IOException if the frame cannot be read
+     */
+    public void update (double elapsedTime) throws IOException {
+        if (myPaused) {
+            return;
+        }
+        double first = myReader.getStep(0);
+        double last = myReader.getStep(getFrameCount() - 1);
+        myStep += mySpeed * elapsedTime / myTimestep;
+        if (myStep <= first || myStep >= last) {
+            myStep = Math.max(first, Math.min(last, myStep));
+            myPaused = true;
+        }
+        show(myReader.findFrame((long) Math.floor(myStep)));
+    }
+
+    /**
+     * Show the given frame.
+     *
+     * @param frame     index of the frame, kept within the recording
+     * @throws IOException if the frame cannot be read
+     */
+    public void seek (int frame) throws IOException {
+        int f = Math.max(0, Math.min(getFrameCount() - 1, frame));
+        myStep = myReader.getStep(f);
+        show(f);
+    }
+
+    /**
+     * Show the frame the given fraction of the way through the recording.
+     *
+     * @param fraction  0 for the first frame, 1 for the last
+     * @throws IOException if the frame cannot be read
+     */
+    public void scrub (double fraction) throws IOException {
+        seek((int) Math.round(fraction * (getFrameCount() - 1)));
+    }
+
+    /**
+     * Stop playing and show the frame the given number of frames away.
+     *
+     * @param frames    frames to move; negative moves backward
+     * @throws IOException if the frame cannot be read
+     */
+    public void stepFrames (int frames) throws IOException {
+        myPaused = true;
+        seek(myFrame + frames);
+    }
+
+    /**
+     * Close the recording.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close () throws IOException {
+        myReader.close();
+    }
+
+    /**
+     * Move the masses to where they are in the given frame.
+     */
+    private void show (int frame) throws IOException {
+        if (frame == myFrame) {
+            return;
+        }
+        myReader.read(frame);
+        if (myReader.getAssemblyCount() != myAssemblies.size()) {
+            throw new ModelFormatException("trajectory", "frame " + frame + " has " +
+                                           myReader.getAssemblyCount() + " assemblies, not " +
+                                           myAssemblies.size());
+        }
+        int n = 0;
+        for (int a = 0; a < myAssemblies.size(); a++) {
+            MassStore masses = myAssemblies.get(a).getMasses();
+            int count = myReader.getMassCount(a);
+            if (count != masses.size()) {
+                throw new ModelFormatException("trajectory", "frame " + frame + " has " + count +
+                                               " masses in assembly " + a + ", not " +
+                                               masses.size());
+            }
+            for (int i = 0; i < count; i++) {
+                masses.setPosition(i, myReader.getX(n), myReader.getY(n));
+                n++;
+            }
+            // no forces are worked out, so the springs' colors are measured here
+            List<Spring> springs = myAssemblies.get(a).getSprings();
+            for (int i = 0; i < springs.size(); i++) {
+                springs.get(i).updateStrain();
+            }
+        }
+        myFrame = frame;
+    }
+}
@@ -0,0 +1,349 @@
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * Reads the frames of a trajectory file (see TrajectoryFormat) in any
+ * order. Opening the file only walks the frame lengths to find where
+ * each frame starts; the positions are decoded when a frame is asked
+ * for, through a window of the file that is mapped as needed, so files
+ * far bigger than memory can be read.
+ *
+ * Reading the frame after the last one read only decodes that frame,
+ * and reading the frame before it only takes that frame's changes back
+ * off, so playing in either direction is cheap. Any other frame is
+ * decoded from the keyframe before it, which is at most one keyframe
+ * interval away.
+ *
+ * A file cut short, say by a crash while recording, reads as the whole
+ * frames it has.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class TrajectoryReader {
+    /**
+     * Bytes of the file mapped at a time
+     */
+    public static final int WINDOW_SIZE = 16 << 20;
+
+    private static final int DEFAULT_FRAMES = 64;
+
+    private String mySource;
+    private RandomAccessFile myFile;
+    private FileChannel myChannel;
+    private long myFileSize;
+    private double myQuantum;
+    private int myKeyframeInterval;
+    // where each frame starts, its step, and whether it is a keyframe
+    private long[] myOffsets = new long[DEFAULT_FRAMES];
+    private long[] mySteps = new long[DEFAULT_FRAMES];
+    private boolean[] myKeyframes = new boolean[DEFAULT_FRAMES];
+    private int myFrameCount;
+    // part of the file mapped now
+    private ByteBuffer myWindow;
+    private long myWindowStart;
+    // positions of the last frame decoded, in quanta
+    private long[] myX = new long[0];
+    private long[] myY = new long[0];
+    private int[] myCounts = new int[0];
+    private int myAssemblies;
+    private int myMassCount;
+    private int myCurrent = -1;
+
+    /**
+     * Open the given trajectory file.
+     *
+     * @param file      the file to read
+     * @throws IOException if the file cannot be read
+     * @throws ModelFormatException if the file is not a trajectory
+     */
+    public TrajectoryReader (File file) throws IOException {
+        mySource = file.getName();
+        myFile = new RandomAccessFile(file, "r");
+        myChannel = myFile.getChannel();
+        myFileSize = myChannel.size();
+        try {
+            ByteBuffer header = window(0, TrajectoryFormat.HEADER_SIZE);
+            if (header.getInt() != TrajectoryFormat.MAGIC) {
+                throw new ModelFormatException(mySource, "not a trajectory file");
+            }
+            int version = header.getInt();
+            if (version != TrajectoryFormat.VERSION) {
+                throw new ModelFormatException(mySource, "unsupported version " + version);
+            }
+            myQuantum = header.getDouble();
+            myKeyframeInterval = header.getInt();
+            indexFrames();
+        }
+        catch (IOException | RuntimeException e) {
+            myFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of frames
+     *
+     * @return
+     */
+    public int getFrameCount () {
+        return myFrameCount;
+    }
+
+    /**
+     * Returns the step the given frame was recorded at
+     *
+     * @param frame     index of the frame
+     * @return
+     */
+    public long getStep (int frame) {
+        checkFrame(frame);
+        return mySteps[frame];
+    }
+
+    /**
+     * Returns the index of the last frame recorded at or before the given
+     * step, or 0 if there is none.
+     *
+     * @param step      step of the simulation
+     * @return
+     */
+    public int findFrame (long step) {
+        int found = Arrays.binarySearch(mySteps, 0, myFrameCount, step);
+        return (found >= 0) ? found : Math.max(0, -found - 2);
+    }
+
+    /**
+     * Returns the size of each position step, in pixels
+     *
+     * @return
+     */
+    public double getQuantum () {
+        return myQuantum;
+    }
+
+    /**
+     * Returns the most frames between keyframes
+     *
+     * @return
+     */
+    public int getKeyframeInterval () {
+        return myKeyframeInterval;
+    }
+
+    /**
+     * Decode the given frame, so its counts and positions can be read.
+     *
+     * @param frame     index of the frame
+     * @throws IOException if the file cannot be read
+     */
+    public void read (int frame) throws IOException {
+        checkFrame(frame);
+        if (frame == myCurrent) {
+            return;
+        }
+        int from = frame;
+        while (!myKeyframes[from]) {
+            from--;
+        }
+        if (myCurrent > frame && myCurrent - frame <= frame - from &&
+            from == keyframeBefore(myCurrent)) {
+            // a frame's changes can be taken back off, which is quicker
+            // than coming forward from the keyframe
+            while (myCurrent > frame) {
+                decode(myCurrent, -1);
+            }
+            return;
+        }
+        if (myCurrent >= from && myCurrent < frame) {
+            // carry on from the frame last read
+            from = myCurrent + 1;
+        }
+        for (int f = from; f <= frame; f++) {
+            decode(f, 1);
+        }
+    }
+
+    /**
+     * Returns the number of assemblies in the frame last read
+     *
+     * @return
+     */
+    public int getAssemblyCount () {
+        return myAssemblies;
+    }
+
+    /**
+     * Returns the number of masses of the given assembly in the frame
+     * last read
+     *
+     * @param assembly  index of the assembly
+     * @return
+     */
+    public int getMassCount (int assembly) {
+        return myCounts[assembly];
+    }
+
+    /**
+     * Returns the number of masses of all assemblies in the frame last read
+     *
+     * @return
+     */
+    public int getMassCount () {
+        return myMassCount;
+    }
+
+    /**
+     * Returns the x coordinate of a mass in the frame last read, counting
+     * the masses of all assemblies one after another
+     *
+     * @param index     index of the mass
+     * @return
+     */
+    public double getX (int index) {
+        return myX[index] * myQuantum;
+    }
+
+    /**
+     * Returns the y coordinate of a mass in the frame last read, counting
+     * the masses of all assemblies one after another
+     *
+     * @param index     index of the mass
+     * @return
+     */
+    public double getY (int index) {
+        return myY[index] * myQuantum;
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close () throws IOException {
+        myWindow = null;
+        myFile.close();
+    }
+
+    /**
+     * Find where every whole frame starts.
+     */
+    private void indexFrames () throws IOException {
+        long offset = TrajectoryFormat.HEADER_SIZE;
+        while (offset + TrajectoryFormat.FRAME_HEADER_SIZE <= myFileSize) {
+            ByteBuffer in = window(offset, TrajectoryFormat.FRAME_HEADER_SIZE);
+            int length = in.getInt();
+            long end = offset + Integer.BYTES + length;
+            if (length <= 0 || end > myFileSize) {
+                break;
+            }
+            if (myFrameCount == myOffsets.length) {
+                int n = myFrameCount * 2;
+                myOffsets = Arrays.copyOf(myOffsets, n);
+                mySteps = Arrays.copyOf(mySteps, n);
+                myKeyframes = Arrays.copyOf(myKeyframes, n);
+            }
+            myOffsets[myFrameCount] = offset;
+            mySteps[myFrameCount] = in.getLong();
+            myKeyframes[myFrameCount] = in.get() != 0;
+            if (myFrameCount == 0 && !myKeyframes[0]) {
+                throw new ModelFormatException(mySource, "first frame is not a keyframe");
+            }
+            myFrameCount++;
+            offset = end;
+        }
+    }
+
+    /**
+     * Returns the index of the last keyframe at or before the given frame.
+     */
+    private int keyframeBefore (int frame) {
+        while (!myKeyframes[frame]) {
+            frame--;
+        }
+        return frame;
+    }
+
+    /**
+     * Decode the given frame on top of the one before it, or, with a
+     * direction of -1, take the changes of the given frame, which must be
+     * the one last read and not a keyframe, back off to get the one
+     * before it.
+     */
+    private void decode (int frame, int direction) throws IOException {
+        long offset = myOffsets[frame];
+        int length = window(offset, Integer.BYTES).getInt();
+        ByteBuffer in = window(offset + Integer.BYTES, length);
+        try {
+            in.getLong();
+            boolean keyframe = in.get() != 0;
+            int assemblies = in.getInt();
+            if (assemblies < 0) {
+                throw new IllegalArgumentException("negative number of assemblies");
+            }
+            if (myCounts.length < assemblies) {
+                myCounts = new int[assemblies];
+            }
+            int total = 0;
+            for (int a = 0; a < assemblies; a++) {
+                myCounts[a] = in.getInt();
+                total += myCounts[a];
+            }
+            if (!keyframe && (assemblies != myAssemblies || total != myMassCount)) {
+                throw new IllegalArgumentException("frame " + frame +
+                                                   " does not match the one before it");
+            }
+            if (myX.length < total) {
+                myX = Arrays.copyOf(myX, total);
+                myY = Arrays.copyOf(myY, total);
+            }
+            for (int i = 0; i < total; i++) {
+                long dx = TrajectoryFormat.getVarint(in);
+                long dy = TrajectoryFormat.getVarint(in);
+                myX[i] = keyframe ? dx : myX[i] + direction * dx;
+                myY[i] = keyframe ? dy : myY[i] + direction * dy;
+            }
+            myAssemblies = assemblies;
+            myMassCount = total;
+            myCurrent = (direction > 0) ? frame : frame - 1;
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e) {
+            myCurrent = -1;
+            throw new ModelFormatException(mySource, "frame " + frame + " is damaged");
+        }
+    }
+
+    /**
+     * Returns a buffer over the given part of the file, mapping another
+     * window of the file if the current one does not cover it.
+     */
+    private ByteBuffer window (long offset, int length) throws IOException {
+        if (offset + length > myFileSize) {
+            throw new ModelFormatException(mySource, "ends too soon");
+        }
+        if (myWindow == null || offset < myWindowStart ||
+            offset + length > myWindowStart + myWindow.capacity()) {
+            long size = Math.min(Math.max(WINDOW_SIZE, length), myFileSize - offset);
+            myWindow = myChannel.map(FileChannel.MapMode.READ_ONLY, offset, size)
+                                .order(TrajectoryFormat.ORDER);
+            myWindowStart = offset;
+        }
+        int start = (int) (offset - myWindowStart);
+        ByteBuffer view = myWindow.duplicate().order(TrajectoryFormat.ORDER);
+        view.limit(start + length).position(start);
+        return view;
+    }
+
+    private void checkFrame (int frame) {
+        if (frame < 0 || frame >= myFrameCount) {
+            throw new IndexOutOfBoundsException("no frame " + frame);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * Records the positions of every mass of the engine it observes every so
+ * many steps into a trajectory file (see TrajectoryFormat), for looking
+ * at a run afterwards without simulating it again.
+ *
+ * The step loop only copies the positions into one of a few frame
+ * buffers and queues it; a writer thread rounds and encodes the frames
+ * and appends them to the file through a memory map, a segment at a
+ * time. If the writer falls so far behind that every buffer is queued,
+ * frames are dropped rather than making the simulation wait. A dropped
+ * frame leaves a gap in the steps but does not spoil the frames after it.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class TrajectoryRecorder implements SimulationObserver {
+    /**
+     * Default size of each position step, in pixels
+     */
+    public static final double DEFAULT_QUANTUM = 1.0 / 64;
+    /**
+     * Default most frames between keyframes
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+    /**
+     * Default number of frames that can wait for the writer
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 8;
+    /**
+     * Bytes of the file mapped at a time
+     */
+    public static final int SEGMENT_SIZE = 16 << 20;
+
+    // tells the writer to stop
+    private static final Frame END = new Frame();
+
+    private long myInterval;
+    private double myQuantum;
+    private int myKeyframeInterval;
+    private BlockingQueue<Frame> myFree;
+    private BlockingQueue<Frame> myQueued;
+    private int myDroppedCount;
+    private boolean myClosed;
+
+    // used only by the writer thread until it is done
+    private Thread myWriter;
+    private RandomAccessFile myFile;
+    private FileChannel myChannel;
+    private MappedByteBuffer mySegment;
+    private long mySegmentStart;
+    private long[] myLastX = new long[0];
+    private long[] myLastY = new long[0];
+    private int[] myLastCounts = new int[0];
+    private int myLastAssemblies = -1;
+    private int myFramesSinceKeyframe;
+    private volatile int myRecordedCount;
+    private volatile IOException myFailure;
+
+    /**
+     * Record every given number of steps into the given file, with the
+     * default precision and queue.
+     *
+     * @param file      the file to write, replaced if it exists
+     * @param interval  steps between frames
+     * @throws IOException if the file cannot be created
+     */
+    public TrajectoryRecorder (File file, long interval) throws IOException {
+        this(file, interval, DEFAULT_QUANTUM, DEFAULT_KEYFRAME_INTERVAL, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Record every given number of steps into the given file.
+     *
+     * @param file              the file to write, replaced if it exists
+     * @param interval          steps between frames
+     * @param quantum           positions are rounded to a multiple of this
+     * @param keyframeInterval  most frames between keyframes, which are
+     *                          bigger but can be read on their own
+     * @param queueSize         number of frames that can wait for the writer
+     * @throws IOException if the file cannot be created
+     */
+    public TrajectoryRecorder (File file, long interval, double quantum,
+                               int keyframeInterval, int queueSize) throws IOException {
+        if (interval < 1 || keyframeInterval < 1 || queueSize < 1 || !(quantum > 0)) {
+            throw new IllegalArgumentException("interval, keyframe interval, queue size, " +
+                                               "and quantum must be positive");
+        }
+        myInterval = interval;
+        myQuantum = quantum;
+        myKeyframeInterval = keyframeInterval;
+        myFree = new ArrayBlockingQueue<Frame>(queueSize);
+        // one more, so the end marker always fits
+        myQueued = new ArrayBlockingQueue<Frame>(queueSize + 1);
+        for (int i = 0; i < queueSize; i++) {
+            myFree.add(new Frame());
+        }
+
+        myFile = new RandomAccessFile(file, "rw");
+        myFile.setLength(0);
+        myChannel = myFile.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(TrajectoryFormat.HEADER_SIZE)
+                                      .order(TrajectoryFormat.ORDER);
+        header.putInt(TrajectoryFormat.MAGIC);
+        header.putInt(TrajectoryFormat.VERSION);
+        header.putDouble(quantum);
+        header.putInt(keyframeInterval);
+        header.flip();
+        while (header.hasRemaining()) {
+            myChannel.write(header);
+        }
+        mapSegment(TrajectoryFormat.HEADER_SIZE, 0);
+
+        myWriter = new Thread(new Runnable() {
+            @Override
+            public void run () {
+                write();
+            }
+        }, "trajectory writer");
+        myWriter.setDaemon(true);
+        myWriter.start();
+    }
+
+    /**
+     * Returns the number of frames written to the file so far
+     *
+     * @return
+     */
+    public int getRecordedCount () {
+        return myRecordedCount;
+    }
+
+    /**
+     * Returns the number of frames dropped because the writer was behind
+     *
+     * @return
+     */
+    public int getDroppedCount () {
+        return myDroppedCount;
+    }
+
+    /**
+     * Record a frame when one is due.
+     *
+     * @param engine    the engine that stepped
+     */
+    @Override
+    public void simulationStepped (SimulationEngine engine) {
+        if (engine.getStepCount() % myInterval == 0) {
+            record(engine);
+        }
+    }
+
+    /**
+     * Copy the positions of every mass now and queue them for the writer,
+     * unless it is too far behind.
+     *
+     * @param engine    the engine, between steps
+     * @return true if the frame was queued
+     */
+    public boolean record (SimulationEngine engine) {
+        Frame frame = myClosed ? null : myFree.poll();
+        if (frame == null) {
+            myDroppedCount++;
+            return false;
+        }
+        List<Assembly> assemblies = engine.getAssemblies();
+        int total = 0;
+        for (int a = 0; a < assemblies.size(); a++) {
+            total += assemblies.get(a).getMasses().size();
+        }
+        frame.setSize(engine.getStepCount(), assemblies.size(), total);
+        int n = 0;
+        for (int a = 0; a < assemblies.size(); a++) {
+            Assembly assembly = assemblies.get(a);
+            MassStore masses = assembly.getMasses();
+            double[] x = masses.getPositionX();
+            double[] y = masses.getPositionY();
+            int start = n;
+            for (int i = 0; i < masses.size(); i++) {
+                if (!assembly.isTransient(masses.getMass(i))) {
+                    frame.myX[n] = x[i];
+                    frame.myY[n] = y[i];
+                    n++;
+                }
+            }
+            frame.myCounts[a] = n - start;
+        }
+        frame.myMassCount = n;
+        myQueued.add(frame);
+        return true;
+    }
+
+    /**
+     * Write the frames still queued, stop the writer, and close the file.
+     *
+     * @throws IOException if any frame could not be written
+     */
+    public void close () throws IOException {
+        if (myClosed) {
+            return;
+        }
+        myClosed = true;
+        myQueued.add(END);
+        boolean interrupted = false;
+        while (myWriter.isAlive()) {
+            try {
+                myWriter.join();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            // the writer is done, so its position is the end of the frames
+            long end = mySegmentStart + mySegment.position();
+            mySegment = null;
+            myChannel.truncate(end);
+        }
+        finally {
+            myFile.close();
+        }
+        if (myFailure != null) {
+            throw myFailure;
+        }
+    }
+
+    /**
+     * Encode queued frames until told to stop. Runs on the writer thread.
+     */
+    private void write () {
+        while (true) {
+            Frame frame;
+            try {
+                frame = myQueued.take();
+            }
+            catch (InterruptedException e) {
+                continue;
+            }
+            if (frame == END) {
+                return;
+            }
+            if (myFailure == null) {
+                try {
+                    encode(frame);
+                    myRecordedCount++;
+                }
+                catch (IOException e) {
+                    myFailure = e;
+                }
+            }
+            myFree.add(frame);
+        }
+    }
+
+    /**
+     * Append one frame to the file.
+     */
+    private void encode (Frame frame) throws IOException {
+        boolean keyframe = myFramesSinceKeyframe >= myKeyframeInterval - 1 ||
+                           !sameCounts(frame);
+        long size = TrajectoryFormat.maxFrameSize(frame.myAssemblies, frame.myMassCount);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("frame is too big to record");
+        }
+        if (mySegment.remaining() < size) {
+            mapSegment(mySegmentStart + mySegment.position(), (int) size);
+        }
+        if (keyframe) {
+            myFramesSinceKeyframe = 0;
+            rememberCounts(frame);
+        }
+        else {
+            myFramesSinceKeyframe++;
+        }
+
+        ByteBuffer out = mySegment;
+        int start = out.position();
+        // length, filled in at the end
+        out.putInt(0);
+        out.putLong(frame.myStep);
+        out.put((byte) (keyframe ? 1 : 0));
+        out.putInt(frame.myAssemblies);
+        for (int a = 0; a < frame.myAssemblies; a++) {
+            out.putInt(frame.myCounts[a]);
+        }
+        double[] x = frame.myX;
+        double[] y = frame.myY;
+        for (int i = 0; i < frame.myMassCount; i++) {
+            long qx = TrajectoryFormat.quantize(x[i], myQuantum);
+            long qy = TrajectoryFormat.quantize(y[i], myQuantum);
+            TrajectoryFormat.putVarint(out, keyframe ? qx : qx - myLastX[i]);
+            TrajectoryFormat.putVarint(out, keyframe ? qy : qy - myLastY[i]);
+            myLastX[i] = qx;
+            myLastY[i] = qy;
+        }
+        out.putInt(start, out.position() - start - Integer.BYTES);
+    }
+
+    /**
+     * Returns true if the frame has the same assemblies and masses as the
+     * one before it, so it can be written as changes from that one.
+     */
+    private boolean sameCounts (Frame frame) {
+        if (frame.myAssemblies != myLastAssemblies) {
+            return false;
+        }
+        for (int a = 0; a < frame.myAssemblies; a++) {
+            if (frame.myCounts[a] != myLastCounts[a]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rememberCounts (Frame frame) {
+        myLastAssemblies = frame.myAssemblies;
+        if (myLastCounts.length < frame.myAssemblies) {
+            myLastCounts = new int[frame.myAssemblies];
+        }
+        System.arraycopy(frame.myCounts, 0, myLastCounts, 0, frame.myAssemblies);
+        if (myLastX.length < frame.myMassCount) {
+            myLastX = new long[frame.myMassCount];
+            myLastY = new long[frame.myMassCount];
+        }
+    }
+
+    /**
+     * Map the file from the given offset on, with room for at least the
+     * given number of bytes.
+     */
+    private void mapSegment (long start, int room) throws IOException {
+        mySegment = myChannel.map(FileChannel.MapMode.READ_WRITE, start,
+                                  Math.max(SEGMENT_SIZE, room));
+        mySegment.order(TrajectoryFormat.ORDER);
+        mySegmentStart = start;
+    }
+
+    /**
+     * Positions of every mass at one step, waiting to be written.
+     */
+    private static class Frame {
+        private long myStep;
+        private int myAssemblies;
+        private int myMassCount;
+        private int[] myCounts = new int[0];
+        private double[] myX = new double[0];
+        private double[] myY = new double[0];
+
+        /**
+         * Make room for the given numbers of assemblies and masses.
+         */
+        public void setSize (long step, int assemblies, int masses) {
+            myStep = step;
+            myAssemblies = assemblies;
+            if (myCounts.length < assemblies) {
+                myCounts = new int[assemblies];
+            }
+            if (myX.length < masses) {
+                myX = new double[masses];
+                myY = new double[masses];
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package simulation;
+
+import java.util.Arrays;
+
+
+/**
+ * Velocity Verlet: moves by the current velocity and acceleration, then
+ * averages the old and new accelerations into the velocity. Second order
+ * and symplectic, so it allows larger steps on spring meshes than Euler.
+ * 
+ * Forces are evaluated at both ends of the step, so changes made between
+ * steps (mouse, toggled forces) are always seen.
+ * 
+ * @author Jerry Li & Bill Muensterman
+ */
+public class VelocityVerlet implements Integrator {
+    // acceleration at the start of the step
+    private double[] myAccelerationX = new double[0];
+    private double[] myAccelerationY = new double[0];
+
+    @Override
+    public void step (MassStore masses, ForceEvaluator forces, double elapsedTime) {
+        int n = masses.size();
+        if (myAccelerationX.length < n) {
+            myAccelerationX = Arrays.copyOf(myAccelerationX, n);
+            myAccelerationY = Arrays.copyOf(myAccelerationY, n);
+        }
+        double[] x = masses.getPositionX();
+        double[] y = masses.getPositionY();
+        double[] vx = masses.getVelocityX();
+        double[] vy = masses.getVelocityY();
+        double[] fx = masses.getForceX();
+        double[] fy = masses.getForceY();
+        double[] inverseMass = masses.getInverseMass();
+        int[] flags = masses.getFlags();
+        double halfStep = elapsedTime / 2;
+
+        forces.evaluate(masses);
+        masses.beginMoments();
+        for (int i = 0; i < n; i++) {
+            if ((flags[i] & MassStore.FIXED) == 0) {
+                myAccelerationX[i] = fx[i] * inverseMass[i];
+                myAccelerationY[i] = fy[i] * inverseMass[i];
+                x[i] += (vx[i] + myAccelerationX[i] * halfStep) * elapsedTime;
+                y[i] += (vy[i] + myAccelerationY[i] * halfStep) * elapsedTime;
+            }
+            masses.addMoment(i);
+        }
+        masses.endMoments();
+        forces.evaluate(masses);
+        for (int i = 0; i < n; i++) {
+            if ((flags[i] & MassStore.FIXED) != 0) {
+                continue;
+            }
+            vx[i] += (myAccelerationX[i] + fx[i] * inverseMass[i]) * halfStep;
+            vy[i] += (myAccelerationY[i] + fy[i] * inverseMass[i]) * halfStep;
+        }
+    }
+}
@@ -2,7 +2,6 @@ package simulation;
 
 import java.awt.Dimension;
 import util.Force;
-import util.Vector;
 
 /**
  * Details a class that applies a resistant 
@@ -29,17 +28,43 @@ public class Viscosity extends Force {
     /**
      * Applies the force to mass
      * @param bounds        size of simulation
-     * @param m         the mass
+     * @param masses        the mass store
+     * @param index         index of the mass
      */
     @Override
-    public void update (Dimension bounds, Mass m) {
-        double viscosity = m.getAcceleration().getMagnitude() * myViscosityValue;
-        Vector newAcceleration = new Vector(m.getAcceleration().getDirection(),
-                                            m.getAcceleration().getMagnitude() - viscosity);
-
-        m.changeAcceleration(newAcceleration);
+    public void update (Dimension bounds, MassStore masses, int index) {
+        // shrinking the magnitude keeps the direction, so scale each component
+        double remaining = 1 - myViscosityValue;
+        masses.getForceX()[index] *= remaining;
+        masses.getForceY()[index] *= remaining;
+    }
+    
+    /**
+     * Applies the force to a range of masses
+     * @param bounds        size of simulation
+     * @param masses        the mass store
+     * @param start         first index
+     * @param end           one past the last index
+     */
+    @Override
+    public void update (Dimension bounds, MassStore masses, int start, int end) {
+        double remaining = 1 - myViscosityValue;
+        double[] forceX = masses.getForceX();
+        double[] forceY = masses.getForceY();
+        for (int i = start; i < end; i++) {
+            forceX[i] *= remaining;
+            forceY[i] *= remaining;
+        }
     }
     
+    /**
+     * Returns true if viscosity is on
+     * @return
+     */
+    public boolean isViscosityOn () {
+        return myViscosityValue != 0;
+    }
+
     /**
      * toggles viscosity
      */
@@ -1,6 +1,7 @@
 package simulation;
 
 import java.awt.Dimension;
+import util.CartesianVector;
 import util.Force;
 import util.Vector;
 
@@ -12,6 +13,9 @@ import util.Vector;
  */
 public class WallRepulsion extends Force {
     
+    private static final double HALF_WIDTH = Mass.DEFAULT_SIZE.width / 2;
+    private static final double HALF_HEIGHT = Mass.DEFAULT_SIZE.height / 2;
+
     private final int myDownDirectionN = 270;
     private final int myUpDirection = 90;
     private final int myRightDirection = 0;
@@ -23,6 +27,12 @@ public class WallRepulsion extends Force {
     private double myRightWallRepulsionFactor;
     private double myLeftWallRepulsionFactor;
     private double myBottomWallRepulsionFactor;
+
+    // unit pushes away from each wall, worked out once from the directions above
+    private final CartesianVector myLeftPush = new CartesianVector(new Vector(myRightDirection, 1));
+    private final CartesianVector myRightPush = new CartesianVector(new Vector(myLeftDirection, 1));
+    private final CartesianVector myTopPush = new CartesianVector(new Vector(myDownDirectionN, 1));
+    private final CartesianVector myBottomPush = new CartesianVector(new Vector(myUpDirection, 1));
     
     /**
      * Constructs an object that applies force
@@ -41,11 +51,12 @@ public class WallRepulsion extends Force {
     /**
      * Updates state of object for each mass
      * @param bounds    size of simulation
-     * @param m         the mass object
+     * @param masses    the mass store
+     * @param index     index of the mass
      */
     @Override
-    public void update (Dimension bounds, Mass m) {
-        repel(bounds, m);
+    public void update (Dimension bounds, MassStore masses, int index) {
+        repel(bounds, masses, index);
     }
     
     /**
@@ -54,25 +65,41 @@ public class WallRepulsion extends Force {
      * @param m         mass object
      */
     public void wallRepulsion (Dimension bounds, Mass m) {
+        wallRepulsion(bounds, m.getStore(), m.getIndex());
+    }
 
-        double leftProximity = proximityToLeftWall(bounds, m);
-        double rightProximity = proximityToRightWall(bounds, m);
-        double topProximity = proximityToTopWall(bounds, m);
-        double bottomProximity = proximityToBottomWall(bounds, m);
+    /**
+     * Constructs appropriate vectors
+     * @param bounds    size of simulation
+     * @param masses    the mass store
+     * @param index     index of the mass
+     */
+    public void wallRepulsion (Dimension bounds, MassStore masses, int index) {
 
-        Vector leftRepulsion =
-                leftRepulsion(calculateRepulsion(leftProximity, myLeftWallRepulsionFactor));
-        Vector rightRepulsion =
-                rightRepulsion(calculateRepulsion(rightProximity, myRightWallRepulsionFactor));
-        Vector topRepulsion =
-                topRepulsion(calculateRepulsion(topProximity, myTopWallRepulsionFactor));
-        Vector bottomRepulsion =
-                bottomRepulsion(calculateRepulsion(bottomProximity, myBottomWallRepulsionFactor));
+        double leftProximity = proximityToLeftWall(bounds, masses, index);
+        double rightProximity = proximityToRightWall(bounds, masses, index);
+        double topProximity = proximityToTopWall(bounds, masses, index);
+        double bottomProximity = proximityToBottomWall(bounds, masses, index);
 
-        m.getAcceleration().sum(leftRepulsion);
-        m.getAcceleration().sum(rightRepulsion);
-        m.getAcceleration().sum(topRepulsion);
-        m.getAcceleration().sum(bottomRepulsion);
+        double leftRepulsion = calculateRepulsion(leftProximity, myLeftWallRepulsionFactor);
+        double rightRepulsion = calculateRepulsion(rightProximity, myRightWallRepulsionFactor);
+        double topRepulsion = calculateRepulsion(topProximity, myTopWallRepulsionFactor);
+        double bottomRepulsion =
+                calculateRepulsion(bottomProximity, myBottomWallRepulsionFactor);
+
+        // the pushes are per-frame pulls of the original program
+        double scale = FrameUnits.force(1, masses.getMassValue(index));
+        // added straight to the force, so masses that ignore forces are pushed too
+        double[] forceX = masses.getForceX();
+        double[] forceY = masses.getForceY();
+        forceX[index] += scale * (leftRepulsion * myLeftPush.getXChange() +
+                                  rightRepulsion * myRightPush.getXChange() +
+                                  topRepulsion * myTopPush.getXChange() +
+                                  bottomRepulsion * myBottomPush.getXChange());
+        forceY[index] += scale * (leftRepulsion * myLeftPush.getYChange() +
+                                  rightRepulsion * myRightPush.getYChange() +
+                                  topRepulsion * myTopPush.getYChange() +
+                                  bottomRepulsion * myBottomPush.getYChange());
 
     }
     
@@ -82,11 +109,23 @@ public class WallRepulsion extends Force {
      * @param m                 mass object
      */
     public void repel (Dimension bounds, Mass m) {
-        if ((m.getLeft() > 0) &&
-            (m.getRight() < bounds.width) &&
-            (m.getTop() > 0) &&
-            (m.getBottom() < bounds.height)) {
-            wallRepulsion(bounds, m);
+        repel(bounds, m.getStore(), m.getIndex());
+    }
+
+    /**
+     * applies repel force to the mass at the given index
+     * @param bounds            size of simulation
+     * @param masses            the mass store
+     * @param index             index of the mass
+     */
+    public void repel (Dimension bounds, MassStore masses, int index) {
+        double x = masses.getX(index);
+        double y = masses.getY(index);
+        if ((x - HALF_WIDTH > 0) &&
+            (x + HALF_WIDTH < bounds.width) &&
+            (y - HALF_HEIGHT > 0) &&
+            (y + HALF_HEIGHT < bounds.height)) {
+            wallRepulsion(bounds, masses, index);
         }
     }
 
@@ -94,44 +133,48 @@ public class WallRepulsion extends Force {
      * Gets distance from left wall
      * 
      * @param bounds    size of simulation
-     * @param m         mass object
+     * @param masses    the mass store
+     * @param index     index of the mass
      * @return 
      */
-    public double proximityToLeftWall (Dimension bounds, Mass m) {
-        return bounds.width - m.getLeft();
+    public double proximityToLeftWall (Dimension bounds, MassStore masses, int index) {
+        return bounds.width - (masses.getX(index) - HALF_WIDTH);
     }
 
     /**
      * Gets distance from right wall
      * 
      * @param bounds    size of simulation
-     * @param m         mass object
+     * @param masses    the mass store
+     * @param index     index of the mass
      * @return 
      */
-    public double proximityToRightWall (Dimension bounds, Mass m) {
-        return m.getRight();
+    public double proximityToRightWall (Dimension bounds, MassStore masses, int index) {
+        return masses.getX(index) + HALF_WIDTH;
     }
 
     /**
      * Gets distance from top wall
      * 
      * @param bounds    size of simulation
-     * @param m         mass object
+     * @param masses    the mass store
+     * @param index     index of the mass
      * @return  
      */
-    public double proximityToTopWall (Dimension bounds, Mass m) {
-        return bounds.height - m.getBottom();
+    public double proximityToTopWall (Dimension bounds, MassStore masses, int index) {
+        return bounds.height - (masses.getY(index) + HALF_HEIGHT);
     }
 
     /**
      * Gets distance from bottom wall
      * 
      * @param bounds    size of simulation
-     * @param m         mass of object
+     * @param masses    the mass store
+     * @param index     index of the mass
      * @return 
      */
-    public double proximityToBottomWall (Dimension bounds, Mass m) {
-        return m.getBottom();
+    public double proximityToBottomWall (Dimension bounds, MassStore masses, int index) {
+        return masses.getY(index) + HALF_HEIGHT;
     }
 
     /**
@@ -185,6 +228,38 @@ public class WallRepulsion extends Force {
         return repulsion;
     }
     
+    /**
+     * Returns true if the top wall repels
+     * @return
+     */
+    public boolean isTopRepulsionOn () {
+        return myTopWallRepulsionFactor != 0;
+    }
+
+    /**
+     * Returns true if the right wall repels
+     * @return
+     */
+    public boolean isRightRepulsionOn () {
+        return myRightWallRepulsionFactor != 0;
+    }
+
+    /**
+     * Returns true if the left wall repels
+     * @return
+     */
+    public boolean isLeftRepulsionOn () {
+        return myLeftWallRepulsionFactor != 0;
+    }
+
+    /**
+     * Returns true if the bottom wall repels
+     * @return
+     */
+    public boolean isBottomRepulsionOn () {
+        return myBottomWallRepulsionFactor != 0;
+    }
+
     /**
      * toggle  top wallrepulsion
      */
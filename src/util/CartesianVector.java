@@ -0,0 +1,152 @@
+package util;
+
+
+/**
+ * This class represents a mathematical vector by its change in x and y.
+ *
+ * Unlike Vector, which keeps a direction and magnitude, adding, scaling,
+ * and reading components here needs no trigonometry, so it is the form
+ * used inside the simulation step. Convert to a Vector only when an
+ * angle is actually needed.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class CartesianVector {
+    // change in x and y, in pixels
+    private double myDX;
+    private double myDY;
+
+    /**
+     * Create a zero vector, i.e., with no magnitude.
+     */
+    public CartesianVector () {
+        this(0, 0);
+    }
+
+    /**
+     * Create a vector with the given changes in x and y.
+     */
+    public CartesianVector (double dx, double dy) {
+        set(dx, dy);
+    }
+
+    /**
+     * Create a vector that points the same way as the given polar vector.
+     */
+    public CartesianVector (Vector polar) {
+        this(polar.getXChange(), polar.getYChange());
+    }
+
+    /**
+     * Reset this vector to zero.
+     */
+    public void reset () {
+        set(0, 0);
+    }
+
+    /**
+     * Sets this vector's changes in x and y.
+     */
+    public void set (double dx, double dy) {
+        myDX = dx;
+        myDY = dy;
+    }
+
+    /**
+     * Returns the change in only the X direction represented by this vector.
+     */
+    public double getXChange () {
+        return myDX;
+    }
+
+    /**
+     * Returns the change in only the Y direction represented by this vector.
+     */
+    public double getYChange () {
+        return myDY;
+    }
+
+    /**
+     * Returns this vector's magnitude (in pixels).
+     */
+    public double getMagnitude () {
+        return length(myDX, myDY);
+    }
+
+    /**
+     * Adds the given vector to this vector.
+     */
+    public void sum (CartesianVector other) {
+        sum(other.myDX, other.myDY);
+    }
+
+    /**
+     * Adds the given changes in x and y to this vector.
+     */
+    public void sum (double dx, double dy) {
+        myDX += dx;
+        myDY += dy;
+    }
+
+    /**
+     * Scales this vector's magnitude by the given change value.
+     */
+    public void scale (double change) {
+        myDX *= change;
+        myDY *= change;
+    }
+
+    /**
+     * Turns this vector to point in the opposite direction.
+     */
+    public void negate () {
+        scale(-1);
+    }
+
+    /**
+     * Returns this vector as a direction and magnitude.
+     */
+    public Vector toVector () {
+        return toVector(myDX, myDY);
+    }
+
+    /**
+     * Returns this vector's values formatted as a string.
+     */
+    @Override
+    public String toString () {
+        return String.format("(%1.2f, %1.2f)", myDX, myDY);
+    }
+
+    /**
+     * Returns the length represented by the given dx and dy
+     */
+    public static double length (double dx, double dy) {
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Returns the x part of a vector of the given magnitude that points along dx and dy.
+     *
+     * A zero-length direction points along the x axis, matching Vector's angle of 0.
+     */
+    public static double alongX (double dx, double dy, double magnitude) {
+        double length = length(dx, dy);
+        return (length == 0) ? magnitude : magnitude * dx / length;
+    }
+
+    /**
+     * Returns the y part of a vector of the given magnitude that points along dx and dy.
+     */
+    public static double alongY (double dx, double dy, double magnitude) {
+        double length = length(dx, dy);
+        return (length == 0) ? 0 : magnitude * dy / length;
+    }
+
+    /**
+     * Returns the given dx and dy as a direction and magnitude.
+     */
+    public static Vector toVector (double dx, double dy) {
+        return new Vector(Vector.angleBetween(dx, dy), length(dx, dy));
+    }
+}
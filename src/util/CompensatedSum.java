@@ -0,0 +1,44 @@
+package util;
+
+
+/**
+ * A running sum that keeps track of the rounding error of each addition
+ * (Kahan-Babuska / Neumaier summation), so adding up a million terms is
+ * as accurate as adding up a handful.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class CompensatedSum {
+    private double mySum;
+    // low-order bits lost from mySum so far
+    private double myCompensation;
+
+    /**
+     * Reset the sum to zero.
+     */
+    public void reset () {
+        mySum = 0;
+        myCompensation = 0;
+    }
+
+    /**
+     * Adds the given value to the sum.
+     */
+    public void add (double value) {
+        double total = mySum + value;
+        if (Math.abs(mySum) >= Math.abs(value)) {
+            myCompensation += (mySum - total) + value;
+        }
+        else {
+            myCompensation += (value - total) + mySum;
+        }
+        mySum = total;
+    }
+
+    /**
+     * Returns the sum of everything added since the last reset.
+     */
+    public double getSum () {
+        return mySum + myCompensation;
+    }
+}
@@ -2,6 +2,7 @@ package util;
 
 import java.awt.Dimension;
 import simulation.Mass;
+import simulation.MassStore;
 
 /**
  * Details an abstract class that is an
@@ -21,13 +22,48 @@ public abstract class Force {
     
     /**
      * The important method. Updates the force.
-     * Empty because each "force" subclass has its own 
-     * update method
+     * Convenience for a single mass handle
      * @param bounds    size of simulation
      * @param m         mass object
      */
     public void update (Dimension bounds, Mass m) {
-        
+        update(bounds, m.getStore(), m.getIndex());
+    }
+
+    /**
+     * Updates the force on one mass of a store.
+     * Empty because each "force" subclass has its own 
+     * update method
+     * @param bounds    size of simulation
+     * @param masses    the mass store
+     * @param index     index of the mass in the store
+     */
+    public void update (Dimension bounds, MassStore masses, int index) {
+
+    }
+
+    /**
+     * Updates the force on every mass of a store
+     * @param bounds    size of simulation
+     * @param masses    the mass store
+     */
+    public void update (Dimension bounds, MassStore masses) {
+        update(bounds, masses, 0, masses.size());
+    }
+
+    /**
+     * Updates the force on the masses with indices from start up to
+     * (not including) end. Forces only touch the mass they push, so
+     * different ranges may be updated at the same time
+     * @param bounds    size of simulation
+     * @param masses    the mass store
+     * @param start     first index
+     * @param end       one past the last index
+     */
+    public void update (Dimension bounds, MassStore masses, int start, int end) {
+        for (int i = start; i < end; i++) {
+            update(bounds, masses, i);
+        }
     }
 
 }
@@ -0,0 +1,116 @@
+package util;
+
+import java.util.Arrays;
+
+
+/**
+ * A map from int keys to objects that keeps its keys unboxed, in an open
+ * addressed table, so looking up a key creates no garbage.
+ *
+ * Null values cannot be stored; get returns null for missing keys.
+ *
+ * @author Jerry Li & Bill Muensterman
+ * @param <V> type of the values
+ */
+public class IntMap<V> {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] myKeys;
+    private Object[] myValues;
+    private int mySize;
+
+    /**
+     * Create an empty map.
+     */
+    public IntMap () {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty map with room for about the given number of keys.
+     */
+    public IntMap (int expected) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < 2 * expected) {
+            capacity *= 2;
+        }
+        myKeys = new int[capacity];
+        myValues = new Object[capacity];
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     */
+    public int size () {
+        return mySize;
+    }
+
+    /**
+     * Returns the value for the given key, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get (int key) {
+        return (V) myValues[slot(key)];
+    }
+
+    /**
+     * Returns true if the given key has a value.
+     */
+    public boolean containsKey (int key) {
+        return myValues[slot(key)] != null;
+    }
+
+    /**
+     * Sets the value for the given key, replacing any it had.
+     */
+    public void put (int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null value for key " + key);
+        }
+        int slot = slot(key);
+        if (myValues[slot] == null) {
+            if (2 * (mySize + 1) > myKeys.length) {
+                grow();
+                slot = slot(key);
+            }
+            mySize++;
+            myKeys[slot] = key;
+        }
+        myValues[slot] = value;
+    }
+
+    /**
+     * Remove every key.
+     */
+    public void clear () {
+        Arrays.fill(myValues, null);
+        mySize = 0;
+    }
+
+    /**
+     * Returns the slot holding the given key, or the empty slot it would go in.
+     */
+    private int slot (int key) {
+        int mask = myKeys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (myValues[slot] != null && myKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow () {
+        int[] keys = myKeys;
+        Object[] values = myValues;
+        myKeys = new int[keys.length * 2];
+        myValues = new Object[values.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                int slot = slot(keys[i]);
+                myKeys[slot] = keys[i];
+                myValues[slot] = values[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package util;
+
+import java.util.Arrays;
+
+
+/**
+ * A square matrix that is mostly zeros, kept in compressed sparse row
+ * (CSR) form: for each row, the columns of its nonzero entries in order
+ * and their values. Which entries can be nonzero is fixed when the matrix
+ * is made; their values can be cleared and filled again as often as
+ * needed, which allocates nothing.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class SparseMatrix {
+    private int mySize;
+    // entries of row r are myColumns[myRowStart[r]] to myColumns[myRowStart[r + 1] - 1]
+    private int[] myRowStart;
+    private int[] myColumns;
+    private double[] myValues;
+
+    /**
+     * Create a matrix with the given entries, all zero.
+     *
+     * @param rowStart  where each row's entries start, with one more at the
+     *                  end for where the last row's end
+     * @param columns   column of each entry, in order within each row
+     */
+    public SparseMatrix (int[] rowStart, int[] columns) {
+        mySize = rowStart.length - 1;
+        myRowStart = rowStart;
+        myColumns = columns;
+        myValues = new double[rowStart[mySize]];
+    }
+
+    /**
+     * Returns the number of rows, which is also the number of columns
+     */
+    public int size () {
+        return mySize;
+    }
+
+    /**
+     * Returns the number of entries that can be nonzero
+     */
+    public int getEntryCount () {
+        return myValues.length;
+    }
+
+    /**
+     * Returns where the entry at the given row and column is kept, or -1
+     * if it is always zero. Meant for working out ahead of time where
+     * values go, so filling the matrix needs no searching.
+     */
+    public int indexOf (int row, int column) {
+        int index = Arrays.binarySearch(myColumns, myRowStart[row], myRowStart[row + 1], column);
+        return (index >= 0) ? index : -1;
+    }
+
+    /**
+     * Adds to the entry kept at the given index.
+     */
+    public void add (int index, double value) {
+        myValues[index] += value;
+    }
+
+    /**
+     * Returns the entry at the given row and column.
+     */
+    public double get (int row, int column) {
+        int index = indexOf(row, column);
+        return (index >= 0) ? myValues[index] : 0;
+    }
+
+    /**
+     * Sets every entry to zero.
+     */
+    public void clear () {
+        Arrays.fill(myValues, 0);
+    }
+
+    /**
+     * Puts the diagonal in the given array.
+     */
+    public void getDiagonal (double[] result) {
+        for (int r = 0; r < mySize; r++) {
+            result[r] = get(r, r);
+        }
+    }
+
+    /**
+     * Puts this matrix times the given vector in the given result, which
+     * must be a different array.
+     */
+    public void multiply (double[] vector, double[] result) {
+        for (int r = 0; r < mySize; r++) {
+            double sum = 0;
+            for (int e = myRowStart[r]; e < myRowStart[r + 1]; e++) {
+                sum += myValues[e] * vector[myColumns[e]];
+            }
+            result[r] = sum;
+        }
+    }
+}
@@ -60,10 +60,10 @@ public abstract class Sprite {
      * Currently, moves by the current velocity.
      */
     public void update (double elapsedTime, Dimension bounds) {
-        // do not change original velocity
-        Vector v = new Vector(myVelocity);
-        v.scale(elapsedTime);
-        translate(v);
+        // scale a copy of the change, not the velocity itself
+        myCenter.setLocation(myCenter.getX() + myVelocity.getXChange() * elapsedTime,
+                             myCenter.getY() + myVelocity.getYChange() * elapsedTime);
+        resetBounds();
     }
 
     /**
@@ -241,7 +241,10 @@ public abstract class Sprite {
      * Returns rectangle that encloses this shape.
      */
     protected void resetBounds () {
-        myBounds = new Rectangle((int) getLeft(), (int) getTop(), mySize.width, mySize.height);
+        if (myBounds == null) {
+            myBounds = new Rectangle();
+        }
+        myBounds.setBounds((int) getLeft(), (int) getTop(), mySize.width, mySize.height);
     }
 
     /**
@@ -0,0 +1,73 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Hands the latest of a stream of values from one thread to another
+ * without locks and without either thread ever waiting. There are three
+ * buffers: the writer fills one, the reader reads another, and the third
+ * holds the latest one published. Publishing and picking up are single
+ * atomic swaps, so the reader always sees a whole value, never one being
+ * written, and the writer never writes one being read.
+ *
+ * Only one thread may write and only one may read.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class TripleBuffer<T> {
+    // set on the middle index when it holds something not yet read
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final Object[] myBuffers;
+    private final AtomicInteger myMiddle;
+    private int myBack;
+    private int myFront;
+
+    /**
+     * Use the given three buffers, which must be distinct.
+     *
+     * @param first     read until anything is published
+     * @param second    a spare buffer
+     * @param third     the first one written
+     */
+    public TripleBuffer (T first, T second, T third) {
+        myBuffers = new Object[] { first, second, third };
+        myFront = 0;
+        myMiddle = new AtomicInteger(1);
+        myBack = 2;
+    }
+
+    /**
+     * Returns the buffer the writer may fill. Only the writer may call this.
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer () {
+        return (T) myBuffers[myBack];
+    }
+
+    /**
+     * Make the buffer just filled the latest one, and give the writer
+     * another. Only the writer may call this.
+     */
+    public void publish () {
+        myBack = myMiddle.getAndSet(myBack | FRESH) & INDEX;
+    }
+
+    /**
+     * Returns the latest buffer published, which stays the reader's until
+     * the next call. Only the reader may call this.
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public T getReadBuffer () {
+        if ((myMiddle.get() & FRESH) != 0) {
+            myFront = myMiddle.getAndSet(myFront) & INDEX;
+        }
+        return (T) myBuffers[myFront];
+    }
+}
@@ -5,40 +5,66 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
 import javax.swing.Timer;
 import simulation.Assembly;
 import simulation.Factory;
 import simulation.Model;
+import simulation.ModelFormatException;
+import simulation.TrajectoryPlayer;
+import simulation.TrajectoryReader;
 
 
 /**
  * Creates an area of the screen in which the game will be drawn that supports:
  * <UL>
- * <LI>animation via the Timer
+ * <LI>animation via a SimulationLoop
  * <LI>mouse input via the MouseListener and MouseMotionListener
  * <LI>keyboard input via the KeyListener
  * </UL>
  * 
+ * The simulation runs on a thread of its own, not the event thread: the
+ * canvas posts input to the model as it comes, and paints whatever
+ * snapshot the model published last. How many steps it takes and how
+ * many frames it draws each second are set separately.
+ * 
+ * It can also play back a recorded trajectory instead, which moves the
+ * masses without simulating them. While playing, space pauses, left and
+ * right step a frame, up and down change the speed, R reverses, home and
+ * end jump to either end, clicking or dragging along the bar at the
+ * bottom jumps anywhere, and escape goes back to the simulation.
+ * 
  * @author Robert C Duvall
  */
 public class Canvas extends JComponent {
     /**
-     * animate 25 times per second if possible
+     * animate 60 times per second if possible
      */
-    public static final int FRAMES_PER_SECOND = 25;
+    public static final int FRAMES_PER_SECOND = 60;
+    /**
+     * simulate 240 steps per second
+     */
+    public static final int STEPS_PER_SECOND = 240;
     /**
      * better way to think about timed events (in milliseconds)
      */
@@ -58,6 +84,10 @@ public class Canvas extends JComponent {
     
     // default serialization ID
     private static final long serialVersionUID = 1L;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final int TIMELINE_HEIGHT = 12;
+    private static final int TEXT_MARGIN = 4;
+    private static final double SPEED_FACTOR = 2;
     private static final JFileChooser INPUT_CHOOSER =
             new JFileChooser(System.getProperties().getProperty("user.dir"));
     // input state
@@ -65,20 +95,40 @@ public class Canvas extends JComponent {
     private boolean myMouseClicked = false;
     private Assembly myAssembly;
 
-    // drives the animation
+    // drives the simulation
+    private SimulationLoop myLoop;
+    // drives play back, on the event thread
     private Timer myTimer;
+    private long myLastStepTime;
     // game to be animated
     private Model mySimulation;
     // input state
     private int myLastKeyPressed;
     private Point myLastMousePosition;
+    private Point myMouseLocation;
     private Set<Integer> myKeys;
+    private int myStepsPerSecond;
+    private int myFramesPerSecond;
+    // recording being played back instead of the simulation, if any
+    private TrajectoryPlayer myReplay;
 
     /**
      * Create a panel so that it knows its size
      * @param size      size of the simulation
      */
     public Canvas (Dimension size) {
+        this(size, STEPS_PER_SECOND, FRAMES_PER_SECOND);
+    }
+
+    /**
+     * Create a panel so that it knows its size and how often to step and draw
+     * @param size              size of the simulation
+     * @param stepsPerSecond    physics rate
+     * @param framesPerSecond   display rate
+     */
+    public Canvas (Dimension size, int stepsPerSecond, int framesPerSecond) {
+        myStepsPerSecond = stepsPerSecond;
+        myFramesPerSecond = framesPerSecond;
         // set size (a bit of a pain)
         setPreferredSize(size);
         setSize(size);
@@ -107,10 +157,20 @@ public class Canvas extends JComponent {
      */
     @Override
     public void paintComponent (Graphics pen) {
+        // only the part being repainted needs clearing
+        Rectangle clip = pen.getClipBounds();
         pen.setColor(Color.WHITE);
-        pen.fillRect(0, 0, getSize().width, getSize().height);
+        if (clip != null) {
+            pen.fillRect(clip.x, clip.y, clip.width, clip.height);
+        }
+        else {
+            pen.fillRect(0, 0, getSize().width, getSize().height);
+        }
         // first time needs to be special cased :(
-        if (mySimulation != null) {
+        if (myReplay != null) {
+            paintReplay((Graphics2D) pen);
+        }
+        else if (mySimulation != null) {
             mySimulation.paint((Graphics2D) pen);
         }
     }
@@ -136,12 +196,20 @@ public class Canvas extends JComponent {
         return myLastMousePosition;
     }
 
+    /**
+     * Returns where the mouse pointer last was over the canvas, pressed or not,
+     * or null if it has not been over the canvas yet.
+     */
+    public Point getMouseLocation () {
+        return myMouseLocation;
+    }
+
     /**
      * Start the animation. Creates a new
      * assembly. Creates a new model.
      */
     public void start () {
-        // create a timer to animate the canvas
+        // create a timer to animate play back
         myTimer = new Timer(DEFAULT_DELAY,
                             new ActionListener() {
                                 @Override
@@ -149,11 +217,12 @@ public class Canvas extends JComponent {
                                     step();
                                 }
                             });
-        // start animation
-        myAssembly = new Assembly(this);
+        myAssembly = new Assembly();
         mySimulation = new Model(this);
         loadModel(myAssembly);
-        myTimer.start();
+        // start animation
+        myLoop = new SimulationLoop(mySimulation, this, myStepsPerSecond, myFramesPerSecond);
+        myLoop.start();
     }
 
     /**
@@ -161,17 +230,96 @@ public class Canvas extends JComponent {
      */
     public void stop () {
         myTimer.stop();
+        myLoop.stop();
     }
 
     /**
-     * Take one step in the animation.
+     * Take one step of play back, moving it on by however much time really
+     * passed since the last one (the timer is not exact).
      */
     public void step () {
-        mySimulation.update((double) FRAMES_PER_SECOND / ONE_SECOND);
-        // indirectly causes paint to be called
+        long now = System.nanoTime();
+        double elapsedTime = (double) DEFAULT_DELAY / ONE_SECOND;
+        if (myLastStepTime != 0) {
+            elapsedTime = (now - myLastStepTime) / NANOS_PER_SECOND;
+        }
+        myLastStepTime = now;
+        if (myReplay != null) {
+            updateReplay(elapsedTime);
+        }
+    }
+
+    /**
+     * Play back a trajectory file chosen by the user, on the models it was
+     * recorded from, also chosen by the user (one for each assembly).
+     */
+    public void startReplay () {
+        if (INPUT_CHOOSER.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File trajectory = INPUT_CHOOSER.getSelectedFile();
+        TrajectoryReader reader = null;
+        try {
+            reader = new TrajectoryReader(trajectory);
+            if (reader.getFrameCount() == 0) {
+                throw new ModelFormatException(trajectory.getName(), "nothing was recorded");
+            }
+            reader.read(0);
+            List<Assembly> assemblies = new ArrayList<Assembly>();
+            for (int i = 0; i < reader.getAssemblyCount(); i++) {
+                INPUT_CHOOSER.setDialogTitle("Model of assembly " + (i + 1) + " of " +
+                                             reader.getAssemblyCount());
+                int response = INPUT_CHOOSER.showOpenDialog(null);
+                INPUT_CHOOSER.setDialogTitle(null);
+                if (response != JFileChooser.APPROVE_OPTION) {
+                    reader.close();
+                    return;
+                }
+                Assembly a = new Assembly();
+                new Factory().loadModel(a, INPUT_CHOOSER.getSelectedFile());
+                assemblies.add(a);
+            }
+            stopReplay();
+            myReplay = new TrajectoryPlayer(reader, assemblies,
+                                            mySimulation.getEngine().getTimestep());
+            // the simulation waits while the recording plays
+            myLoop.setPaused(true);
+            myLastStepTime = 0;
+            myTimer.start();
+        }
+        catch (IOException | ModelFormatException e) {
+            closeQuietly(reader);
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Cannot play back",
+                                          JOptionPane.ERROR_MESSAGE);
+        }
         repaint();
     }
-    
+
+    /**
+     * Go back to showing the simulation.
+     */
+    public void stopReplay () {
+        if (myReplay != null) {
+            try {
+                myReplay.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+            myReplay = null;
+            myTimer.stop();
+            myLoop.setPaused(false);
+            repaint();
+        }
+    }
+
+    /**
+     * Returns the recording being played back, or null while simulating.
+     */
+    public TrajectoryPlayer getReplay () {
+        return myReplay;
+    }
+
     /**
      * clear all keys from myKeys
      */
@@ -194,6 +342,85 @@ public class Canvas extends JComponent {
         return myMouseClicked;
     }
 
+    private void updateReplay (double elapsedTime) {
+        try {
+            switch (myLastKeyPressed) {
+                case KeyEvent.VK_SPACE:
+                    myReplay.togglePause();
+                    break;
+                case KeyEvent.VK_LEFT:
+                    myReplay.stepFrames(-1);
+                    break;
+                case KeyEvent.VK_RIGHT:
+                    myReplay.stepFrames(1);
+                    break;
+                case KeyEvent.VK_UP:
+                    myReplay.setSpeed(myReplay.getSpeed() * SPEED_FACTOR);
+                    break;
+                case KeyEvent.VK_DOWN:
+                    myReplay.setSpeed(myReplay.getSpeed() / SPEED_FACTOR);
+                    break;
+                case KeyEvent.VK_R:
+                    myReplay.reverse();
+                    break;
+                case KeyEvent.VK_HOME:
+                    myReplay.seek(0);
+                    break;
+                case KeyEvent.VK_END:
+                    myReplay.seek(myReplay.getFrameCount() - 1);
+                    break;
+                case KeyEvent.VK_ESCAPE:
+                    setLastKeyPressed();
+                    stopReplay();
+                    return;
+                default:
+                    break;
+            }
+            setLastKeyPressed();
+            if (myLastMousePosition != null &&
+                myLastMousePosition.y >= getHeight() - TIMELINE_HEIGHT) {
+                myReplay.scrub((double) myLastMousePosition.x / Math.max(1, getWidth() - 1));
+            }
+            else {
+                myReplay.update(elapsedTime);
+            }
+        }
+        catch (IOException | ModelFormatException e) {
+            stopReplay();
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Cannot play back",
+                                          JOptionPane.ERROR_MESSAGE);
+        }
+        repaint();
+    }
+
+    private void paintReplay (Graphics2D pen) {
+        for (Assembly a : myReplay.getAssemblies()) {
+            a.paint(pen);
+        }
+        int top = getHeight() - TIMELINE_HEIGHT;
+        int frames = Math.max(1, myReplay.getFrameCount() - 1);
+        pen.setColor(Color.LIGHT_GRAY);
+        pen.fillRect(0, top, getWidth(), TIMELINE_HEIGHT);
+        pen.setColor(Color.DARK_GRAY);
+        pen.fillRect(0, top, getWidth() * myReplay.getFrame() / frames, TIMELINE_HEIGHT);
+        pen.setColor(Color.BLACK);
+        pen.drawString(String.format("step %d   %s%.3gx", myReplay.getStep(),
+                                     myReplay.isPaused() ? "paused   " : "",
+                                     myReplay.getSpeed()),
+                       TEXT_MARGIN, top - TEXT_MARGIN);
+    }
+
+    private static void closeQuietly (TrajectoryReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private void setInputListeners () {
         // initialize input state
         myLastKeyPressed = NO_KEY_PRESSED;
@@ -203,6 +430,10 @@ public class Canvas extends JComponent {
             public void keyPressed (KeyEvent e) {
                 myLastKeyPressed = e.getKeyCode();
                 myKeys.add(e.getKeyCode());
+                // while playing back, keys are for the player
+                if (mySimulation != null && myReplay == null) {
+                    mySimulation.keyPressed(e.getKeyCode());
+                }
             }
 
             @Override
@@ -216,34 +447,69 @@ public class Canvas extends JComponent {
             @Override
             public void mouseDragged (MouseEvent e) {
                 myLastMousePosition = e.getPoint();
+                myMouseLocation = myLastMousePosition;
+                postMouse();
+            }
+
+            @Override
+            public void mouseMoved (MouseEvent e) {
+                myMouseLocation = e.getPoint();
+                postMouse();
             }
         });
         addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed (MouseEvent e) {
                 myLastMousePosition = e.getPoint();
+                myMouseLocation = myLastMousePosition;
                 myMouseClicked = true;
-                
-                
+                postMouse();
             }
 
             @Override
             public void mouseReleased (MouseEvent e) {
                 myLastMousePosition = NO_MOUSE_PRESSED;
                 myMouseClicked = false;
+                postMouse();
             }
         });
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized (ComponentEvent e) {
+                if (mySimulation != null) {
+                    mySimulation.resized(getWidth(), getHeight());
+                }
+            }
+        });
+    }
+
+    /**
+     * Tell the model where the mouse is now.
+     */
+    private void postMouse () {
+        if (mySimulation != null && myMouseLocation != null) {
+            mySimulation.mouseChanged(myMouseLocation.getX(), myMouseLocation.getY(),
+                                      myMouseClicked);
+        }
     }
 
     /**
-     * load model from file chosen by user
+     * load model from file chosen by user; a file with a mistake in it
+     * leaves the assembly empty and tells the user which line is wrong
      * @param a         the assembly
      */
     public void loadModel (Assembly a) {
         Factory factory = new Factory();
         int response = INPUT_CHOOSER.showOpenDialog(null);
         if (response == JFileChooser.APPROVE_OPTION) {
-            factory.loadModel(a, INPUT_CHOOSER.getSelectedFile());
+            try {
+                factory.loadModel(a, INPUT_CHOOSER.getSelectedFile());
+            }
+            catch (ModelFormatException e) {
+                a.clear();
+                JOptionPane.showMessageDialog(this, e.getMessage(), "Cannot load model",
+                                              JOptionPane.ERROR_MESSAGE);
+            }
         }
     }
 
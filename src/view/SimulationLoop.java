@@ -0,0 +1,208 @@
+package view;
+
+import java.awt.Component;
+import java.util.concurrent.locks.LockSupport;
+import simulation.Model;
+import simulation.SimulationEngine;
+
+
+/**
+ * Runs a model on a thread of its own, so a slow step never holds up the
+ * Swing event thread and a slow paint never holds up the simulation.
+ *
+ * Physics and drawing go at rates of their own. The loop wakes once per
+ * frame, measures with System.nanoTime how much real time passed, and
+ * lets the engine take however many fixed steps of 1 / physics rate that
+ * covers; then it has the model publish a snapshot, drawn part of the way
+ * into the next step, and asks the view to repaint.
+ *
+ * When the machine cannot keep up, frames go before physics: a frame
+ * whose steps ran past the time the next frame was due is not drawn, up
+ * to MAX_FRAME_SKIP in a row. Only when even the steps of
+ * MAX_FRAMES_BEHIND frames cannot be done in one pass is simulated time
+ * dropped, so the simulation slows down rather than falling further and
+ * further behind.
+ *
+ * A step that throws, such as one that blows up even at AdaptiveTimestep's
+ * shortest step, pauses the loop rather than being tried again every frame.
+ *
+ * @author Jerry Li & Bill Muensterman
+ */
+public class SimulationLoop implements Runnable {
+    /**
+     * Most frames in a row left undrawn to keep up with physics
+     */
+    public static final int MAX_FRAME_SKIP = 5;
+    /**
+     * Most frames' worth of steps taken in one pass to catch up
+     */
+    public static final int MAX_FRAMES_BEHIND = 4;
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private Model myModel;
+    private Component myView;
+    private int myPhysicsRate;
+    private int myFrameRate;
+    private long myFramePeriod;
+    private Thread myThread;
+    private volatile boolean myRunning;
+    private volatile boolean myPaused;
+    private volatile long myFrameCount;
+    private volatile long mySkippedFrameCount;
+
+    /**
+     * Run the given model, repainting the given view.
+     *
+     * @param model         the model
+     * @param view          what draws the model
+     * @param physicsRate   steps per second
+     * @param frameRate     frames drawn per second
+     */
+    public SimulationLoop (Model model, Component view, int physicsRate, int frameRate) {
+        if (physicsRate <= 0 || frameRate <= 0) {
+            throw new IllegalArgumentException("rates must be positive");
+        }
+        myModel = model;
+        myView = view;
+        myPhysicsRate = physicsRate;
+        myFrameRate = frameRate;
+        myFramePeriod = Math.round(NANOS_PER_SECOND / frameRate);
+    }
+
+    /**
+     * Returns the steps taken per second
+     *
+     * @return
+     */
+    public int getPhysicsRate () {
+        return myPhysicsRate;
+    }
+
+    /**
+     * Returns the frames drawn per second
+     *
+     * @return
+     */
+    public int getFrameRate () {
+        return myFrameRate;
+    }
+
+    /**
+     * Returns the number of frames drawn so far
+     *
+     * @return
+     */
+    public long getFrameCount () {
+        return myFrameCount;
+    }
+
+    /**
+     * Returns the number of frames left undrawn to keep up with physics
+     *
+     * @return
+     */
+    public long getSkippedFrameCount () {
+        return mySkippedFrameCount;
+    }
+
+    /**
+     * Start updating the model, with the engine's step set to match the
+     * physics rate.
+     */
+    public void start () {
+        if (myThread != null) {
+            return;
+        }
+        SimulationEngine engine = myModel.getEngine();
+        engine.setTimestep(1.0 / myPhysicsRate);
+        int stepsPerFrame = (myPhysicsRate + myFrameRate - 1) / myFrameRate;
+        engine.setMaxSubsteps(stepsPerFrame * MAX_FRAMES_BEHIND);
+        myRunning = true;
+        myThread = new Thread(this, "simulation");
+        // the window closing should end the program
+        myThread.setDaemon(true);
+        myThread.start();
+    }
+
+    /**
+     * Stop updating the model, returning once the last update is done.
+     */
+    public void stop () {
+        if (myThread == null) {
+            return;
+        }
+        myRunning = false;
+        LockSupport.unpark(myThread);
+        try {
+            myThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        myThread = null;
+    }
+
+    /**
+     * Stop or carry on updating the model without stopping the thread.
+     * Time spent paused is not simulated.
+     *
+     * @param paused    true to stop updating
+     */
+    public void setPaused (boolean paused) {
+        myPaused = paused;
+    }
+
+    /**
+     * Returns true while the model is not being updated
+     *
+     * @return
+     */
+    public boolean isPaused () {
+        return myPaused;
+    }
+
+    @Override
+    public void run () {
+        long last = System.nanoTime();
+        long next = last;
+        int skipped = 0;
+        while (myRunning) {
+            long now = System.nanoTime();
+            double elapsedTime = (now - last) / NANOS_PER_SECOND;
+            last = now;
+            if (!myPaused) {
+                try {
+                    myModel.update(elapsedTime);
+                    // drawing a frame that is already late only makes the next later
+                    if (System.nanoTime() - next < myFramePeriod || skipped >= MAX_FRAME_SKIP) {
+                        myModel.publish();
+                        // indirectly causes paint to be called
+                        myView.repaint();
+                        myFrameCount++;
+                        skipped = 0;
+                    }
+                    else {
+                        mySkippedFrameCount++;
+                        skipped++;
+                    }
+                }
+                catch (RuntimeException e) {
+                    // the same step would only fail again, many times a
+                    // second, so report it once and wait to be resumed
+                    myPaused = true;
+                    System.err.println("simulation paused: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+            // a pass that ran late starts the next period from now, rather
+            // than rushing through the ones it missed
+            next = Math.max(next + myFramePeriod, System.nanoTime());
+            long wait = next - System.nanoTime();
+            while (myRunning && wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                wait = next - System.nanoTime();
+            }
+        }
+    }
+}